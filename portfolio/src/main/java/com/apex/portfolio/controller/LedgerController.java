@@ -0,0 +1,56 @@
+package com.apex.portfolio.controller;
+
+import com.apex.portfolio.dto.LedgerAuditDTO;
+import com.apex.portfolio.service.LedgerService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/ledger")
+@RequiredArgsConstructor
+public class LedgerController {
+
+    private final LedgerService ledgerService;
+
+    // Stored cash, realized P&L and holdings compared with a replay of the user's transactions
+    @GetMapping("/audit")
+    public LedgerAuditDTO audit(@AuthenticationPrincipal Jwt jwt) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+        return ledgerService.audit(userId);
+    }
+
+    // Rewrites the stored state from the ledger if they differ; returns the audit taken before
+    @PostMapping("/repair")
+    public ResponseEntity<?> repair(@AuthenticationPrincipal Jwt jwt) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+
+        try {
+            return ResponseEntity.ok(ledgerService.repair(userId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Manual trigger for the nightly audit of every user; repair=true also fixes drifted users
+    @PostMapping("/rebuild")
+    public ResponseEntity<?> rebuild(@RequestParam(defaultValue = "false") boolean repair) {
+        if (!ledgerService.run(repair)) {
+            return ResponseEntity.badRequest().body("A ledger run is already in progress");
+        }
+        return ResponseEntity.ok(ledgerService.stats());
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return ledgerService.stats();
+    }
+}
@@ -1,23 +1,65 @@
 package com.apex.portfolio.controller;
 
+import com.apex.portfolio.dto.CandleDTO;
+import com.apex.portfolio.dto.SymbolMatchDTO;
+import com.apex.portfolio.service.AsyncStockPriceService;
+import com.apex.portfolio.service.CachingStockPriceService;
+import com.apex.portfolio.service.MarketOverviewService;
+import com.apex.portfolio.service.PriceHistoryService;
+import com.apex.portfolio.service.PriceWarmer;
+import com.apex.portfolio.service.QuoteStreamService;
+import com.apex.portfolio.service.SimulatedStockPriceService;
 import com.apex.portfolio.service.StockPriceService;
+import com.apex.portfolio.service.SymbolSearchService;
+import com.apex.portfolio.service.YahooStockPriceService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/market")
 @RequiredArgsConstructor
 public class MarketController {
 
+    // How many search results get a live quote when quotes=true
+    private static final int QUOTED_RESULTS = 3;
+
     private final StockPriceService stockPriceService;
+    private final AsyncStockPriceService asyncPriceService;
+    private final CachingStockPriceService priceCache;
+    private final PriceWarmer priceWarmer;
+    // Exactly one of these exists, depending on whether the simulator profile is active
+    private final ObjectProvider<YahooStockPriceService> yahooPriceSource;
+    private final ObjectProvider<SimulatedStockPriceService> simulatedPriceSource;
+    private final QuoteStreamService quoteStreamService;
+    private final SymbolSearchService symbolSearchService;
+    private final PriceHistoryService priceHistoryService;
+    private final MarketOverviewService marketOverviewService;
+
+    @Value("${market.quote-deadline-ms:2000}")
+    private long quoteDeadlineMillis;
 
     @GetMapping("/quote/{symbol}")
     public Map<String, Object> getQuote(@PathVariable String symbol) {
@@ -28,64 +70,99 @@ public class MarketController {
         return result;
     }
 
-    @GetMapping("/search/{query}")
-    public Map<String, Object> searchTicker(@PathVariable String query) {
-        // Simple lookup — try to get a quote. If it works, the ticker is valid.
-        Map<String, Object> result = new HashMap<>();
+    // Live quotes over SSE, e.g. /api/market/stream?symbols=AAPL,TCS.NS
+    // Sends a "quotes" event with {symbol: price} whenever subscribed prices change
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@RequestParam List<String> symbols) {
         try {
-            BigDecimal price = stockPriceService.getPrice(query);
-            result.put("symbol", query.toUpperCase());
-            result.put("price", price);
-            result.put("found", true);
-        } catch (Exception e) {
-            result.put("symbol", query.toUpperCase());
-            result.put("found", false);
-            result.put("error", e.getMessage());
+            return ResponseEntity.ok(quoteStreamService.subscribe(symbols));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+    }
+
+    // Typeahead over the local symbol index; quotes only for the top results and only on request
+    @GetMapping("/search/{query}")
+    public Map<String, Object> searchTicker(@PathVariable String query,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "false") boolean quotes) {
+        List<SymbolMatchDTO> matches = symbolSearchService.search(query, Math.min(Math.max(limit, 1), 50));
+
+        if (quotes && !matches.isEmpty()) {
+            List<SymbolMatchDTO> top = matches.subList(0, Math.min(QUOTED_RESULTS, matches.size()));
+            Map<String, BigDecimal> prices = fetchPrices(
+                    top.stream().map(SymbolMatchDTO::getSymbol).collect(java.util.stream.Collectors.toList()));
+            top.forEach(match -> match.setPrice(prices.get(match.getSymbol())));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("query", query);
+        result.put("found", !matches.isEmpty());
+        result.put("results", matches);
         return result;
     }
 
+    // Pre-built by MarketOverviewService; revalidating clients get 304 while the ETag matches
     @GetMapping("/overview")
-    public Map<String, Object> getOverview() {
-        Map<String, Object> response = new HashMap<>();
-
-        // 1. Market Indices (Using ETFs that track them since Yahoo works best with
-        // tickers)
-        // SPY = S&P 500, DIA = Dow Jones, QQQ = NASDAQ, IWM = Russell 2000
-        List<Map<String, Object>> indices = List.of(
-                getSafeQuote("SPY", "S&P 500 ETF"),
-                getSafeQuote("DIA", "Dow Jones ETF"),
-                getSafeQuote("QQQ", "NASDAQ ETF"),
-                getSafeQuote("IWM", "Russell 2000 ETF"));
-        response.put("indices", indices);
-
-        // 2. Top Movers (Placeholder logic, in reality would use a dedicated screener
-        // API)
-        List<Map<String, Object>> movers = List.of(
-                getSafeQuote("NVDA", "NVIDIA Corp"),
-                getSafeQuote("AAPL", "Apple Inc"),
-                getSafeQuote("MSFT", "Microsoft"),
-                getSafeQuote("TSLA", "Tesla Inc"),
-                getSafeQuote("AMZN", "Amazon"));
-        response.put("topMovers", movers);
-
-        return response;
+    public ResponseEntity<byte[]> getOverview(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        MarketOverviewService.Overview overview = marketOverviewService.getOverview();
+        if (overview == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        CacheControl cacheControl = CacheControl.maxAge(marketOverviewService.getMaxAgeSeconds(), TimeUnit.SECONDS)
+                .cachePublic();
+
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, overview.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(overview.getEtag())
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(overview.getEtag())
+                .cacheControl(cacheControl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(overview.getBody());
     }
 
-    private Map<String, Object> getSafeQuote(String symbol, String name) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("symbol", symbol);
-        data.put("name", name);
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, BigDecimal> fetchPrices(List<String> symbols) {
         try {
-            BigDecimal price = stockPriceService.getPrice(symbol);
-            data.put("price", price);
-            // Simulate a daily change since we only have current price right now
-            double changePercent = (Math.random() - 0.4) * 3.0; // Random between -1.2% and +1.8%
-            data.put("change", BigDecimal.valueOf(changePercent).setScale(2, java.math.RoundingMode.HALF_UP));
+            return asyncPriceService.getPricesWithin(symbols, Duration.ofMillis(quoteDeadlineMillis));
         } catch (Exception e) {
-            data.put("price", BigDecimal.ZERO);
-            data.put("change", BigDecimal.ZERO);
+            return Map.of();
         }
-        return data;
+    }
+
+    // Daily candles for charts; defaults to the last year
+    @GetMapping("/history/{symbol}")
+    public List<CandleDTO> getHistory(@PathVariable String symbol,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusYears(1);
+        return priceHistoryService.range(symbol, start, end);
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("priceCache", priceCache.stats());
+        stats.put("priceWarmer", priceWarmer.stats());
+        yahooPriceSource.ifAvailable(yahoo -> stats.put("priceSources", yahoo.stats()));
+        simulatedPriceSource.ifAvailable(simulator -> stats.put("simulator", simulator.stats()));
+        stats.put("quoteStream", quoteStreamService.stats());
+        stats.put("priceHistory", priceHistoryService.stats());
+        return stats;
     }
 }
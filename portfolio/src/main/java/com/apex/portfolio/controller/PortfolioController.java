@@ -1,32 +1,94 @@
 package com.apex.portfolio.controller;
 
-import com.apex.portfolio.dto.PortfolioDTO;
+import com.apex.portfolio.dto.IntradayDTO;
+import com.apex.portfolio.service.IntradayRecorder;
+import com.apex.portfolio.service.LivePortfolioValuation;
+import com.apex.portfolio.service.PortfolioBook;
+import com.apex.portfolio.service.PortfolioResponseCache;
 import com.apex.portfolio.service.PortfolioService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/portfolio")
 @RequiredArgsConstructor
 public class PortfolioController {
 
     private final PortfolioService portfolioService;
+    private final LivePortfolioValuation liveValuation;
+    private final PortfolioResponseCache responseCache;
+    private final IntradayRecorder intradayRecorder;
+
+    private static final int MAX_PAGE_SIZE = 200;
 
     @GetMapping
-    public PortfolioDTO getPortfolio(@AuthenticationPrincipal Jwt jwt) {
+    public ResponseEntity<byte[]> getPortfolio(@AuthenticationPrincipal Jwt jwt) {
         // Fallback for development if JWT is missing (e.g., separate dev profile)
         // But for production-like setup, we expect JWT.
         String userId = jwt != null ? jwt.getSubject() : "test-user-id";
 
         try {
-            return portfolioService.getPortfolio(userId);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(portfolioService.getPortfolioJson(userId));
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException("Error: " + e.getMessage() + " | Cause: " + e.getCause());
         }
     }
+
+    // Net worth, P&L and cash without the holdings list
+    @GetMapping("/summary")
+    public ResponseEntity<?> getSummary(@AuthenticationPrincipal Jwt jwt) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+        return ResponseEntity.ok(portfolioService.getSummary(userId));
+    }
+
+    // Sorted, cursor-paged holdings: sort=value|pnlPercent|allocation, order=desc|asc
+    @GetMapping("/holdings")
+    public ResponseEntity<?> getHoldings(@AuthenticationPrincipal Jwt jwt,
+            @RequestParam(defaultValue = "value") String sort,
+            @RequestParam(defaultValue = "desc") String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+            return ResponseEntity.badRequest().body("order must be asc or desc");
+        }
+        try {
+            return ResponseEntity.ok(portfolioService.getHoldings(userId, PortfolioBook.Sort.of(sort),
+                    order.equalsIgnoreCase("asc"), cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Today's net worth curve from the in-memory samples
+    @GetMapping("/intraday")
+    public IntradayDTO getIntraday(@AuthenticationPrincipal Jwt jwt) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+        return intradayRecorder.getIntraday(userId);
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("liveValuation", liveValuation.stats());
+        stats.put("responseCache", responseCache.stats());
+        stats.put("intraday", intradayRecorder.stats());
+        return stats;
+    }
 }
@@ -1,33 +1,86 @@
 package com.apex.portfolio.controller;
 
+import com.apex.portfolio.dto.SnapshotPointDTO;
 import com.apex.portfolio.model.PortfolioSnapshot;
-import com.apex.portfolio.repository.PortfolioSnapshotRepository;
+import com.apex.portfolio.service.SnapshotArchiveService;
+import com.apex.portfolio.service.SnapshotHistoryService;
+import com.apex.portfolio.service.SnapshotJob;
 import com.apex.portfolio.service.SnapshotService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/snapshots")
 @RequiredArgsConstructor
 public class SnapshotController {
 
-    private final PortfolioSnapshotRepository snapshotRepository;
+    private final SnapshotHistoryService historyService;
     private final SnapshotService snapshotService;
+    private final SnapshotJob snapshotJob;
+    private final SnapshotArchiveService archiveService;
 
+    private static final int MAX_POINTS = 2000;
+
+    // Raw daily rows; the whole history unless from/to (ISO dates) narrow it
     @GetMapping
-    public List<PortfolioSnapshot> getSnapshots(@AuthenticationPrincipal Jwt jwt) {
+    public List<PortfolioSnapshot> getSnapshots(@AuthenticationPrincipal Jwt jwt,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+        return historyService.getSnapshots(userId, from, to);
+    }
+
+    // Chart series: resolution=daily|weekly|monthly|auto, at most maxPoints (e.g. the chart width in pixels)
+    @GetMapping("/series")
+    public ResponseEntity<?> getSeries(@AuthenticationPrincipal Jwt jwt,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "auto") String resolution,
+            @RequestParam(defaultValue = "500") int maxPoints) {
         String userId = jwt != null ? jwt.getSubject() : "test-user-id";
-        return snapshotRepository.findByUserIdOrderByDateAsc(userId);
+        if (maxPoints < 1 || maxPoints > MAX_POINTS) {
+            return ResponseEntity.badRequest().body("maxPoints must be between 1 and " + MAX_POINTS);
+        }
+        try {
+            List<SnapshotPointDTO> series = historyService.getSeries(userId, from, to,
+                    SnapshotHistoryService.Resolution.of(resolution), maxPoints);
+            return ResponseEntity.ok(series);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @PostMapping("/capture")
     public ResponseEntity<String> triggerCapture() {
-        snapshotService.captureSnapshotsNow();
+        if (!snapshotService.captureSnapshotsNow()) {
+            return ResponseEntity.badRequest().body("A snapshot run is already in progress");
+        }
         return ResponseEntity.ok("Snapshots captured");
     }
+
+    // Manual trigger for testing, like /capture
+    @PostMapping("/archive")
+    public ResponseEntity<String> triggerArchive() {
+        archiveService.archiveOldSnapshots();
+        return ResponseEntity.ok("Old snapshots archived");
+    }
+
+    // Nightly job progress (throughput, ETA), plus the per-user writer's counters
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("job", snapshotJob.stats());
+        stats.put("incremental", snapshotService.stats());
+        stats.put("archive", archiveService.stats());
+        return stats;
+    }
 }
@@ -1,22 +1,42 @@
 package com.apex.portfolio.controller;
 
+import com.apex.portfolio.dto.BatchTradeRequest;
+import com.apex.portfolio.dto.BatchTradeResultDTO;
+import com.apex.portfolio.dto.TradeCommandDTO;
 import com.apex.portfolio.dto.TradeRequest;
+import com.apex.portfolio.model.Transaction;
+import com.apex.portfolio.service.BatchTradeService;
+import com.apex.portfolio.service.QuoteTokenService;
+import com.apex.portfolio.service.TradeCommandService;
 import com.apex.portfolio.service.TradeService;
+import com.apex.portfolio.service.UserTransactionExecutor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/trade")
 @RequiredArgsConstructor
 public class TradeController {
 
     private final TradeService tradeService;
+    private final UserTransactionExecutor userExecutor;
+    private final QuoteTokenService quoteTokenService;
+    private final BatchTradeService batchTradeService;
+    private final TradeCommandService tradeCommandService;
 
     @PostMapping("/buy")
     public ResponseEntity<String> executeBuy(@AuthenticationPrincipal Jwt jwt, @RequestParam String symbol,
@@ -51,4 +71,84 @@ public class TradeController {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
+
+    // Phase 1: price the order and get a signed, short-lived token; side is BUY or SELL
+    @PostMapping("/quote")
+    public ResponseEntity<?> quote(@AuthenticationPrincipal Jwt jwt, @RequestParam String symbol,
+            @RequestParam Integer quantity, @RequestParam String side) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+
+        try {
+            Transaction.TransactionType type = Transaction.TransactionType.valueOf(side.toUpperCase());
+            if (type != Transaction.TransactionType.BUY && type != Transaction.TransactionType.SELL) {
+                return ResponseEntity.badRequest().body("side must be BUY or SELL");
+            }
+            return ResponseEntity.ok(quoteTokenService.quote(userId, symbol, quantity, type));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Phase 2: execute at the quoted price; no network I/O inside the transaction
+    @PostMapping("/execute")
+    public ResponseEntity<?> execute(@AuthenticationPrincipal Jwt jwt, @RequestParam String token) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+
+        try {
+            return ResponseEntity.ok(quoteTokenService.execute(userId, token));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // A basket of orders in one round trip; an all-or-nothing basket with a failed order is a 400
+    @PostMapping("/batch")
+    public ResponseEntity<?> executeBatch(@AuthenticationPrincipal Jwt jwt, @RequestBody BatchTradeRequest request) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+
+        try {
+            BatchTradeResultDTO result = batchTradeService.execute(userId, request);
+            return "REJECTED".equals(result.getStatus())
+                    ? ResponseEntity.badRequest().body(result)
+                    : ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Journaled intake: 202 once the command is durable, applied asynchronously; a reused key is a 409
+    @PostMapping("/submit")
+    public ResponseEntity<?> submit(@AuthenticationPrincipal Jwt jwt,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestParam String symbol, @RequestParam Integer quantity, @RequestParam String side) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+
+        try {
+            TradeCommandDTO command = tradeCommandService.submit(userId, idempotencyKey, symbol, quantity, side);
+            return ResponseEntity.status(Boolean.TRUE.equals(command.getDuplicate())
+                    ? HttpStatus.CONFLICT : HttpStatus.ACCEPTED).body(command);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/commands/{idempotencyKey}")
+    public ResponseEntity<TradeCommandDTO> getCommand(@AuthenticationPrincipal Jwt jwt,
+            @PathVariable String idempotencyKey) {
+        String userId = jwt != null ? jwt.getSubject() : "test-user-id";
+
+        TradeCommandDTO command = tradeCommandService.find(userId, idempotencyKey);
+        return command != null ? ResponseEntity.ok(command) : ResponseEntity.notFound().build();
+    }
+
+    // Per-user serialization (contention, retries, transaction time) and quote token counters
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("execution", userExecutor.stats());
+        stats.put("quotes", quoteTokenService.stats());
+        stats.put("batch", batchTradeService.stats());
+        stats.put("commands", tradeCommandService.stats());
+        return stats;
+    }
 }
@@ -0,0 +1,22 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchOrderResultDTO {
+    private Integer index; // Position in the submitted basket
+    private String symbol;
+    private String type;
+    private Integer quantity;
+    private BigDecimal price; // Null if the symbol could not be priced
+    private String status; // EXECUTED, REJECTED, or SKIPPED when an all-or-nothing basket was rejected
+    private String message;
+}
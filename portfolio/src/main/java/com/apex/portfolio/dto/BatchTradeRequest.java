@@ -0,0 +1,17 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTradeRequest {
+    private String mode; // ALL_OR_NOTHING (default) or BEST_EFFORT
+    private List<TradeRequest> orders;
+}
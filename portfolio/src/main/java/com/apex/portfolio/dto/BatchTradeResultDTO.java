@@ -0,0 +1,23 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchTradeResultDTO {
+    private String mode;
+    private String status; // EXECUTED, PARTIAL or REJECTED
+    private Integer executed;
+    private Integer rejected;
+    private BigDecimal cashBalance; // After the basket
+    private BigDecimal realizedPnL;
+    private List<BatchOrderResultDTO> orders; // In submitted order
+}
@@ -0,0 +1,21 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CandleDTO {
+    private LocalDate date;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private double prevClose; // Previous session's close, for day change
+}
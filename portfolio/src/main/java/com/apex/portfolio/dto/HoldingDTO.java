@@ -20,4 +20,5 @@ public class HoldingDTO {
     private BigDecimal pnl;
     private BigDecimal pnlPercentage;
     private BigDecimal allocationPercentage;
+    private Boolean priceAvailable; // false if no quote arrived before the deadline
 }
@@ -0,0 +1,18 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HoldingsPageDTO {
+    private List<HoldingDTO> holdings;
+    private String nextCursor; // Null on the last page
+    private Integer totalHoldings;
+}
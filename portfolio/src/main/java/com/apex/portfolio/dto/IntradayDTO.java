@@ -0,0 +1,23 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Today's net worth curve, columnar: netWorth[i] was sampled at timestamps[i]
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IntradayDTO {
+    private long[] timestamps; // Epoch millis
+    private BigDecimal[] netWorth;
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal last;
+    private Long intervalSeconds;
+}
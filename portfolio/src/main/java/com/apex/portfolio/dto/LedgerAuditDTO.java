@@ -0,0 +1,30 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// A user's stored cash, P&L and holdings compared with the replayed transaction ledger
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LedgerAuditDTO {
+    private String userId;
+    private Boolean consistent;
+    private Boolean repaired; // True if stored state was rewritten from the ledger
+    private Long checkpointTransactionId; // Replay started after this transaction, null for a full replay
+    private Long lastTransactionId;
+    private Long transactionsReplayed;
+    private BigDecimal ledgerCashBalance;
+    private BigDecimal storedCashBalance;
+    private BigDecimal ledgerRealizedPnL;
+    private BigDecimal storedRealizedPnL;
+    private Integer ledgerPositions;
+    private Integer storedPositions;
+    private List<String> differences; // One line per mismatch
+}
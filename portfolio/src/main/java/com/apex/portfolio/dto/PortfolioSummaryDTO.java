@@ -0,0 +1,25 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Header/widget view of a portfolio: totals only, no per-holding rows
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PortfolioSummaryDTO {
+    private BigDecimal totalValue;
+    private BigDecimal totalInvested;
+    private BigDecimal totalPnL;
+    private BigDecimal totalPnLPercentage;
+    private BigDecimal dayPnL;
+    private BigDecimal cashBalance;
+    private BigDecimal realizedPnL;
+    private BigDecimal netWorth;
+    private Integer holdingsCount;
+}
@@ -0,0 +1,32 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// One chart point: a day, week or month of snapshots rolled up
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnapshotPointDTO {
+    private LocalDate periodStart;
+    private LocalDate periodEnd; // Last day with a snapshot in the period
+    private Integer days; // Snapshots rolled into this point
+
+    // Net worth over the period
+    private BigDecimal first;
+    private BigDecimal last;
+    private BigDecimal min;
+    private BigDecimal max;
+
+    // As of periodEnd
+    private BigDecimal investedAmount;
+    private BigDecimal cashBalance;
+    private BigDecimal unrealizedPnL;
+    private BigDecimal realizedPnL;
+}
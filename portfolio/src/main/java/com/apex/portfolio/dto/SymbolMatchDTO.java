@@ -0,0 +1,21 @@
+package com.apex.portfolio.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SymbolMatchDTO {
+    private String symbol;
+    private String name;
+    private String exchange;
+    private BigDecimal price; // Only filled for the top results when quotes are requested
+}
@@ -0,0 +1,27 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// A journaled trade command and where it is in the pipeline
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TradeCommandDTO {
+    private String idempotencyKey;
+    private Long sequence; // Journal sequence number
+    private String symbol;
+    private String type;
+    private Integer quantity;
+    private String status; // ACCEPTED (journaled, not yet applied), EXECUTED, REJECTED, FAILED, or PARKED (retried on restart)
+    private String message;
+    private BigDecimal price; // Execution price once applied
+    private Long acceptedAt; // Epoch millis
+    private Long appliedAt;
+    private Boolean duplicate; // True when the key was already used; the fields describe the original command
+}
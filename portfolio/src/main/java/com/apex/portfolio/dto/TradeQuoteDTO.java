@@ -0,0 +1,23 @@
+package com.apex.portfolio.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// A firm price for one order, redeemable once at /api/trade/execute until expiresAt
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TradeQuoteDTO {
+    private String token;
+    private String symbol;
+    private String type;
+    private Integer quantity;
+    private BigDecimal price;
+    private BigDecimal total;
+    private Long expiresAt; // Epoch millis
+}
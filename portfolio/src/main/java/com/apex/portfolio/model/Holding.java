@@ -31,4 +31,9 @@ public class Holding {
 
     @Column(nullable = false)
     private Double averagePrice;
+
+    // Optimistic lock; the default fills rows that predate the column
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
 }
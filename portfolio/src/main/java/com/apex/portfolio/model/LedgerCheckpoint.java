@@ -0,0 +1,42 @@
+package com.apex.portfolio.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A user's ledger projection after every transaction up to lastTransactionId, so a replay starts from here
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "ledger_checkpoints")
+public class LedgerCheckpoint {
+
+    @Id
+    private String userId;
+
+    private Long lastTransactionId;
+
+    private Long transactionCount;
+
+    // FixedPoint units, like the positions
+    @Column(name = "cash_balance_units")
+    private Long cashBalanceUnits;
+
+    @Column(name = "realized_pnl_units")
+    private Long realizedPnLUnits;
+
+    // Open positions, encoded by LedgerProjection
+    @Column(columnDefinition = "bytea")
+    private byte[] positions;
+
+    private LocalDateTime updatedAt;
+}
@@ -14,7 +14,10 @@ import java.time.LocalDate;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "portfolio_snapshots")
+// One row per user per day; also serves the (user_id, date) range reads
+@Table(name = "portfolio_snapshots", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_snapshot_user_date", columnNames = {"user_id", "date"})
+})
 public class PortfolioSnapshot {
 
     @Id
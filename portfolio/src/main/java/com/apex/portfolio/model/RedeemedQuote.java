@@ -0,0 +1,36 @@
+package com.apex.portfolio.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Nonce of an executed quote token, written in the trade's transaction so a token is single-use across instances
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "redeemed_quotes", indexes = @Index(name = "idx_redeemed_quote_expires", columnList = "expires_at"))
+public class RedeemedQuote {
+
+    @Id
+    @Column(length = 32)
+    private String nonce;
+
+    @Column(nullable = false)
+    private String userId;
+
+    // Epoch millis, as signed into the token; the row can go once no instance would accept the token
+    @Column(nullable = false)
+    private Long expiresAt;
+
+    private LocalDateTime redeemedAt;
+}
@@ -0,0 +1,37 @@
+package com.apex.portfolio.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// A user's cold snapshot history, encoded by SnapshotArchiveCodec
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "snapshot_archives")
+public class SnapshotArchive {
+
+    @Id
+    private String userId;
+
+    private LocalDate firstDate;
+
+    private LocalDate lastDate;
+
+    private Integer rowCount;
+
+    @Column(columnDefinition = "bytea")
+    private byte[] data;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,41 @@
+package com.apex.portfolio.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Progress of one nightly snapshot run, so a crashed run resumes instead of starting over
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "snapshot_job_checkpoints")
+public class SnapshotJobCheckpoint {
+
+    @Id
+    private LocalDate runDate;
+
+    // Every user id up to and including this one has today's snapshot; null before the first chunk
+    private String lastUserId;
+
+    private Long usersDone;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private LocalDateTime updatedAt;
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+}
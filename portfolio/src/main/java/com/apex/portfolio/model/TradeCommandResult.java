@@ -0,0 +1,54 @@
+package com.apex.portfolio.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Outcome of a journaled trade command, written in the same transaction as the trade itself
+@Data
+@Entity
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "trade_command_results", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"userId", "idempotencyKey"})
+})
+public class TradeCommandResult {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String userId;
+
+    @Column(nullable = false, length = 128)
+    private String idempotencyKey;
+
+    private Long journalSequence;
+
+    @Column(nullable = false)
+    private String symbol;
+
+    @Column(nullable = false)
+    private String type;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    private Double price; // Null if the symbol could not be priced
+
+    @Column(nullable = false)
+    private String status; // EXECUTED, REJECTED, or FAILED when it could not be applied
+
+    @Column(length = 512)
+    private String message;
+
+    private LocalDateTime acceptedAt;
+
+    private LocalDateTime appliedAt;
+}
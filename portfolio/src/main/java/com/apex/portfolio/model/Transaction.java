@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = @Index(name = "idx_transaction_user_id", columnList = "user_id, id"))
 public class Transaction {
 
     @Id
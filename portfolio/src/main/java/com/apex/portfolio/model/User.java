@@ -1,8 +1,10 @@
 package com.apex.portfolio.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -23,9 +25,17 @@ public class User {
 
     private String name;
 
+    // Whole cents: every change rounds the new total HALF_UP (FixedPoint.roundMoney), as the ledger replay does
     @Builder.Default
+    @Column(precision = 38, scale = 2)
     private java.math.BigDecimal cashBalance = java.math.BigDecimal.ZERO;
 
     @Builder.Default
+    @Column(precision = 38, scale = 2)
     private java.math.BigDecimal realizedPnL = java.math.BigDecimal.ZERO;
+
+    // Optimistic lock; the default fills rows that predate the column
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
 }
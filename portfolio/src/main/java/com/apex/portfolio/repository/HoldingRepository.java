@@ -2,6 +2,7 @@ package com.apex.portfolio.repository;
 
 import com.apex.portfolio.model.Holding;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,4 +12,8 @@ import java.util.Optional;
 public interface HoldingRepository extends JpaRepository<Holding, Long> {
     List<Holding> findByUserId(String userId);
     Optional<Holding> findByUserIdAndSymbol(String userId, String symbol);
+
+    // Each row is [symbol, number of users holding it]
+    @Query("select h.symbol, count(h) from Holding h group by h.symbol")
+    List<Object[]> countHoldersBySymbol();
 }
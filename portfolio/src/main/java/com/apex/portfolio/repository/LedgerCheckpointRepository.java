@@ -0,0 +1,9 @@
+package com.apex.portfolio.repository;
+
+import com.apex.portfolio.model.LedgerCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LedgerCheckpointRepository extends JpaRepository<LedgerCheckpoint, String> {
+}
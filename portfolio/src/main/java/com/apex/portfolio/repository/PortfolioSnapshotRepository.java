@@ -2,6 +2,8 @@ package com.apex.portfolio.repository;
 
 import com.apex.portfolio.model.PortfolioSnapshot;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -12,5 +14,13 @@ import java.util.Optional;
 public interface PortfolioSnapshotRepository extends JpaRepository<PortfolioSnapshot, Long> {
     List<PortfolioSnapshot> findByUserIdOrderByDateAsc(String userId);
 
+    // At most one, enforced by the unique (user_id, date) constraint
     Optional<PortfolioSnapshot> findByUserIdAndDate(String userId, LocalDate date);
+
+    // Range reads for charts; served by the (user_id, date) index
+    List<PortfolioSnapshot> findByUserIdAndDateBetweenOrderByDateAsc(String userId, LocalDate from, LocalDate to);
+
+    // Users with rows old enough to move into the archive
+    @Query("select distinct s.userId from PortfolioSnapshot s where s.date < :date")
+    List<String> findUserIdsWithSnapshotsBefore(@Param("date") LocalDate date);
 }
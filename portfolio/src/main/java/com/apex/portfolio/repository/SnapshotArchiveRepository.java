@@ -0,0 +1,21 @@
+package com.apex.portfolio.repository;
+
+import com.apex.portfolio.model.SnapshotArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface SnapshotArchiveRepository extends JpaRepository<SnapshotArchive, String> {
+
+    // The archived date range alone, without loading the blob
+    Optional<Span> findSpanByUserId(String userId);
+
+    interface Span {
+        LocalDate getFirstDate();
+
+        LocalDate getLastDate();
+    }
+}
@@ -0,0 +1,13 @@
+package com.apex.portfolio.repository;
+
+import com.apex.portfolio.model.SnapshotJobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface SnapshotJobCheckpointRepository extends JpaRepository<SnapshotJobCheckpoint, LocalDate> {
+    List<SnapshotJobCheckpoint> findByStatus(SnapshotJobCheckpoint.Status status);
+}
@@ -0,0 +1,12 @@
+package com.apex.portfolio.repository;
+
+import com.apex.portfolio.model.TradeCommandResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface TradeCommandResultRepository extends JpaRepository<TradeCommandResult, Long> {
+    Optional<TradeCommandResult> findByUserIdAndIdempotencyKey(String userId, String idempotencyKey);
+}
@@ -0,0 +1,54 @@
+package com.apex.portfolio.service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking counterpart of {@link StockPriceService}.
+ */
+public interface AsyncStockPriceService {
+    CompletableFuture<BigDecimal> getPriceAsync(String symbol);
+
+    /**
+     * Fans out one request per symbol and waits at most {@code deadline} for them.
+     * Returns whatever was priced by then, keyed by upper-cased symbol; slow or failed
+     * symbols are simply missing from the result.
+     */
+    default Map<String, BigDecimal> getPricesWithin(Collection<String> symbols, Duration deadline) {
+        Map<String, CompletableFuture<BigDecimal>> futures = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            futures.computeIfAbsent(symbol.toUpperCase(), this::getPriceAsync);
+        }
+        return collectWithin(futures, deadline);
+    }
+
+    static Map<String, BigDecimal> collectWithin(Map<String, CompletableFuture<BigDecimal>> futures,
+            Duration deadline) {
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                    .get(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // Partial results: keep whatever completed successfully
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        futures.forEach((symbol, future) -> {
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                BigDecimal price = future.getNow(null);
+                if (price != null) {
+                    prices.put(symbol, price);
+                }
+            }
+        });
+        return prices;
+    }
+}
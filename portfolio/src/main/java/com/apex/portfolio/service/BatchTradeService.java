@@ -0,0 +1,419 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.BatchOrderResultDTO;
+import com.apex.portfolio.dto.BatchTradeRequest;
+import com.apex.portfolio.dto.BatchTradeResultDTO;
+import com.apex.portfolio.dto.TradeRequest;
+import com.apex.portfolio.model.Transaction;
+import com.apex.portfolio.model.User;
+import com.apex.portfolio.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Executes a basket of orders for one user in a single round trip.
+ * <p>
+ * Every symbol is priced with one {@link StockPriceService#getPrices} call before the user's
+ * lock is taken. Inside one transaction (see {@link UserTransactionExecutor}) the basket is
+ * applied in memory against the user's cash and positions, sells first so their proceeds
+ * fund the buys, then written with JDBC batches: one for holding updates, deletes and
+ * inserts each, one for the transaction rows. ALL_OR_NOTHING writes nothing if any order
+ * fails; BEST_EFFORT writes the orders that passed.
+ */
+@Service
+public class BatchTradeService {
+
+    public enum Mode {
+        ALL_OR_NOTHING, BEST_EFFORT;
+
+        public static Mode of(String value) {
+            if (value == null || value.isBlank()) {
+                return ALL_OR_NOTHING;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Unknown mode: " + value + " (ALL_OR_NOTHING or BEST_EFFORT)");
+            }
+        }
+    }
+
+    private final UserRepository userRepository;
+    private final StockPriceService stockPriceService;
+    private final PriceWarmer priceWarmer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserTransactionExecutor userExecutor;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxOrders;
+
+    // Counters
+    private final AtomicLong baskets = new AtomicLong();
+    private final AtomicLong basketsRejected = new AtomicLong();
+    private final AtomicLong ordersExecuted = new AtomicLong();
+    private final AtomicLong ordersRejected = new AtomicLong();
+
+    public BatchTradeService(UserRepository userRepository, StockPriceService stockPriceService,
+            PriceWarmer priceWarmer, ApplicationEventPublisher eventPublisher, UserTransactionExecutor userExecutor,
+            DataSource dataSource, @Value("${trade.batch.max-orders:100}") int maxOrders) {
+        this.userRepository = userRepository;
+        this.stockPriceService = stockPriceService;
+        this.priceWarmer = priceWarmer;
+        this.eventPublisher = eventPublisher;
+        this.userExecutor = userExecutor;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.maxOrders = maxOrders;
+    }
+
+    public BatchTradeResultDTO execute(String userId, BatchTradeRequest request) {
+        Mode mode = Mode.of(request.getMode());
+        List<TradeRequest> orders = request.getOrders();
+        if (orders == null || orders.isEmpty()) {
+            throw new RuntimeException("Basket has no orders");
+        }
+        if (orders.size() > maxOrders) {
+            throw new RuntimeException("Basket has " + orders.size() + " orders, limit is " + maxOrders);
+        }
+
+        // One quote fetch for the whole basket, outside the lock and the transaction
+        Set<String> symbols = new LinkedHashSet<>();
+        for (TradeRequest order : orders) {
+            String symbol = normalize(order.getSymbol());
+            if (symbol != null) {
+                symbols.add(symbol);
+            }
+        }
+        Map<String, BigDecimal> prices = stockPriceService.getPrices(symbols);
+
+        BatchTradeResultDTO result = run(userId, mode, orders, prices, true, null);
+        baskets.incrementAndGet();
+        if (result.getExecuted() == 0) {
+            basketsRejected.incrementAndGet();
+        }
+        ordersExecuted.addAndGet(result.getExecuted());
+        ordersRejected.addAndGet(result.getRejected());
+        return result;
+    }
+
+    /**
+     * Applies already priced orders best-effort in the given order, without moving sells
+     * first, as journaled commands must take effect in the order they were accepted.
+     * {@code inTransaction} sees the per-order results inside the transaction, before commit,
+     * and the transaction commits even if every order was rejected.
+     */
+    public BatchTradeResultDTO applyInOrder(String userId, List<TradeRequest> orders, Map<String, BigDecimal> prices,
+            Consumer<BatchTradeResultDTO> inTransaction) {
+        return run(userId, Mode.BEST_EFFORT, orders, prices, false, inTransaction);
+    }
+
+    private BatchTradeResultDTO run(String userId, Mode mode, List<TradeRequest> orders, Map<String, BigDecimal> prices,
+            boolean sellsFirst, Consumer<BatchTradeResultDTO> inTransaction) {
+        Outcome outcome = userExecutor.execute(userId, tx -> {
+            Outcome attempt = apply(userId, mode, orders, prices, sellsFirst);
+            if (inTransaction != null) {
+                inTransaction.accept(attempt.result);
+            } else if (!attempt.commit) {
+                tx.setRollbackOnly();
+            }
+            return attempt;
+        });
+
+        // After commit, so a retried or rolled back attempt never counts twice
+        if (outcome.commit) {
+            outcome.opened.forEach(priceWarmer::track);
+            outcome.closed.forEach(priceWarmer::untrack);
+        }
+        return outcome.result;
+    }
+
+    // One attempt inside a transaction; writes only if the outcome says commit
+    private Outcome apply(String userId, Mode mode, List<TradeRequest> orders, Map<String, BigDecimal> prices,
+            boolean sellsFirst) {
+        User user = userRepository.findById(userId).orElse(null);
+        long startCash = user != null && user.getCashBalance() != null ? FixedPoint.of(user.getCashBalance()) : 0;
+        long startRealized = user != null && user.getRealizedPnL() != null ? FixedPoint.of(user.getRealizedPnL()) : 0;
+        long cashBalance = startCash;
+        long realizedPnL = startRealized;
+
+        Map<String, Position> positions = new HashMap<>();
+        jdbcTemplate.query("select id, symbol, quantity, average_price, version from holdings where user_id = ?",
+                rs -> {
+                    Position position = new Position(rs.getLong(1), rs.getLong(5), rs.getInt(3),
+                            FixedPoint.of(rs.getDouble(4)));
+                    positions.put(rs.getString(2), position);
+                }, userId);
+
+        int n = orders.size();
+        BatchOrderResultDTO[] results = new BatchOrderResultDTO[n];
+        Transaction.TransactionType[] types = new Transaction.TransactionType[n];
+        for (int i = 0; i < n; i++) {
+            TradeRequest order = orders.get(i);
+            String symbol = normalize(order.getSymbol());
+            types[i] = parseType(order.getType());
+            results[i] = BatchOrderResultDTO.builder()
+                    .index(i)
+                    .symbol(symbol)
+                    .type(types[i] != null ? types[i].name() : order.getType())
+                    .quantity(order.getQuantity())
+                    .price(symbol != null ? prices.get(symbol) : null)
+                    .build();
+        }
+
+        // Sells first, so their proceeds count towards the basket's buys
+        int[] sequence = new int[n];
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            if (!sellsFirst || types[i] == Transaction.TransactionType.SELL) {
+                sequence[next++] = i;
+            }
+        }
+        for (int i = 0; sellsFirst && i < n; i++) {
+            if (types[i] != Transaction.TransactionType.SELL) {
+                sequence[next++] = i;
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> transactionRows = new ArrayList<>();
+        int rejected = 0;
+        for (int i : sequence) {
+            BatchOrderResultDTO result = results[i];
+            String error = validate(result, types[i]);
+            if (error == null) {
+                String symbol = result.getSymbol();
+                int quantity = result.getQuantity();
+                long price = FixedPoint.of(result.getPrice());
+                long tradeValue = FixedPoint.times(price, quantity);
+                Position position = positions.get(symbol);
+
+                if (types[i] == Transaction.TransactionType.BUY) {
+                    if (cashBalance < tradeValue) {
+                        error = "Insufficient Funds! Available: " + FixedPoint.toBigDecimal(cashBalance)
+                                + ", Required: " + FixedPoint.toBigDecimal(tradeValue);
+                    } else {
+                        if (position == null) {
+                            position = new Position(null, null, 0, 0);
+                            positions.put(symbol, position);
+                        }
+                        // Each trade rounds the totals to cents, like one stored by TradeService
+                        cashBalance = FixedPoint.roundMoney(cashBalance - tradeValue);
+                        // Weighted Average Logic (rounded HALF_UP to 4 decimals)
+                        int newQty = position.quantity + quantity;
+                        long oldTotal = FixedPoint.times(position.average, position.quantity);
+                        position.average = FixedPoint.divide(oldTotal + tradeValue, newQty);
+                        position.quantity = newQty;
+                    }
+                } else if (position == null || position.quantity == 0) {
+                    error = "Cannot sell stock not owned: " + symbol;
+                } else if (position.quantity < quantity) {
+                    error = "Insufficient quantity to sell";
+                } else {
+                    // Realized PnL Calculation: (SellPrice - BuyAvg) * quantity
+                    realizedPnL = FixedPoint.roundMoney(realizedPnL
+                            + FixedPoint.times(price - position.average, quantity));
+                    cashBalance = FixedPoint.roundMoney(cashBalance + tradeValue);
+                    position.quantity -= quantity;
+                }
+
+                if (error == null) {
+                    position.changed = true;
+                    position.tradePrice = price;
+                    transactionRows.add(new Object[] {
+                            userId, symbol, types[i].name(), quantity, FixedPoint.toDouble(price), Timestamp.valueOf(now)
+                    });
+                }
+            }
+            if (error != null) {
+                result.setStatus("REJECTED");
+                result.setMessage(error);
+                rejected++;
+            } else {
+                result.setStatus("EXECUTED");
+            }
+        }
+
+        boolean commit = !transactionRows.isEmpty() && (mode == Mode.BEST_EFFORT || rejected == 0);
+        if (!commit) {
+            for (BatchOrderResultDTO result : results) {
+                if ("EXECUTED".equals(result.getStatus())) {
+                    result.setStatus("SKIPPED");
+                    result.setMessage("Not executed, basket rejected");
+                }
+            }
+            return new Outcome(false, build(mode, results, 0, rejected, startCash, startRealized), List.of(), List.of());
+        }
+
+        // Write: user state through JPA (version checked), holdings and transactions as JDBC batches
+        if (user == null) {
+            user = User.builder()
+                    .id(userId)
+                    .email("user@example.com") // Placeholder
+                    .build();
+        }
+        user.setCashBalance(FixedPoint.toMoney(cashBalance));
+        user.setRealizedPnL(FixedPoint.toMoney(realizedPnL));
+        userRepository.save(user);
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        List<String> opened = new ArrayList<>();
+        List<String> closed = new ArrayList<>();
+        for (Map.Entry<String, Position> entry : positions.entrySet()) {
+            Position position = entry.getValue();
+            if (!position.changed) {
+                continue;
+            }
+            String symbol = entry.getKey();
+            if (position.id == null) {
+                if (position.quantity > 0) {
+                    inserts.add(new Object[] { userId, symbol, position.quantity, FixedPoint.toDouble(position.average) });
+                }
+            } else if (position.quantity == 0) {
+                deletes.add(new Object[] { position.id, position.version });
+            } else {
+                updates.add(new Object[] { position.quantity, FixedPoint.toDouble(position.average),
+                        position.id, position.version });
+            }
+            if (position.openedQuantity == 0 && position.quantity > 0) {
+                opened.add(symbol);
+            } else if (position.openedQuantity > 0 && position.quantity == 0) {
+                closed.add(symbol);
+            }
+        }
+        // A row changed by another instance since we read it fails the version check; the executor retries
+        checkVersions(jdbcTemplate.batchUpdate("update holdings set quantity = ?, average_price = ?,"
+                + " version = version + 1 where id = ? and version = ?", updates));
+        checkVersions(jdbcTemplate.batchUpdate("delete from holdings where id = ? and version = ?", deletes));
+        jdbcTemplate.batchUpdate("insert into holdings (user_id, symbol, quantity, average_price, version)"
+                + " values (?, ?, ?, ?, 0)", inserts);
+        jdbcTemplate.batchUpdate("insert into transactions (user_id, symbol, type, quantity, price, timestamp)"
+                + " values (?, ?, ?, ?, ?, ?)", transactionRows);
+
+        // Live valuation and today's snapshot pick these up after commit, one per changed position
+        for (Map.Entry<String, Position> entry : positions.entrySet()) {
+            Position position = entry.getValue();
+            if (position.changed) {
+                eventPublisher.publishEvent(new PortfolioChangedEvent(userId, user.getCashBalance(),
+                        user.getRealizedPnL(), entry.getKey(), position.quantity,
+                        FixedPoint.toDouble(position.average), FixedPoint.toBigDecimal(position.tradePrice)));
+            }
+        }
+        return new Outcome(true, build(mode, results, transactionRows.size(), rejected, cashBalance, realizedPnL),
+                opened, closed);
+    }
+
+    private static String validate(BatchOrderResultDTO order, Transaction.TransactionType type) {
+        if (order.getSymbol() == null) {
+            return "Symbol is required";
+        }
+        if (type != Transaction.TransactionType.BUY && type != Transaction.TransactionType.SELL) {
+            return "type must be BUY or SELL";
+        }
+        if (order.getQuantity() == null || order.getQuantity() <= 0) {
+            return "Quantity must be positive";
+        }
+        if (order.getPrice() == null) {
+            return "No price available for " + order.getSymbol();
+        }
+        return null;
+    }
+
+    private static void checkVersions(int[] counts) {
+        for (int count : counts) {
+            if (count == 0) {
+                throw new OptimisticLockingFailureException("Holding was updated concurrently");
+            }
+        }
+    }
+
+    private static BatchTradeResultDTO build(Mode mode, BatchOrderResultDTO[] results, int executed, int rejected,
+            long cashBalance, long realizedPnL) {
+        String status = executed == 0 ? "REJECTED" : rejected == 0 ? "EXECUTED" : "PARTIAL";
+        return BatchTradeResultDTO.builder()
+                .mode(mode.name())
+                .status(status)
+                .executed(executed)
+                .rejected(rejected)
+                .cashBalance(FixedPoint.toMoney(cashBalance))
+                .realizedPnL(FixedPoint.toMoney(realizedPnL))
+                .orders(Arrays.asList(results))
+                .build();
+    }
+
+    private static String normalize(String symbol) {
+        return symbol != null && !symbol.isBlank() ? symbol.trim().toUpperCase() : null;
+    }
+
+    private static Transaction.TransactionType parseType(String type) {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return Transaction.TransactionType.valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("baskets", baskets.get());
+        stats.put("basketsRejected", basketsRejected.get());
+        stats.put("ordersExecuted", ordersExecuted.get());
+        stats.put("ordersRejected", ordersRejected.get());
+        stats.put("maxOrders", maxOrders);
+        return stats;
+    }
+
+    // A holding as the basket moves it; id is null for a position the basket opens
+    private static final class Position {
+        final Long id;
+        final Long version;
+        final int openedQuantity; // Quantity before the basket
+        int quantity;
+        long average;
+        long tradePrice;
+        boolean changed;
+
+        Position(Long id, Long version, int quantity, long average) {
+            this.id = id;
+            this.version = version;
+            this.openedQuantity = quantity;
+            this.quantity = quantity;
+            this.average = average;
+        }
+    }
+
+    // What an attempt did; symbols opened or closed are handed to the warmer after commit
+    private static final class Outcome {
+        final boolean commit;
+        final BatchTradeResultDTO result;
+        final List<String> opened;
+        final List<String> closed;
+
+        Outcome(boolean commit, BatchTradeResultDTO result, List<String> opened, List<String> closed) {
+            this.commit = commit;
+            this.result = result;
+            this.opened = opened;
+            this.closed = closed;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.apex.portfolio.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values a range of users' portfolios in one pass, for the nightly snapshot job.
+ * <p>
+ * Users and holdings in the range are read with plain JDBC into parallel primitive arrays
+ * (user index, symbol index, quantity, average cost in {@link FixedPoint} units) with
+ * strings interned into two dictionaries. Each distinct symbol is priced exactly once
+ * in a single batch, holdings are grouped by user with a counting sort, and per-user
+ * totals are summed over the users. Nothing is loaded through JPA, so the cost of a range
+ * is two indexed range scans plus one price batch. {@link SnapshotJob} runs ranges in
+ * parallel, so a range itself is valued on the calling thread.
+ */
+@Service
+public class BulkValuationEngine {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StockPriceService stockPriceService;
+
+    public BulkValuationEngine(DataSource dataSource, StockPriceService stockPriceService,
+            @Value("${snapshot.bulk.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.stockPriceService = stockPriceService;
+    }
+
+    /**
+     * Result of a bulk valuation: one row per user, amounts in {@link FixedPoint} units.
+     * Holdings without a quote are valued at cost, as on the dashboard.
+     */
+    public static final class Valuation {
+        private final String[] userIds;
+        private final long[] cashBalance;
+        private final long[] realizedPnL;
+        private final long[] totalValue;
+        private final long[] totalInvested;
+
+        Valuation(String[] userIds, long[] cashBalance, long[] realizedPnL, long[] totalValue, long[] totalInvested) {
+            this.userIds = userIds;
+            this.cashBalance = cashBalance;
+            this.realizedPnL = realizedPnL;
+            this.totalValue = totalValue;
+            this.totalInvested = totalInvested;
+        }
+
+        public int size() {
+            return userIds.length;
+        }
+
+        public String userId(int i) {
+            return userIds[i];
+        }
+
+        public long cashBalance(int i) {
+            return cashBalance[i];
+        }
+
+        public long realizedPnL(int i) {
+            return realizedPnL[i];
+        }
+
+        public long totalValue(int i) {
+            return totalValue[i];
+        }
+
+        public long totalInvested(int i) {
+            return totalInvested[i];
+        }
+
+        public long netWorth(int i) {
+            return totalValue[i] + cashBalance[i];
+        }
+
+        public long unrealizedPnL(int i) {
+            return totalValue[i] - totalInvested[i];
+        }
+    }
+
+    /**
+     * Values the users with {@code afterUserId < id <= lastUserId}; {@code afterUserId}
+     * is "" for the first range. Holdings whose user has no users row are valued too.
+     */
+    public Valuation valueRange(String afterUserId, String lastUserId) {
+        // 1. Users with their cash
+        Map<String, Integer> userIndex = new HashMap<>();
+        List<String> userIds = new ArrayList<>();
+        LongColumn cash = new LongColumn();
+        LongColumn realized = new LongColumn();
+        jdbcTemplate.query("select id, cash_balance, realized_pnl from users where id > ? and id <= ?", rs -> {
+            userIndex.put(rs.getString(1), userIds.size());
+            userIds.add(rs.getString(1));
+            cash.add(units(rs.getBigDecimal(2)));
+            realized.add(units(rs.getBigDecimal(3)));
+        }, afterUserId, lastUserId);
+
+        // 2. Holdings as columns
+        Map<String, Integer> symbolIndex = new HashMap<>();
+        List<String> symbols = new ArrayList<>();
+        IntColumn holdingUser = new IntColumn();
+        IntColumn holdingSymbol = new IntColumn();
+        LongColumn quantity = new LongColumn();
+        LongColumn averagePrice = new LongColumn();
+        jdbcTemplate.query("select user_id, symbol, quantity, average_price from holdings"
+                + " where user_id > ? and user_id <= ?", rs -> {
+            String userId = rs.getString(1);
+            Integer u = userIndex.get(userId);
+            if (u == null) {
+                // Holdings without a users row still get valued, with no cash
+                u = userIds.size();
+                userIndex.put(userId, u);
+                userIds.add(userId);
+                cash.add(0);
+                realized.add(0);
+            }
+            String symbol = rs.getString(2).toUpperCase();
+            Integer s = symbolIndex.get(symbol);
+            if (s == null) {
+                s = symbols.size();
+                symbolIndex.put(symbol, s);
+                symbols.add(symbol);
+            }
+            holdingUser.add(u);
+            holdingSymbol.add(s);
+            quantity.add(rs.getLong(3));
+            averagePrice.add(FixedPoint.of(rs.getDouble(4)));
+        }, afterUserId, lastUserId);
+
+        // 3. One price per distinct symbol
+        long[] prices = new long[symbols.size()];
+        Arrays.fill(prices, FixedPoint.NONE);
+        Map<String, BigDecimal> quotes = symbols.isEmpty() ? Map.of() : stockPriceService.getPrices(symbols);
+        for (int s = 0; s < prices.length; s++) {
+            BigDecimal quote = quotes.get(symbols.get(s));
+            if (quote != null) {
+                prices[s] = FixedPoint.of(quote);
+            }
+        }
+
+        // 4. Group holdings by user (counting sort), then reduce each user's slice
+        int userCount = userIds.size();
+        int holdingCount = holdingUser.size();
+        int[] start = new int[userCount + 1];
+        for (int h = 0; h < holdingCount; h++) {
+            start[holdingUser.get(h) + 1]++;
+        }
+        for (int u = 0; u < userCount; u++) {
+            start[u + 1] += start[u];
+        }
+        int[] order = new int[holdingCount];
+        int[] next = Arrays.copyOf(start, userCount);
+        for (int h = 0; h < holdingCount; h++) {
+            order[next[holdingUser.get(h)]++] = h;
+        }
+
+        long[] value = new long[userCount];
+        long[] invested = new long[userCount];
+        for (int u = 0; u < userCount; u++) {
+            long v = 0;
+            long cost = 0;
+            for (int i = start[u]; i < start[u + 1]; i++) {
+                int h = order[i];
+                long qty = quantity.get(h);
+                long avg = averagePrice.get(h);
+                long price = prices[holdingSymbol.get(h)];
+                v = Math.addExact(v, FixedPoint.times(price != FixedPoint.NONE ? price : avg, qty));
+                cost = Math.addExact(cost, FixedPoint.times(avg, qty));
+            }
+            value[u] = v;
+            invested[u] = cost;
+        }
+
+        return new Valuation(userIds.toArray(new String[0]), cash.toArray(), realized.toArray(), value, invested);
+    }
+
+    private static long units(BigDecimal value) {
+        return value != null ? FixedPoint.of(value) : 0;
+    }
+
+    // Growable primitive columns, so a million holdings are a few flat arrays rather than objects
+    private static final class IntColumn {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static final class LongColumn {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long get(int i) {
+            return values[i];
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
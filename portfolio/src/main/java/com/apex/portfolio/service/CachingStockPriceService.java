@@ -0,0 +1,423 @@
+package com.apex.portfolio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caching decorator in front of the upstream price source.
+ * <p>
+ * Fresh entries (younger than the TTL) are served directly. Entries past the TTL but
+ * inside the stale window are still served while a single background refresh runs.
+ * Concurrent misses for the same symbol share one upstream call.
+ * <p>
+ * A {@link FallbackPrice} from upstream is passed to the caller but neither cached nor
+ * published, so the next lookup asks upstream again and listeners never see it.
+ */
+@Service
+@Primary
+public class CachingStockPriceService implements StockPriceService, AsyncStockPriceService {
+
+    private final StockPriceService delegate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final int maxSize;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<BigDecimal>> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r, "price-cache-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalescedMisses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong fallbacksSkipped = new AtomicLong();
+
+    public CachingStockPriceService(@Qualifier("upstreamStockPriceService") StockPriceService delegate,
+            @Value("${market.price-cache.ttl-seconds:30}") long ttlSeconds,
+            @Value("${market.price-cache.stale-seconds:300}") long staleSeconds,
+            @Value("${market.price-cache.max-size:5000}") int maxSize,
+            ApplicationEventPublisher eventPublisher) {
+        this.delegate = delegate;
+        this.eventPublisher = eventPublisher;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.staleNanos = staleSeconds * 1_000_000_000L;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public BigDecimal getPrice(String symbol) {
+        String key = symbol.toUpperCase();
+        Entry entry = lookup(key);
+        if (entry != null) {
+            return entry.price;
+        }
+        misses.incrementAndGet();
+        return load(key);
+    }
+
+    @Override
+    public Map<String, BigDecimal> getPrices(Collection<String> symbols) {
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+
+        for (String symbol : symbols) {
+            String key = symbol.toUpperCase();
+            if (prices.containsKey(key) || missing.contains(key)) {
+                continue;
+            }
+            Entry entry = lookup(key);
+            if (entry != null) {
+                prices.put(key, entry.price);
+            } else {
+                misses.incrementAndGet();
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return prices;
+        }
+
+        // Claim the misses nobody else is loading; wait on the ones already in flight
+        Map<String, CompletableFuture<BigDecimal>> claimed = new LinkedHashMap<>();
+        Map<String, CompletableFuture<BigDecimal>> waiting = new LinkedHashMap<>();
+        for (String key : missing) {
+            CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+            CompletableFuture<BigDecimal> existing = inFlight.putIfAbsent(key, mine);
+            if (existing != null) {
+                coalescedMisses.incrementAndGet();
+                waiting.put(key, existing);
+            } else {
+                claimed.put(key, mine);
+            }
+        }
+
+        if (!claimed.isEmpty()) {
+            loadBatch(claimed);
+        }
+
+        Map<String, CompletableFuture<BigDecimal>> all = new LinkedHashMap<>(claimed);
+        all.putAll(waiting);
+        for (String key : missing) {
+            try {
+                prices.put(key, all.get(key).join());
+            } catch (Exception e) {
+                System.err.println("[CachingStockPriceService] No price for " + key + ": " + e.getMessage());
+            }
+        }
+        return prices;
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getPriceAsync(String symbol) {
+        String key = symbol.toUpperCase();
+        Entry entry = lookup(key);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry.price);
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+        CompletableFuture<BigDecimal> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedMisses.incrementAndGet();
+            return existing;
+        }
+        if (delegate instanceof AsyncStockPriceService) {
+            loads.incrementAndGet();
+            ((AsyncStockPriceService) delegate).getPriceAsync(key).whenComplete((price, error) -> {
+                if (error != null) {
+                    loadFailures.incrementAndGet();
+                    mine.completeExceptionally(error);
+                } else {
+                    put(key, price);
+                    mine.complete(price);
+                }
+                inFlight.remove(key, mine);
+            });
+        } else {
+            try {
+                refreshExecutor.execute(() -> runLoad(key, mine));
+            } catch (Exception e) {
+                inFlight.remove(key, mine);
+                mine.completeExceptionally(e);
+            }
+        }
+        return mine;
+    }
+
+    /**
+     * Cache hits are answered immediately; all misses go upstream as one batched load in
+     * the background, and whatever has arrived when the deadline passes is returned.
+     */
+    @Override
+    public Map<String, BigDecimal> getPricesWithin(Collection<String> symbols, Duration deadline) {
+        Map<String, CompletableFuture<BigDecimal>> futures = new LinkedHashMap<>();
+        Map<String, CompletableFuture<BigDecimal>> claimed = new LinkedHashMap<>();
+
+        for (String symbol : symbols) {
+            String key = symbol.toUpperCase();
+            if (futures.containsKey(key)) {
+                continue;
+            }
+            Entry entry = lookup(key);
+            if (entry != null) {
+                futures.put(key, CompletableFuture.completedFuture(entry.price));
+                continue;
+            }
+            misses.incrementAndGet();
+            CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+            CompletableFuture<BigDecimal> existing = inFlight.putIfAbsent(key, mine);
+            if (existing != null) {
+                coalescedMisses.incrementAndGet();
+                futures.put(key, existing);
+            } else {
+                claimed.put(key, mine);
+                futures.put(key, mine);
+            }
+        }
+
+        if (!claimed.isEmpty()) {
+            try {
+                refreshExecutor.execute(() -> loadBatch(claimed));
+            } catch (Exception e) {
+                claimed.forEach(inFlight::remove);
+                claimed.values().forEach(future -> future.completeExceptionally(e));
+            }
+        }
+        return AsyncStockPriceService.collectWithin(futures, deadline);
+    }
+
+    /**
+     * Force-reloads the given symbols from upstream in one batch, regardless of age.
+     * Symbols already being loaded are skipped. Used by the background pre-warmer.
+     */
+    public void refresh(Collection<String> symbols) {
+        Map<String, CompletableFuture<BigDecimal>> claimed = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            String key = symbol.toUpperCase();
+            CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+            if (!claimed.containsKey(key) && inFlight.putIfAbsent(key, mine) == null) {
+                claimed.put(key, mine);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            loadBatch(claimed);
+        }
+    }
+
+    /**
+     * Age of the cached price in milliseconds, or -1 if the symbol is not cached.
+     */
+    public long ageMillis(String symbol) {
+        Entry entry = entries.get(symbol.toUpperCase());
+        return entry == null ? -1 : (System.nanoTime() - entry.loadedAt) / 1_000_000L;
+    }
+
+    /**
+     * Returns a usable cache entry, or null on a miss. Entries inside the stale
+     * window are returned as-is and trigger one background refresh.
+     */
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long age = now - entry.loadedAt;
+        if (age <= ttlNanos) {
+            entry.lastAccess = now;
+            hits.incrementAndGet();
+            return entry;
+        }
+        if (age <= ttlNanos + staleNanos) {
+            entry.lastAccess = now;
+            staleHits.incrementAndGet();
+            refreshInBackground(key);
+            return entry;
+        }
+        return null;
+    }
+
+    private BigDecimal load(String key) {
+        CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+        CompletableFuture<BigDecimal> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedMisses.incrementAndGet();
+            return join(existing);
+        }
+        runLoad(key, mine);
+        return join(mine);
+    }
+
+    private void refreshInBackground(String key) {
+        CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return; // Someone is already refreshing this symbol
+        }
+        try {
+            refreshExecutor.execute(() -> runLoad(key, mine));
+        } catch (Exception e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+    }
+
+    private void runLoad(String key, CompletableFuture<BigDecimal> future) {
+        loads.incrementAndGet();
+        try {
+            BigDecimal price = delegate.getPrice(key);
+            put(key, price);
+            future.complete(price);
+        } catch (Exception e) {
+            loadFailures.incrementAndGet();
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private void loadBatch(Map<String, CompletableFuture<BigDecimal>> claimed) {
+        loads.incrementAndGet();
+        try {
+            Map<String, BigDecimal> fetched = delegate.getPrices(claimed.keySet());
+            claimed.forEach((key, future) -> {
+                BigDecimal price = fetched.get(key);
+                if (price != null) {
+                    put(key, price);
+                    future.complete(price);
+                } else {
+                    loadFailures.incrementAndGet();
+                    future.completeExceptionally(new RuntimeException("No price returned for " + key));
+                }
+            });
+        } catch (Exception e) {
+            loadFailures.incrementAndGet();
+            claimed.values().forEach(future -> future.completeExceptionally(e));
+        } finally {
+            claimed.forEach(inFlight::remove);
+        }
+    }
+
+    private void put(String key, BigDecimal price) {
+        if (FallbackPrice.isFallback(price)) {
+            fallbacksSkipped.incrementAndGet();
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(price, System.nanoTime()));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+        // Let live valuations follow the tick
+        if (previous == null || previous.price.compareTo(price) != 0) {
+            try {
+                eventPublisher.publishEvent(new PriceChangedEvent(key, price));
+            } catch (Exception e) {
+                System.err.println("[CachingStockPriceService] Price listener failed for " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Approximate LRU: once over capacity, drop the least recently used entries until
+     * the cache is back at 90% of its size so eviction work is amortized.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = (int) (maxSize * 0.9);
+            int excess = entries.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+            snapshot.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            for (int i = 0; i < excess && i < snapshot.size(); i++) {
+                if (entries.remove(snapshot.get(i).getKey(), snapshot.get(i).getValue())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static BigDecimal join(CompletableFuture<BigDecimal> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.get() + staleHits.get();
+        long total = hitCount + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("misses", misses.get());
+        stats.put("coalescedMisses", coalescedMisses.get());
+        stats.put("loads", loads.get());
+        stats.put("loadFailures", loadFailures.get());
+        stats.put("evictions", evictions.get());
+        stats.put("fallbacksSkipped", fallbacksSkipped.get());
+        stats.put("hitRate", total > 0 ? (double) hitCount / total : 0.0);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private static final class Entry {
+        final BigDecimal price;
+        final long loadedAt;
+        volatile long lastAccess;
+
+        Entry(BigDecimal price, long loadedAt) {
+            this.price = price;
+            this.loadedAt = loadedAt;
+            this.lastAccess = loadedAt;
+        }
+    }
+}
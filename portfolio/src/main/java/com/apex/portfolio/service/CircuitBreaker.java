@@ -0,0 +1,105 @@
+package com.apex.portfolio.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Minimal per-source circuit breaker.
+ * <p>
+ * CLOSED: calls go through; after {@code failureThreshold} consecutive failures the
+ * breaker OPENs. OPEN: calls are rejected immediately. Once {@code openMillis} have
+ * passed a single background probe may claim the breaker (HALF_OPEN); its result
+ * closes or re-opens it. Request threads never act as probes.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt = 0;
+
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timesOpened = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    public boolean allowRequest() {
+        if (state.get() == State.CLOSED) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public void recordSuccess() {
+        successes.incrementAndGet();
+        consecutiveFailures.set(0);
+        state.set(State.CLOSED);
+    }
+
+    public void recordFailure() {
+        failures.incrementAndGet();
+        if (state.get() == State.HALF_OPEN) {
+            trip();
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold
+                && state.compareAndSet(State.CLOSED, State.OPEN)) {
+            openedAt = System.currentTimeMillis();
+            timesOpened.incrementAndGet();
+        }
+    }
+
+    /**
+     * Moves an OPEN breaker whose cool-down has expired to HALF_OPEN. Returns true if
+     * the caller won the right to probe the source.
+     */
+    public boolean tryStartProbe() {
+        return state.get() == State.OPEN
+                && System.currentTimeMillis() - openedAt >= openMillis
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    private void trip() {
+        openedAt = System.currentTimeMillis();
+        state.set(State.OPEN);
+        timesOpened.incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.get().name());
+        stats.put("consecutiveFailures", consecutiveFailures.get());
+        stats.put("successes", successes.get());
+        stats.put("failures", failures.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timesOpened", timesOpened.get());
+        return stats;
+    }
+}
@@ -0,0 +1,21 @@
+package com.apex.portfolio.service;
+
+import java.math.BigDecimal;
+
+/**
+ * A made-up price returned when no upstream source answered. Callers can use it like
+ * any price, but the quote cache does not keep it or publish it as a price change, and
+ * the quote stream does not push it.
+ */
+public final class FallbackPrice extends BigDecimal {
+
+    private static final long serialVersionUID = 1L;
+
+    public FallbackPrice(BigDecimal price) {
+        super(price.unscaledValue(), price.scale());
+    }
+
+    public static boolean isFallback(BigDecimal price) {
+        return price instanceof FallbackPrice;
+    }
+}
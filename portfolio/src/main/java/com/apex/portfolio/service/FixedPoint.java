@@ -0,0 +1,122 @@
+package com.apex.portfolio.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point arithmetic for prices and money on plain {@code long}s.
+ * <p>
+ * A value is held in units of 1/10,000 (four decimal places, the precision average
+ * prices are stored with), so sums and price x quantity products are exact and never
+ * allocate. Every operation that can lose precision (conversion from double or
+ * BigDecimal, division) rounds HALF_UP, the same rule the BigDecimal code used.
+ * Overflow throws rather than wrapping. BigDecimal is only produced at the API and
+ * database boundary via {@link #toBigDecimal}.
+ */
+public final class FixedPoint {
+
+    public static final int SCALE = 4;
+    public static final long ONE = 10_000L;
+
+    // Marker for "no value" (e.g. no quote), since a long cannot be null
+    public static final long NONE = Long.MIN_VALUE;
+
+    private FixedPoint() {
+    }
+
+    public static long of(BigDecimal value) {
+        long units = value.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        if (units == NONE) {
+            throw new ArithmeticException("Not representable as fixed point: " + value);
+        }
+        return units;
+    }
+
+    public static long of(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= Long.MAX_VALUE / (double) ONE) {
+            throw new ArithmeticException("Not representable as fixed point: " + value);
+        }
+        // Math.round rounds halves up towards positive infinity; HALF_UP is away from zero
+        long units = Math.round(Math.abs(value) * ONE);
+        return value < 0 ? -units : units;
+    }
+
+    public static long ofNullable(BigDecimal value) {
+        return value != null ? of(value) : NONE;
+    }
+
+    public static long ofNullable(Double value) {
+        return value != null ? of(value) : NONE;
+    }
+
+    /**
+     * Price x quantity; exact.
+     */
+    public static long times(long value, long quantity) {
+        return Math.multiplyExact(value, quantity);
+    }
+
+    /**
+     * value / divisor rounded HALF_UP, e.g. total cost / quantity for an average price.
+     */
+    public static long divide(long value, long divisor) {
+        if (divisor == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        long quotient = value / divisor;
+        long remainder = value % divisor;
+        // Round half away from zero
+        if (Math.abs(remainder) * 2 >= Math.abs(divisor)) {
+            quotient += (value < 0) == (divisor < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    /**
+     * part / whole as a percentage in fixed point (12.34% is 12.34 * ONE), rounded to
+     * two decimals like the previous divide(whole, 4, HALF_UP) * 100; zero if whole <= 0.
+     */
+    public static long percent(long part, long whole) {
+        if (whole <= 0) {
+            return 0;
+        }
+        long ratio;
+        if (Math.abs(part) < Long.MAX_VALUE / ONE) {
+            ratio = divide(part * ONE, whole);
+        } else {
+            ratio = BigDecimal.valueOf(part).divide(BigDecimal.valueOf(whole), SCALE, RoundingMode.HALF_UP)
+                    .unscaledValue().longValueExact();
+        }
+        return ratio * 100;
+    }
+
+    public static double toDouble(long value) {
+        return (double) value / ONE;
+    }
+
+    /**
+     * API/database representation: two decimals when that is exact (money, quotes),
+     * otherwise all four (average prices).
+     */
+    public static BigDecimal toBigDecimal(long value) {
+        if (value == NONE) {
+            return null;
+        }
+        return value % 100 == 0 ? BigDecimal.valueOf(value / 100, 2) : BigDecimal.valueOf(value, SCALE);
+    }
+
+    /**
+     * Rounded HALF_UP to whole cents, still in units: what a numeric(38,2) column keeps of
+     * the value. Stored cash and realized P&L are rounded this way after every transaction.
+     */
+    public static long roundMoney(long value) {
+        return divide(value, 100) * 100;
+    }
+
+    /**
+     * Rounded HALF_UP to two decimals, for totals that are reported in whole cents.
+     */
+    public static BigDecimal toMoney(long value) {
+        return BigDecimal.valueOf(divide(value, 100), 2);
+    }
+}
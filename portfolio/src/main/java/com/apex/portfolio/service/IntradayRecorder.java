@@ -0,0 +1,174 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.IntradayDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Intraday net worth per user, sampled from the live valuation into a fixed-size ring of
+ * primitives (an int second offset and a fixed-point long per sample, about 12 bytes).
+ * <p>
+ * Only users with a live book are sampled (reading the curve activates one), which costs
+ * a lock and a field read each; nothing is written to the database during the day. At the daily close
+ * ({@code market.intraday.close-cron}) each sampled user's snapshot is upserted with the
+ * closing state and the rings are cleared.
+ */
+@Component
+public class IntradayRecorder {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final LivePortfolioValuation liveValuation;
+    private final PortfolioService portfolioService;
+    private final SnapshotService snapshotService;
+    private final int capacity;
+    private final long sampleMillis;
+    private final boolean marketHoursOnly;
+
+    private final ConcurrentHashMap<String, Ring> rings = new ConcurrentHashMap<>();
+
+    // Counters
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong compactedUsers = new AtomicLong();
+    private volatile long lastSampleMillis;
+
+    public IntradayRecorder(LivePortfolioValuation liveValuation, PortfolioService portfolioService,
+            SnapshotService snapshotService,
+            @Value("${market.intraday.capacity:780}") int capacity,
+            @Value("${market.intraday.sample-ms:60000}") long sampleMillis,
+            @Value("${market.intraday.market-hours-only:true}") boolean marketHoursOnly) {
+        this.liveValuation = liveValuation;
+        this.portfolioService = portfolioService;
+        this.snapshotService = snapshotService;
+        this.capacity = capacity;
+        this.sampleMillis = sampleMillis;
+        this.marketHoursOnly = marketHoursOnly;
+    }
+
+    @Scheduled(fixedRateString = "${market.intraday.sample-ms:60000}")
+    public void sample() {
+        if (marketHoursOnly && !PriceWarmer.isAnyMarketOpen(ZonedDateTime.now())) {
+            return;
+        }
+        long started = System.nanoTime();
+        long now = System.currentTimeMillis();
+        liveValuation.forEachBook((userId, book) -> {
+            rings.computeIfAbsent(userId, k -> new Ring(capacity)).add(now, book.netWorth());
+            samples.incrementAndGet();
+        });
+        lastSampleMillis = (System.nanoTime() - started) / 1_000_000L;
+    }
+
+    /**
+     * Today's curve for the user; empty if the user has not been sampled yet.
+     */
+    public IntradayDTO getIntraday(String userId) {
+        Ring ring = rings.get(userId);
+        if (ring == null) {
+            // Make sure the user has a live book, so sampling starts from the next tick
+            portfolioService.getSummary(userId);
+        }
+        IntradayDTO dto = ring != null ? ring.toDto() : IntradayDTO.builder()
+                .timestamps(new long[0])
+                .netWorth(new BigDecimal[0])
+                .build();
+        dto.setIntervalSeconds(sampleMillis / 1000);
+        return dto;
+    }
+
+    // Market close: the day's final state goes into the daily snapshot, then the rings start over
+    @Scheduled(cron = "${market.intraday.close-cron:0 5 16 * * MON-FRI}",
+            zone = "${market.intraday.close-zone:America/New_York}")
+    public void compact() {
+        for (String userId : new ArrayList<>(rings.keySet())) {
+            rings.remove(userId);
+            try {
+                snapshotService.captureUserSnapshot(userId);
+                compactedUsers.incrementAndGet();
+            } catch (Exception e) {
+                System.err.println("[IntradayRecorder] Close snapshot for " + userId + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", rings.size());
+        stats.put("capacity", capacity);
+        stats.put("sampleMs", sampleMillis);
+        stats.put("samples", samples.get());
+        stats.put("lastSampleMillis", lastSampleMillis);
+        stats.put("compactedUsers", compactedUsers.get());
+        return stats;
+    }
+
+    /**
+     * Fixed-capacity ring; once full, each sample overwrites the oldest. Arrays grow up to
+     * the capacity so short-lived users stay small.
+     */
+    private static final class Ring {
+        private final int capacity;
+        private long baseMillis; // Offsets are seconds since the first sample
+        private int[] offsets = new int[0];
+        private long[] values = new long[0];
+        private int start;
+        private int size;
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void add(long timestamp, long netWorth) {
+            if (size == 0) {
+                baseMillis = timestamp;
+            }
+            if (size == offsets.length && size < capacity) {
+                int grown = Math.min(capacity, Math.max(INITIAL_CAPACITY, size * 2));
+                offsets = Arrays.copyOf(offsets, grown);
+                values = Arrays.copyOf(values, grown);
+            }
+            int slot;
+            if (size < offsets.length) {
+                slot = (start + size) % offsets.length;
+                size++;
+            } else {
+                slot = start;
+                start = (start + 1) % offsets.length;
+            }
+            offsets[slot] = (int) ((timestamp - baseMillis) / 1000);
+            values[slot] = netWorth;
+        }
+
+        synchronized IntradayDTO toDto() {
+            long[] timestamps = new long[size];
+            BigDecimal[] netWorth = new BigDecimal[size];
+            long high = Long.MIN_VALUE;
+            long low = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int slot = (start + i) % offsets.length;
+                timestamps[i] = baseMillis + offsets[slot] * 1000L;
+                netWorth[i] = FixedPoint.toMoney(values[slot]);
+                high = Math.max(high, values[slot]);
+                low = Math.min(low, values[slot]);
+            }
+            return IntradayDTO.builder()
+                    .timestamps(timestamps)
+                    .netWorth(netWorth)
+                    .open(size > 0 ? netWorth[0] : null)
+                    .high(size > 0 ? FixedPoint.toMoney(high) : null)
+                    .low(size > 0 ? FixedPoint.toMoney(low) : null)
+                    .last(size > 0 ? netWorth[size - 1] : null)
+                    .build();
+        }
+    }
+}
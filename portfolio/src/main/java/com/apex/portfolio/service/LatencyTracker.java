@@ -0,0 +1,51 @@
+package com.apex.portfolio.service;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sliding window of the most recent call latencies, used for p50/p95 estimates.
+ * Percentiles are recomputed at most once per second to keep reads cheap.
+ */
+public class LatencyTracker {
+
+    private static final int WINDOW = 256;
+
+    private final long[] samples = new long[WINDOW];
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile long[] sortedCache = new long[0];
+    private volatile long sortedAt = 0;
+
+    public void record(long millis) {
+        long index = count.getAndIncrement();
+        samples[(int) (index % WINDOW)] = millis;
+    }
+
+    public long sampleCount() {
+        return Math.min(count.get(), WINDOW);
+    }
+
+    /**
+     * Returns the given percentile (0-1) in milliseconds, or -1 if nothing was recorded.
+     */
+    public long percentile(double p) {
+        long[] sorted = sorted();
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private long[] sorted() {
+        long now = System.currentTimeMillis();
+        if (now - sortedAt > 1000) {
+            long[] copy = Arrays.copyOf(samples, (int) sampleCount());
+            Arrays.sort(copy);
+            sortedCache = copy;
+            sortedAt = now;
+        }
+        return sortedCache;
+    }
+}
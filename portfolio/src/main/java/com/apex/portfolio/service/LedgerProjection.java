@@ -0,0 +1,204 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.model.LedgerCheckpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One user's cash, realized P&L and open positions rebuilt from their transactions, in
+ * {@link FixedPoint} units and with the same arithmetic as TradeService, so a ledger that
+ * matches the stored state reproduces it exactly. Like the stored columns, cash and realized
+ * P&L are rounded to whole cents after every transaction.
+ * <p>
+ * Positions are primitive arrays indexed by a symbol dictionary that lives as long as the
+ * projection, and {@link #reset} clears only the slots the previous user touched, so one
+ * projection replays a whole range of users (ordered by user) without per-row allocation.
+ */
+public final class LedgerProjection {
+
+    private final Map<String, Integer> symbolIds = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private long[] quantity = new long[64];
+    private long[] average = new long[64];
+    private boolean[] touched = new boolean[64];
+    private int[] touchedSlots = new int[64];
+    private int touchedCount;
+
+    private long cashBalance;
+    private long realizedPnL;
+    private long lastTransactionId;
+    private long transactionCount;
+    private long anomalies; // Sells beyond the position, unknown types
+
+    public void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touchedSlots[i];
+            quantity[slot] = 0;
+            average[slot] = 0;
+            touched[slot] = false;
+        }
+        touchedCount = 0;
+        cashBalance = 0;
+        realizedPnL = 0;
+        lastTransactionId = 0;
+        transactionCount = 0;
+        anomalies = 0;
+    }
+
+    /**
+     * Applies one transaction row; amounts in {@link FixedPoint} units, fee NONE if absent.
+     */
+    public void apply(long id, String symbol, String type, long qty, long price, long fee) {
+        long value = FixedPoint.times(price, qty);
+        switch (type) {
+            case "BUY": {
+                int s = slot(symbol);
+                long held = quantity[s];
+                long newQty = held + qty;
+                cashBalance -= value;
+                if (newQty > 0) {
+                    // Weighted Average Logic (rounded HALF_UP to 4 decimals)
+                    average[s] = FixedPoint.divide(FixedPoint.times(average[s], held) + value, newQty);
+                    quantity[s] = newQty;
+                } else {
+                    anomalies++;
+                }
+                break;
+            }
+            case "SELL": {
+                int s = slot(symbol);
+                long held = quantity[s];
+                if (qty > held) {
+                    anomalies++;
+                }
+                realizedPnL = FixedPoint.roundMoney(realizedPnL + FixedPoint.times(price - average[s], qty));
+                cashBalance += value;
+                quantity[s] = Math.max(0, held - qty);
+                if (quantity[s] == 0) {
+                    average[s] = 0;
+                }
+                break;
+            }
+            case "DEPOSIT":
+            case "DIVIDEND":
+                cashBalance += value;
+                break;
+            case "WITHDRAWAL":
+                cashBalance -= value;
+                break;
+            default:
+                anomalies++;
+        }
+        if (fee != FixedPoint.NONE) {
+            cashBalance -= fee;
+        }
+        cashBalance = FixedPoint.roundMoney(cashBalance);
+        lastTransactionId = id;
+        transactionCount++;
+    }
+
+    // Continues from a checkpoint instead of the first transaction
+    public void restore(LedgerCheckpoint checkpoint) {
+        reset();
+        cashBalance = checkpoint.getCashBalanceUnits() != null ? checkpoint.getCashBalanceUnits() : 0;
+        realizedPnL = checkpoint.getRealizedPnLUnits() != null ? checkpoint.getRealizedPnLUnits() : 0;
+        lastTransactionId = checkpoint.getLastTransactionId() != null ? checkpoint.getLastTransactionId() : 0;
+        transactionCount = checkpoint.getTransactionCount() != null ? checkpoint.getTransactionCount() : 0;
+        if (checkpoint.getPositions() == null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkpoint.getPositions()))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int s = slot(in.readUTF());
+                quantity[s] = in.readLong();
+                average[s] = in.readLong();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Corrupt ledger checkpoint for " + checkpoint.getUserId(), e);
+        }
+    }
+
+    // Open positions as (symbol, quantity, average) for a checkpoint
+    public byte[] encodePositions() {
+        Map<String, long[]> open = positions();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + open.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(open.size());
+            for (Map.Entry<String, long[]> position : open.entrySet()) {
+                out.writeUTF(position.getKey());
+                out.writeLong(position.getValue()[0]);
+                out.writeLong(position.getValue()[1]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Open positions by symbol, each {quantity, average price}.
+     */
+    public Map<String, long[]> positions() {
+        Map<String, long[]> open = new TreeMap<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int s = touchedSlots[i];
+            if (quantity[s] > 0) {
+                open.put(symbols.get(s), new long[] { quantity[s], average[s] });
+            }
+        }
+        return open;
+    }
+
+    public long cashBalance() {
+        return cashBalance;
+    }
+
+    public long realizedPnL() {
+        return realizedPnL;
+    }
+
+    public long lastTransactionId() {
+        return lastTransactionId;
+    }
+
+    public long transactionCount() {
+        return transactionCount;
+    }
+
+    public long anomalies() {
+        return anomalies;
+    }
+
+    private int slot(String symbol) {
+        Integer id = symbolIds.get(symbol);
+        if (id == null) {
+            id = symbols.size();
+            symbolIds.put(symbol, id);
+            symbols.add(symbol);
+            if (id == quantity.length) {
+                quantity = Arrays.copyOf(quantity, id * 2);
+                average = Arrays.copyOf(average, id * 2);
+                touched = Arrays.copyOf(touched, id * 2);
+            }
+        }
+        if (!touched[id]) {
+            touched[id] = true;
+            if (touchedCount == touchedSlots.length) {
+                touchedSlots = Arrays.copyOf(touchedSlots, touchedCount * 2);
+            }
+            touchedSlots[touchedCount++] = id;
+        }
+        return id;
+    }
+}
@@ -0,0 +1,655 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.LedgerAuditDTO;
+import com.apex.portfolio.model.LedgerCheckpoint;
+import com.apex.portfolio.model.User;
+import com.apex.portfolio.repository.LedgerCheckpointRepository;
+import com.apex.portfolio.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Treats the transactions table as the ledger and holdings, {@code users.cash_balance} and
+ * {@code users.realized_pnl} as projections of it that can be audited and repaired.
+ * <p>
+ * A replay streams a user's transactions in id order through a JDBC cursor
+ * ({@code ledger.replay.fetch-size} rows per round trip) into a {@link LedgerProjection},
+ * starting after the user's {@link LedgerCheckpoint} when there is one, so an audit only
+ * reads the transactions since the last checkpoint.
+ * <p>
+ * A full run is partitioned like {@link SnapshotJob}: user id ranges of
+ * {@code ledger.replay.chunk-size} go to {@code ledger.replay.workers} threads, each streaming
+ * its range ordered by user and id with one projection reused across the range. Audits read
+ * in one REPEATABLE READ snapshot, and a user who looks drifted is replayed again under their
+ * lock before being reported or repaired, so a trade committing between the reads is never
+ * taken for drift. Every run
+ * also advances the checkpoints, which stop at the last transaction older than
+ * {@code ledger.checkpoint.lag-seconds} so a transaction still committing is never skipped.
+ * Repair rewrites a user's stored state from a fresh replay under the user's lock (see
+ * {@link UserTransactionExecutor}).
+ */
+@Service
+public class LedgerService {
+
+    private static final int DRIFT_SAMPLE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTemplate;
+    private final LedgerCheckpointRepository checkpointRepository;
+    private final UserRepository userRepository;
+    private final UserTransactionExecutor userExecutor;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PriceWarmer priceWarmer;
+    private final int workers;
+    private final int chunkSize;
+    private final long checkpointLagMillis;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Progress of the current (or last) full run
+    private volatile String status = "IDLE";
+    private volatile boolean repairing;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private final AtomicLong usersAudited = new AtomicLong();
+    private final AtomicLong usersDrifted = new AtomicLong();
+    private final AtomicLong usersRepaired = new AtomicLong();
+    private final AtomicLong transactionsReplayed = new AtomicLong();
+    private final AtomicLong checkpointsWritten = new AtomicLong();
+    private final AtomicLong anomalies = new AtomicLong();
+    private final AtomicInteger chunksFailed = new AtomicInteger();
+    private final List<String> driftedSample = Collections.synchronizedList(new ArrayList<>());
+
+    // Per-user requests
+    private final AtomicLong audits = new AtomicLong();
+    private final AtomicLong repairs = new AtomicLong();
+    private final AtomicLong rechecks = new AtomicLong();
+
+    public LedgerService(DataSource dataSource, PlatformTransactionManager transactionManager,
+            LedgerCheckpointRepository checkpointRepository, UserRepository userRepository,
+            UserTransactionExecutor userExecutor, ApplicationEventPublisher eventPublisher, PriceWarmer priceWarmer,
+            @Value("${ledger.replay.workers:4}") int workers,
+            @Value("${ledger.replay.chunk-size:1000}") int chunkSize,
+            @Value("${ledger.replay.fetch-size:10000}") int fetchSize,
+            @Value("${ledger.checkpoint.lag-seconds:60}") long checkpointLagSeconds) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // PostgreSQL only streams with a cursor inside a transaction; one snapshot for every statement
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+        this.readOnlyTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.checkpointRepository = checkpointRepository;
+        this.userRepository = userRepository;
+        this.userExecutor = userExecutor;
+        this.eventPublisher = eventPublisher;
+        this.priceWarmer = priceWarmer;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.checkpointLagMillis = TimeUnit.SECONDS.toMillis(checkpointLagSeconds);
+    }
+
+    /**
+     * Replays the user's ledger and compares it with their stored cash, P&L and holdings.
+     */
+    public LedgerAuditDTO audit(String userId) {
+        audits.incrementAndGet();
+        LedgerAuditDTO result = readOnlyTemplate.execute(tx -> {
+            Replay replay = replayUser(userId);
+            Stored stored = loadStored(userId);
+            return report(userId, replay, stored, diff(replay.projection, stored), false);
+        });
+        return Boolean.TRUE.equals(result.getConsistent()) ? result : recheck(userId);
+    }
+
+    // The audit again under the user's lock, so none of their trades lands between the reads
+    private LedgerAuditDTO recheck(String userId) {
+        rechecks.incrementAndGet();
+        return userExecutor.execute(userId, tx -> {
+            Replay replay = replayUser(userId);
+            Stored stored = loadStored(userId);
+            return report(userId, replay, stored, diff(replay.projection, stored), false);
+        });
+    }
+
+    /**
+     * Rewrites the user's stored cash, P&L and holdings from their ledger if they differ.
+     * Returns the audit taken before the rewrite.
+     */
+    public LedgerAuditDTO repair(String userId) {
+        repairs.incrementAndGet();
+        List<String> opened = new ArrayList<>();
+        List<String> closed = new ArrayList<>();
+        LedgerAuditDTO result = userExecutor.execute(userId, tx -> {
+            opened.clear();
+            closed.clear();
+            Replay replay = replayUser(userId);
+            Stored stored = loadStored(userId);
+            List<String> differences = diff(replay.projection, stored);
+            if (!differences.isEmpty()) {
+                rewrite(userId, replay.projection, stored, opened, closed);
+            }
+            return report(userId, replay, stored, differences, !differences.isEmpty());
+        });
+        // After commit, like a trade
+        opened.forEach(priceWarmer::track);
+        closed.forEach(priceWarmer::untrack);
+        if (Boolean.TRUE.equals(result.getRepaired())) {
+            System.out.println("[LedgerService] Repaired " + userId + ": " + result.getDifferences());
+        }
+        return result;
+    }
+
+    // Nightly audit, which also moves every user's checkpoint forward
+    @Scheduled(cron = "${ledger.checkpoint.cron:0 45 1 * * ?}")
+    public void nightlyAudit() {
+        run(false);
+    }
+
+    /**
+     * Audits every user and advances their checkpoints; with {@code repair}, drifted users are
+     * repaired too. Returns false if a run is already in progress.
+     */
+    public boolean run(boolean repair) {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("[LedgerService] Run skipped, another run is in progress");
+            return false;
+        }
+        try {
+            execute(repair);
+            return true;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void execute(boolean repair) {
+        status = "RUNNING";
+        repairing = repair;
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        usersAudited.set(0);
+        usersDrifted.set(0);
+        usersRepaired.set(0);
+        transactionsReplayed.set(0);
+        checkpointsWritten.set(0);
+        anomalies.set(0);
+        chunksFailed.set(0);
+        driftedSample.clear();
+        long checkpointBefore = startedAt - checkpointLagMillis;
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "ledger-replay");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(workers * 2);
+        try {
+            String after = "";
+            while (true) {
+                List<String> ids = jdbcTemplate.queryForList(
+                        "select id from users where id > ? order by id limit ?", String.class, after, chunkSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                String first = after;
+                String last = ids.get(ids.size() - 1);
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        List<String> drifted = auditRange(first, last, checkpointBefore);
+                        if (repair) {
+                            for (String userId : drifted) {
+                                if (Boolean.TRUE.equals(repair(userId).getRepaired())) {
+                                    usersRepaired.incrementAndGet();
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        chunksFailed.incrementAndGet();
+                        System.err.println("[LedgerService] Range (" + first + ", " + last + "] failed: "
+                                + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                after = last;
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        finishedAt = System.currentTimeMillis();
+        status = chunksFailed.get() == 0 ? "COMPLETED" : "FAILED";
+        System.out.println("[LedgerService] " + status + (repair ? " repair" : " audit") + ": "
+                + usersAudited.get() + " users, " + transactionsReplayed.get() + " transactions, "
+                + usersDrifted.get() + " drifted, " + usersRepaired.get() + " repaired, "
+                + (finishedAt - startedAt) + "ms");
+    }
+
+    // Audits the users with after < id <= last; returns the drifted ones
+    private List<String> auditRange(String afterUserId, String lastUserId, long checkpointBefore) {
+        List<Object[]> checkpointRows = new ArrayList<>();
+        List<String> suspects = new ArrayList<>();
+
+        readOnlyTemplate.executeWithoutResult(tx -> {
+            Map<String, LedgerCheckpoint> checkpoints = loadCheckpoints(afterUserId, lastUserId);
+            Map<String, Stored> stored = loadStoredRange(afterUserId, lastUserId);
+            RangeReplay range = new RangeReplay(checkpoints, stored, checkpointBefore, checkpointRows, suspects);
+
+            // Only rows past each user's checkpoint; the (user_id, id) index serves both the filter and the order
+            jdbcTemplate.query("select t.user_id, t.id, t.symbol, t.type, t.quantity, t.price, t.fee, t.timestamp"
+                    + " from transactions t left join ledger_checkpoints c"
+                    + " on c.user_id = t.user_id and c.cash_balance_units is not null"
+                    + " where t.user_id > ? and t.user_id <= ? and t.id > coalesce(c.last_transaction_id, 0)"
+                    + " order by t.user_id, t.id", range::row, afterUserId, lastUserId);
+            range.finishUser();
+
+            // Users with nothing new still get compared, from their checkpoint alone
+            Set<String> remaining = new TreeSet<>(stored.keySet());
+            remaining.addAll(checkpoints.keySet());
+            remaining.removeAll(range.finished);
+            for (String userId : remaining) {
+                range.startUser(userId);
+                range.finishUser();
+            }
+        });
+
+        if (!checkpointRows.isEmpty()) {
+            transactionTemplate.executeWithoutResult(tx -> {
+                jdbcTemplate.batchUpdate("delete from ledger_checkpoints where user_id = ?",
+                        checkpointRows.stream().map(row -> new Object[] { row[0] }).toList());
+                jdbcTemplate.batchUpdate("insert into ledger_checkpoints (user_id, last_transaction_id,"
+                        + " transaction_count, cash_balance_units, realized_pnl_units, positions, updated_at)"
+                        + " values (?, ?, ?, ?, ?, ?, ?)", checkpointRows);
+            });
+            checkpointsWritten.addAndGet(checkpointRows.size());
+        }
+
+        List<String> drifted = new ArrayList<>();
+        for (String userId : suspects) {
+            if (!Boolean.TRUE.equals(recheck(userId).getConsistent())) {
+                drifted.add(userId);
+                usersDrifted.incrementAndGet();
+                if (driftedSample.size() < DRIFT_SAMPLE) {
+                    driftedSample.add(userId);
+                }
+            }
+        }
+        return drifted;
+    }
+
+    /**
+     * Replays a range of users from one streamed result, ordered by user then id. A user's
+     * checkpoint is captured just before their first transaction newer than the cutoff.
+     */
+    private final class RangeReplay {
+        final Map<String, LedgerCheckpoint> checkpoints;
+        final Map<String, Stored> stored;
+        final Timestamp checkpointBefore;
+        final List<Object[]> checkpointRows;
+        final List<String> suspects; // Drifted in this replay, to be confirmed
+        final Set<String> finished = new TreeSet<>();
+        final LedgerProjection projection = new LedgerProjection();
+        String userId;
+        long startTransactionId;
+        long replayed;
+        boolean cutoffReached; // The checkpoint was taken before the first row past the cutoff
+        Object[] checkpoint;
+
+        RangeReplay(Map<String, LedgerCheckpoint> checkpoints, Map<String, Stored> stored, long checkpointBefore,
+                List<Object[]> checkpointRows, List<String> suspects) {
+            this.checkpoints = checkpoints;
+            this.stored = stored;
+            this.checkpointBefore = new Timestamp(checkpointBefore);
+            this.checkpointRows = checkpointRows;
+            this.suspects = suspects;
+        }
+
+        void row(ResultSet rs) throws SQLException {
+            String rowUser = rs.getString(1);
+            if (!rowUser.equals(userId)) {
+                finishUser();
+                startUser(rowUser);
+            }
+            Timestamp timestamp = rs.getTimestamp(8);
+            if (!cutoffReached && timestamp != null && !timestamp.before(checkpointBefore)) {
+                cutoffReached = true;
+                checkpoint = checkpointRow();
+            }
+            applyRow(projection, rs, 2);
+            replayed++;
+        }
+
+        void startUser(String id) {
+            userId = id;
+            LedgerCheckpoint saved = checkpoints.get(id);
+            if (saved != null) {
+                projection.restore(saved);
+            } else {
+                projection.reset();
+            }
+            startTransactionId = projection.lastTransactionId();
+            replayed = 0;
+            cutoffReached = false;
+            checkpoint = null;
+        }
+
+        void finishUser() {
+            if (userId == null) {
+                return;
+            }
+            if (!cutoffReached) {
+                checkpoint = checkpointRow();
+            }
+            if (checkpoint != null) {
+                checkpointRows.add(checkpoint);
+            }
+            if (!diff(projection, stored.getOrDefault(userId, Stored.EMPTY)).isEmpty()) {
+                suspects.add(userId);
+            }
+            usersAudited.incrementAndGet();
+            transactionsReplayed.addAndGet(replayed);
+            anomalies.addAndGet(projection.anomalies());
+            finished.add(userId);
+            userId = null;
+        }
+
+        // The projection as a checkpoint row, or null if it is no further than the saved checkpoint
+        Object[] checkpointRow() {
+            if (projection.lastTransactionId() <= startTransactionId) {
+                return null;
+            }
+            return new Object[] {
+                    userId, projection.lastTransactionId(), projection.transactionCount(),
+                    projection.cashBalance(), projection.realizedPnL(), projection.encodePositions(), Timestamp.valueOf(LocalDateTime.now())
+            };
+        }
+    }
+
+    // Checkpoint, then the transactions after it
+    private Replay replayUser(String userId) {
+        LedgerProjection projection = new LedgerProjection();
+        LedgerCheckpoint checkpoint = checkpointRepository.findById(userId)
+                .filter(c -> c.getCashBalanceUnits() != null)
+                .orElse(null);
+        if (checkpoint != null) {
+            projection.restore(checkpoint);
+        }
+        long from = projection.lastTransactionId();
+        long[] replayed = new long[1];
+        jdbcTemplate.query("select id, symbol, type, quantity, price, fee from transactions"
+                + " where user_id = ? and id > ? order by id", rs -> {
+                    applyRow(projection, rs, 1);
+                    replayed[0]++;
+                }, userId, from);
+        return new Replay(projection, checkpoint != null ? from : null, replayed[0]);
+    }
+
+    // Columns from {@code first}: id, symbol, type, quantity, price, fee
+    private static void applyRow(LedgerProjection projection, ResultSet rs, int first) throws SQLException {
+        long id = rs.getLong(first);
+        String symbol = rs.getString(first + 1);
+        String type = rs.getString(first + 2);
+        long quantity = rs.getLong(first + 3);
+        long price = FixedPoint.of(rs.getDouble(first + 4));
+        double fee = rs.getDouble(first + 5);
+        long feeUnits = rs.wasNull() ? FixedPoint.NONE : FixedPoint.of(fee);
+        projection.apply(id, symbol != null ? symbol.toUpperCase() : "", type, quantity, price, feeUnits);
+    }
+
+    private Map<String, LedgerCheckpoint> loadCheckpoints(String afterUserId, String lastUserId) {
+        Map<String, LedgerCheckpoint> checkpoints = new HashMap<>();
+        // Checkpoints from before amounts were kept in units are replayed past and replaced
+        jdbcTemplate.query("select user_id, last_transaction_id, transaction_count, cash_balance_units,"
+                + " realized_pnl_units, positions from ledger_checkpoints where user_id > ? and user_id <= ?"
+                + " and cash_balance_units is not null", rs -> {
+                    checkpoints.put(rs.getString(1), LedgerCheckpoint.builder()
+                            .userId(rs.getString(1))
+                            .lastTransactionId(rs.getLong(2))
+                            .transactionCount(rs.getLong(3))
+                            .cashBalanceUnits(rs.getLong(4))
+                            .realizedPnLUnits(rs.getLong(5))
+                            .positions(rs.getBytes(6))
+                            .build());
+                }, afterUserId, lastUserId);
+        return checkpoints;
+    }
+
+    private Stored loadStored(String userId) {
+        Map<String, Stored> stored = new HashMap<>();
+        jdbcTemplate.query("select id, cash_balance, realized_pnl from users where id = ?",
+                rs -> {
+                    storedUser(stored, rs);
+                }, userId);
+        jdbcTemplate.query("select user_id, id, symbol, quantity, average_price, version from holdings"
+                + " where user_id = ?", rs -> {
+                    storedHolding(stored, rs);
+                }, userId);
+        return stored.getOrDefault(userId, Stored.EMPTY);
+    }
+
+    private Map<String, Stored> loadStoredRange(String afterUserId, String lastUserId) {
+        Map<String, Stored> stored = new HashMap<>();
+        jdbcTemplate.query("select id, cash_balance, realized_pnl from users where id > ? and id <= ?",
+                rs -> {
+                    storedUser(stored, rs);
+                }, afterUserId, lastUserId);
+        jdbcTemplate.query("select user_id, id, symbol, quantity, average_price, version from holdings"
+                + " where user_id > ? and user_id <= ?", rs -> {
+                    storedHolding(stored, rs);
+                }, afterUserId, lastUserId);
+        return stored;
+    }
+
+    private static void storedUser(Map<String, Stored> stored, ResultSet rs) throws SQLException {
+        Stored user = stored.computeIfAbsent(rs.getString(1), id -> new Stored());
+        BigDecimal cash = rs.getBigDecimal(2);
+        BigDecimal realized = rs.getBigDecimal(3);
+        user.cashBalance = cash != null ? FixedPoint.of(cash) : 0;
+        user.realizedPnL = realized != null ? FixedPoint.of(realized) : 0;
+    }
+
+    private static void storedHolding(Map<String, Stored> stored, ResultSet rs) throws SQLException {
+        Stored user = stored.computeIfAbsent(rs.getString(1), id -> new Stored());
+        user.holdings.put(rs.getString(3).toUpperCase(), new long[] {
+                rs.getLong(4), FixedPoint.of(rs.getDouble(5)), rs.getLong(2), rs.getLong(6)
+        });
+    }
+
+    private static List<String> diff(LedgerProjection projection, Stored stored) {
+        List<String> differences = new ArrayList<>();
+        if (projection.cashBalance() != stored.cashBalance) {
+            differences.add("cashBalance: stored " + FixedPoint.toBigDecimal(stored.cashBalance)
+                    + ", ledger " + FixedPoint.toBigDecimal(projection.cashBalance()));
+        }
+        if (projection.realizedPnL() != stored.realizedPnL) {
+            differences.add("realizedPnL: stored " + FixedPoint.toBigDecimal(stored.realizedPnL)
+                    + ", ledger " + FixedPoint.toBigDecimal(projection.realizedPnL()));
+        }
+        Map<String, long[]> ledger = projection.positions();
+        Set<String> symbols = new TreeSet<>(ledger.keySet());
+        symbols.addAll(stored.holdings.keySet());
+        for (String symbol : symbols) {
+            long[] expected = ledger.get(symbol);
+            long[] actual = stored.holdings.get(symbol);
+            if (expected == null) {
+                differences.add(symbol + ": stored " + describe(actual) + ", not held in ledger");
+            } else if (actual == null) {
+                differences.add(symbol + ": not stored, ledger " + describe(expected));
+            } else if (expected[0] != actual[0] || expected[1] != actual[1]) {
+                differences.add(symbol + ": stored " + describe(actual) + ", ledger " + describe(expected));
+            }
+        }
+        return differences;
+    }
+
+    private static String describe(long[] position) {
+        return position[0] + " @ " + FixedPoint.toBigDecimal(position[1]);
+    }
+
+    // Inside the user's transaction: users row through JPA (version checked), holdings as JDBC batches
+    private void rewrite(String userId, LedgerProjection projection, Stored stored, List<String> opened,
+            List<String> closed) {
+        User user = userRepository.findById(userId).orElseGet(() -> User.builder()
+                .id(userId)
+                .email("user@example.com") // Placeholder
+                .build());
+        user.setCashBalance(FixedPoint.toMoney(projection.cashBalance()));
+        user.setRealizedPnL(FixedPoint.toMoney(projection.realizedPnL()));
+        userRepository.save(user);
+
+        Map<String, long[]> ledger = projection.positions();
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        Map<String, long[]> changed = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : stored.holdings.entrySet()) {
+            long[] actual = entry.getValue();
+            long[] expected = ledger.get(entry.getKey());
+            if (expected == null) {
+                deletes.add(new Object[] { actual[2], actual[3] });
+                changed.put(entry.getKey(), new long[] { 0, 0 });
+                closed.add(entry.getKey());
+            } else if (expected[0] != actual[0] || expected[1] != actual[1]) {
+                updates.add(new Object[] { expected[0], FixedPoint.toDouble(expected[1]), actual[2], actual[3] });
+                changed.put(entry.getKey(), expected);
+            }
+        }
+        for (Map.Entry<String, long[]> entry : ledger.entrySet()) {
+            if (!stored.holdings.containsKey(entry.getKey())) {
+                long[] expected = entry.getValue();
+                inserts.add(new Object[] { userId, entry.getKey(), expected[0], FixedPoint.toDouble(expected[1]) });
+                changed.put(entry.getKey(), expected);
+                opened.add(entry.getKey());
+            }
+        }
+        checkVersions(jdbcTemplate.batchUpdate("update holdings set quantity = ?, average_price = ?,"
+                + " version = version + 1 where id = ? and version = ?", updates));
+        checkVersions(jdbcTemplate.batchUpdate("delete from holdings where id = ? and version = ?", deletes));
+        jdbcTemplate.batchUpdate("insert into holdings (user_id, symbol, quantity, average_price, version)"
+                + " values (?, ?, ?, ?, 0)", inserts);
+
+        // Live valuation and today's snapshot pick these up after commit
+        eventPublisher.publishEvent(
+                PortfolioChangedEvent.cashOnly(userId, user.getCashBalance(), user.getRealizedPnL()));
+        for (Map.Entry<String, long[]> entry : changed.entrySet()) {
+            long[] position = entry.getValue();
+            eventPublisher.publishEvent(new PortfolioChangedEvent(userId, user.getCashBalance(),
+                    user.getRealizedPnL(), entry.getKey(), (int) position[0], FixedPoint.toDouble(position[1]),
+                    null));
+        }
+    }
+
+    private static void checkVersions(int[] counts) {
+        for (int count : counts) {
+            if (count == 0) {
+                throw new OptimisticLockingFailureException("Holding was updated concurrently");
+            }
+        }
+    }
+
+    private static LedgerAuditDTO report(String userId, Replay replay, Stored stored, List<String> differences,
+            boolean repaired) {
+        LedgerProjection projection = replay.projection;
+        return LedgerAuditDTO.builder()
+                .userId(userId)
+                .consistent(differences.isEmpty())
+                .repaired(repaired)
+                .checkpointTransactionId(replay.checkpointTransactionId)
+                .lastTransactionId(projection.lastTransactionId() > 0 ? projection.lastTransactionId() : null)
+                .transactionsReplayed(replay.replayed)
+                .ledgerCashBalance(FixedPoint.toMoney(projection.cashBalance()))
+                .storedCashBalance(FixedPoint.toMoney(stored.cashBalance))
+                .ledgerRealizedPnL(FixedPoint.toMoney(projection.realizedPnL()))
+                .storedRealizedPnL(FixedPoint.toMoney(stored.realizedPnL))
+                .ledgerPositions(projection.positions().size())
+                .storedPositions(stored.holdings.size())
+                .differences(differences)
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = startedAt > 0 ? end - startedAt : 0;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("status", status);
+        stats.put("mode", repairing ? "REPAIR" : "AUDIT");
+        stats.put("workers", workers);
+        stats.put("chunkSize", chunkSize);
+        stats.put("usersAudited", usersAudited.get());
+        stats.put("usersDrifted", usersDrifted.get());
+        stats.put("usersRepaired", usersRepaired.get());
+        stats.put("transactionsReplayed", transactionsReplayed.get());
+        stats.put("transactionsPerSecond", elapsed > 0 ? Math.round(transactionsReplayed.get() * 1000.0 / elapsed) : 0);
+        stats.put("checkpointsWritten", checkpointsWritten.get());
+        stats.put("anomalies", anomalies.get());
+        stats.put("chunksFailed", chunksFailed.get());
+        stats.put("elapsedMillis", elapsed);
+        synchronized (driftedSample) {
+            stats.put("driftedUsers", new ArrayList<>(driftedSample));
+        }
+        stats.put("audits", audits.get());
+        stats.put("repairs", repairs.get());
+        stats.put("rechecks", rechecks.get());
+        return stats;
+    }
+
+    private static final class Replay {
+        final LedgerProjection projection;
+        final Long checkpointTransactionId;
+        final long replayed;
+
+        Replay(LedgerProjection projection, Long checkpointTransactionId, long replayed) {
+            this.projection = projection;
+            this.checkpointTransactionId = checkpointTransactionId;
+            this.replayed = replayed;
+        }
+    }
+
+    // A user's stored state; holdings by symbol as {quantity, average, id, version}
+    private static final class Stored {
+        static final Stored EMPTY = new Stored();
+
+        long cashBalance;
+        long realizedPnL;
+        final Map<String, long[]> holdings = new TreeMap<>();
+    }
+}
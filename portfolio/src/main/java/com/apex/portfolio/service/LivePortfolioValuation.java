@@ -0,0 +1,291 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.PortfolioDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * In-memory valuation of recently active users' portfolios.
+ * <p>
+ * A user's book is built once from the cold path in {@link PortfolioService} and then kept
+ * current by events: {@link PriceChangedEvent}s reach the holders of a symbol through a
+ * symbol -> users index, and {@link PortfolioChangedEvent}s apply trades and cash moves
+ * after commit. Totals and day P&L are adjusted by the delta of the one position that
+ * changed; the response (allocation, top gainer/loser) is rebuilt at most once per change
+ * and then served as-is. Books idle for longer than {@code market.valuation.idle-minutes}
+ * are dropped and the user goes back to the cold path.
+ */
+@Component
+public class LivePortfolioValuation {
+
+    private static final int CHANGE_STRIPES = 1024;
+
+    private final PriceHistoryService priceHistoryService;
+    private final int maxUsers;
+    private final long idleMillis;
+
+    private final ConcurrentHashMap<String, Book> books = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> holdersBySymbol = new ConcurrentHashMap<>();
+
+    // Bumped on every portfolio change so a cold load that raced a trade is discarded
+    private final AtomicLongArray changeStripes = new AtomicLongArray(CHANGE_STRIPES);
+
+    // Counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong viewRebuilds = new AtomicLong();
+    private final AtomicLong priceUpdates = new AtomicLong();
+    private final AtomicLong portfolioUpdates = new AtomicLong();
+    private final AtomicLong discardedLoads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public LivePortfolioValuation(PriceHistoryService priceHistoryService,
+            @Value("${market.valuation.max-users:10000}") int maxUsers,
+            @Value("${market.valuation.idle-minutes:30}") long idleMinutes) {
+        this.priceHistoryService = priceHistoryService;
+        this.maxUsers = maxUsers;
+        this.idleMillis = idleMinutes * 60_000L;
+    }
+
+    /**
+     * Current view for an active user, or null if the user has no book yet.
+     * The returned DTO is shared between readers and must not be modified.
+     */
+    public PortfolioDTO view(String userId) {
+        Book book = books.get(userId);
+        if (book == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return book.view();
+    }
+
+    /**
+     * Runs {@code reader} against an active user's book under its lock, or returns null if
+     * the user has no book yet. For the summary and paged views, which are cheap enough to
+     * build per request.
+     */
+    public <T> T read(String userId, Function<PortfolioBook, T> reader) {
+        Book book = books.get(userId);
+        if (book == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return book.read(reader);
+    }
+
+    /**
+     * Visits every active book under its lock, for samplers. Does not count as an access,
+     * so sampling never keeps an idle book alive.
+     */
+    public void forEachBook(BiConsumer<String, PortfolioBook> visitor) {
+        books.forEach((userId, book) -> book.visit(userId, visitor));
+    }
+
+    /**
+     * Token to take before a cold load; pass it to {@link #activate} afterwards.
+     */
+    public long changeMarker(String userId) {
+        return changeStripes.get(stripe(userId));
+    }
+
+    /**
+     * Takes over a book built by a cold load. The book is discarded if the user's
+     * portfolio changed after {@code marker} was taken, since the load may predate it.
+     */
+    public void activate(String userId, long marker, PortfolioBook positions) {
+        Book book = new Book(positions);
+        if (books.putIfAbsent(userId, book) != null) {
+            return;
+        }
+        book.symbols().forEach(symbol -> index(symbol, userId));
+        // Publish first, then re-check: a change event either sees the book or moves the marker
+        if (changeStripes.get(stripe(userId)) != marker) {
+            discardedLoads.incrementAndGet();
+            remove(userId, book);
+            return;
+        }
+        if (books.size() > maxUsers) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    @Order(1)
+    @EventListener
+    public void onPriceChanged(PriceChangedEvent event) {
+        Set<String> holders = holdersBySymbol.get(event.getSymbol());
+        if (holders == null || holders.isEmpty()) {
+            return;
+        }
+        long price = FixedPoint.of(event.getPrice());
+        long prevClose = FixedPoint.ofNullable(priceHistoryService.previousClose(event.getSymbol()));
+        for (String userId : holders) {
+            Book book = books.get(userId);
+            if (book != null && book.reprice(event.getSymbol(), price, prevClose)) {
+                priceUpdates.incrementAndGet();
+            }
+        }
+    }
+
+    // After commit, so a rolled-back trade never reaches the books
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        String userId = event.getUserId();
+        changeStripes.incrementAndGet(stripe(userId));
+        Book book = books.get(userId);
+        if (book == null) {
+            return;
+        }
+        portfolioUpdates.incrementAndGet();
+        book.setCash(FixedPoint.ofNullable(event.getCashBalance()), FixedPoint.ofNullable(event.getRealizedPnL()));
+        if (event.hasPosition()) {
+            String symbol = event.getSymbol().toUpperCase();
+            long averagePrice = event.getAveragePrice() != null ? FixedPoint.of(event.getAveragePrice()) : 0;
+            boolean held = book.apply(symbol, event.getQuantity(), averagePrice,
+                    FixedPoint.ofNullable(event.getTradePrice()),
+                    FixedPoint.ofNullable(priceHistoryService.previousClose(symbol)));
+            if (held) {
+                index(symbol, userId);
+            } else {
+                unindex(symbol, userId);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        books.forEach((userId, book) -> {
+            if (book.lastAccess < cutoff && remove(userId, book)) {
+                evictions.incrementAndGet();
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        long total = hits.get() + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeUsers", books.size());
+        stats.put("maxUsers", maxUsers);
+        stats.put("indexedSymbols", holdersBySymbol.size());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total > 0 ? (double) hits.get() / total : 0.0);
+        stats.put("viewRebuilds", viewRebuilds.get());
+        stats.put("priceUpdates", priceUpdates.get());
+        stats.put("portfolioUpdates", portfolioUpdates.get());
+        stats.put("discardedLoads", discardedLoads.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        List<Map.Entry<String, Book>> snapshot = new ArrayList<>(books.entrySet());
+        snapshot.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+        int excess = books.size() - (int) (maxUsers * 0.9);
+        for (int i = 0; i < excess && i < snapshot.size(); i++) {
+            if (remove(snapshot.get(i).getKey(), snapshot.get(i).getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean remove(String userId, Book book) {
+        if (!books.remove(userId, book)) {
+            return false;
+        }
+        book.symbols().forEach(symbol -> unindex(symbol, userId));
+        return true;
+    }
+
+    private void index(String symbol, String userId) {
+        holdersBySymbol.compute(symbol, (k, users) -> {
+            Set<String> set = users != null ? users : ConcurrentHashMap.newKeySet();
+            set.add(userId);
+            return set;
+        });
+    }
+
+    private void unindex(String symbol, String userId) {
+        holdersBySymbol.computeIfPresent(symbol, (k, users) -> {
+            users.remove(userId);
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    private static int stripe(String userId) {
+        return Math.floorMod(userId.hashCode(), CHANGE_STRIPES);
+    }
+
+    /**
+     * A user's {@link PortfolioBook} plus its rendered view. All access is synchronized.
+     */
+    private final class Book {
+        private final PortfolioBook positions;
+        private PortfolioDTO view; // Null when a change has not been rendered yet
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Book(PortfolioBook positions) {
+            this.positions = positions;
+        }
+
+        synchronized List<String> symbols() {
+            return positions.symbols();
+        }
+
+        synchronized void setCash(long cashBalance, long realizedPnL) {
+            positions.setCash(cashBalance, realizedPnL);
+            view = null;
+        }
+
+        synchronized boolean apply(String symbol, int quantity, long averagePrice, long price, long prevClose) {
+            view = null;
+            return positions.apply(symbol, quantity, averagePrice, price, prevClose);
+        }
+
+        synchronized boolean reprice(String symbol, long price, long prevClose) {
+            if (!positions.reprice(symbol, price, prevClose)) {
+                return false;
+            }
+            view = null;
+            return true;
+        }
+
+        synchronized <T> T read(Function<PortfolioBook, T> reader) {
+            lastAccess = System.currentTimeMillis();
+            return reader.apply(positions);
+        }
+
+        synchronized void visit(String userId, BiConsumer<String, PortfolioBook> visitor) {
+            visitor.accept(userId, positions);
+        }
+
+        synchronized PortfolioDTO view() {
+            lastAccess = System.currentTimeMillis();
+            if (view == null) {
+                view = positions.render();
+                viewRebuilds.incrementAndGet();
+            }
+            return view;
+        }
+    }
+}
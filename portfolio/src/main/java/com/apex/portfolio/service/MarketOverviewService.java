@@ -0,0 +1,151 @@
+package com.apex.portfolio.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the market overview once per refresh instead of once per request.
+ * <p>
+ * The response is the same for every user, so a scheduled job serializes it to an
+ * immutable byte payload with a strong ETag (hash of the bytes). Controllers hand the
+ * bytes out as-is and answer conditional GETs with 304 when the ETag still matches.
+ */
+@Service
+public class MarketOverviewService {
+
+    // Market Indices (Using ETFs that track them since Yahoo works best with tickers)
+    // SPY = S&P 500, DIA = Dow Jones, QQQ = NASDAQ, IWM = Russell 2000
+    private static final Map<String, String> INDICES = new LinkedHashMap<>();
+    // Top Movers (Placeholder list, in reality would use a dedicated screener API)
+    private static final Map<String, String> MOVERS = new LinkedHashMap<>();
+
+    static {
+        INDICES.put("SPY", "S&P 500 ETF");
+        INDICES.put("DIA", "Dow Jones ETF");
+        INDICES.put("QQQ", "NASDAQ ETF");
+        INDICES.put("IWM", "Russell 2000 ETF");
+
+        MOVERS.put("NVDA", "NVIDIA Corp");
+        MOVERS.put("AAPL", "Apple Inc");
+        MOVERS.put("MSFT", "Microsoft");
+        MOVERS.put("TSLA", "Tesla Inc");
+        MOVERS.put("AMZN", "Amazon");
+    }
+
+    private final AsyncStockPriceService asyncPriceService;
+    private final PriceHistoryService priceHistoryService;
+    private final ObjectMapper objectMapper;
+    private final long quoteDeadlineMillis;
+    private final long refreshMillis;
+
+    private volatile Overview current;
+
+    public MarketOverviewService(AsyncStockPriceService asyncPriceService, PriceHistoryService priceHistoryService,
+            ObjectMapper objectMapper,
+            @Value("${market.quote-deadline-ms:2000}") long quoteDeadlineMillis,
+            @Value("${market.overview.refresh-ms:15000}") long refreshMillis) {
+        this.asyncPriceService = asyncPriceService;
+        this.priceHistoryService = priceHistoryService;
+        this.objectMapper = objectMapper;
+        this.quoteDeadlineMillis = quoteDeadlineMillis;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Pre-serialized overview payload and its strong ETag.
+     */
+    public static final class Overview {
+        private final byte[] body;
+        private final String etag;
+
+        Overview(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        // Shared by every response: callers must not modify it
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    public Overview getOverview() {
+        Overview overview = current;
+        if (overview == null) {
+            synchronized (this) {
+                if (current == null) {
+                    rebuild();
+                }
+                overview = current;
+            }
+        }
+        return overview;
+    }
+
+    // How long clients may reuse a response without revalidating
+    public long getMaxAgeSeconds() {
+        return Math.max(1, refreshMillis / 1000);
+    }
+
+    @Scheduled(fixedDelayString = "${market.overview.refresh-ms:15000}")
+    public void rebuild() {
+        try {
+            Map<String, Object> response = new LinkedHashMap<>();
+
+            // Fan out for all tickers at once; anything slower than the deadline shows as unpriced
+            List<String> symbols = new ArrayList<>(INDICES.keySet());
+            symbols.addAll(MOVERS.keySet());
+            Map<String, BigDecimal> prices = asyncPriceService.getPricesWithin(symbols,
+                    Duration.ofMillis(quoteDeadlineMillis));
+
+            response.put("indices", toQuotes(INDICES, prices));
+            response.put("topMovers", toQuotes(MOVERS, prices));
+
+            byte[] body = objectMapper.writeValueAsBytes(response);
+            String etag = "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body), 0, 16) + "\"";
+
+            Overview previous = current;
+            if (previous == null || !previous.etag.equals(etag)) {
+                current = new Overview(body, etag);
+            }
+        } catch (Exception e) {
+            System.err.println("[MarketOverviewService] Failed to build overview: " + e.getMessage());
+        }
+    }
+
+    private List<Map<String, Object>> toQuotes(Map<String, String> names, Map<String, BigDecimal> prices) {
+        List<Map<String, Object>> quotes = new ArrayList<>();
+        names.forEach((symbol, name) -> quotes.add(getSafeQuote(symbol, name, prices.get(symbol))));
+        return quotes;
+    }
+
+    private Map<String, Object> getSafeQuote(String symbol, String name, BigDecimal price) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("symbol", symbol);
+        data.put("name", name);
+        if (price != null) {
+            data.put("price", price);
+            // Daily change % against the previous close from the local price history
+            data.put("change", priceHistoryService.changePercent(symbol, price));
+        } else {
+            data.put("price", BigDecimal.ZERO);
+            data.put("change", BigDecimal.ZERO);
+        }
+        return data;
+    }
+}
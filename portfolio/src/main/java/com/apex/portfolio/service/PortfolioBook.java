@@ -0,0 +1,290 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.HoldingDTO;
+import com.apex.portfolio.dto.HoldingsPageDTO;
+import com.apex.portfolio.dto.PortfolioDTO;
+import com.apex.portfolio.dto.PortfolioSummaryDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * One user's positions and running totals in {@link FixedPoint} units.
+ * <p>
+ * Totals are adjusted by the delta of each position change, so a reprice or trade costs
+ * O(1); {@link #render()} builds the API response (allocation, top gainer/loser) in a
+ * single pass, and {@link #summary()} / {@link #page} build the smaller variants. These
+ * are the only places BigDecimal is created. Not thread-safe: callers
+ * confine a book to one thread or synchronize on it.
+ */
+public final class PortfolioBook {
+
+    /**
+     * Server-side orderings for {@link #page}. Allocation is value over the same total,
+     * so it orders like value.
+     */
+    public enum Sort {
+        VALUE, PNL_PERCENT, ALLOCATION;
+
+        public static Sort of(String name) {
+            switch (name.toLowerCase()) {
+                case "value":
+                    return VALUE;
+                case "pnlpercent":
+                case "pnl_percent":
+                    return PNL_PERCENT;
+                case "allocation":
+                    return ALLOCATION;
+                default:
+                    throw new IllegalArgumentException("Unknown sort: " + name + " (value, pnlPercent, allocation)");
+            }
+        }
+
+        long key(Position p) {
+            return this == PNL_PERCENT ? p.pnlPercent : p.value;
+        }
+    }
+
+    private final Map<String, Position> positions = new LinkedHashMap<>();
+    private long cashBalance;
+    private long realizedPnL;
+    private long totalValue;
+    private long totalInvested;
+    private long dayPnL;
+
+    public PortfolioBook(long cashBalance, long realizedPnL) {
+        setCash(cashBalance, realizedPnL);
+    }
+
+    public List<String> symbols() {
+        return new ArrayList<>(positions.keySet());
+    }
+
+    public long netWorth() {
+        return totalValue + cashBalance;
+    }
+
+    public void setCash(long cashBalance, long realizedPnL) {
+        this.cashBalance = cashBalance != FixedPoint.NONE ? cashBalance : 0;
+        this.realizedPnL = realizedPnL != FixedPoint.NONE ? realizedPnL : 0;
+    }
+
+    /**
+     * Replaces a position (quantity 0 closes it); {@code price} and {@code prevClose} may
+     * be {@link FixedPoint#NONE}. Returns whether the symbol is still held.
+     */
+    public boolean apply(String symbol, int quantity, long averagePrice, long price, long prevClose) {
+        Position old = quantity > 0 ? positions.get(symbol) : positions.remove(symbol);
+        if (old != null) {
+            subtract(old);
+        }
+        if (quantity > 0) {
+            Position position = new Position(quantity, averagePrice, price, prevClose);
+            positions.put(symbol, position);
+            add(position);
+        }
+        return quantity > 0;
+    }
+
+    /**
+     * New quote for a held symbol; returns false if the symbol is not held.
+     */
+    public boolean reprice(String symbol, long price, long prevClose) {
+        Position old = positions.get(symbol);
+        if (old == null) {
+            return false;
+        }
+        Position position = new Position(old.quantity, old.averagePrice, price, prevClose);
+        subtract(old);
+        positions.put(symbol, position);
+        add(position);
+        return true;
+    }
+
+    private void add(Position position) {
+        totalValue = Math.addExact(totalValue, position.value);
+        totalInvested = Math.addExact(totalInvested, position.invested);
+        dayPnL = Math.addExact(dayPnL, position.dayPnL);
+    }
+
+    private void subtract(Position position) {
+        totalValue -= position.value;
+        totalInvested -= position.invested;
+        dayPnL -= position.dayPnL;
+    }
+
+    // Single pass: per-holding figures, allocation and top gainer/loser
+    public PortfolioDTO render() {
+        List<HoldingDTO> holdings = new ArrayList<>(positions.size());
+        HoldingDTO topGainer = null;
+        HoldingDTO topLoser = null;
+        long topGain = Long.MIN_VALUE;
+        long topLoss = Long.MAX_VALUE;
+
+        for (Map.Entry<String, Position> e : positions.entrySet()) {
+            Position p = e.getValue();
+            HoldingDTO h = holding(e.getKey(), p);
+            holdings.add(h);
+
+            if (p.pnlPercent > topGain) {
+                topGain = p.pnlPercent;
+                topGainer = h;
+            }
+            if (p.pnlPercent < topLoss) {
+                topLoss = p.pnlPercent;
+                topLoser = h;
+            }
+        }
+
+        long totalPnL = totalValue - totalInvested;
+        return PortfolioDTO.builder()
+                .holdings(holdings)
+                .totalValue(FixedPoint.toBigDecimal(totalValue))
+                .totalInvested(FixedPoint.toBigDecimal(totalInvested))
+                .totalPnL(FixedPoint.toBigDecimal(totalPnL))
+                .totalPnLPercentage(FixedPoint.toBigDecimal(FixedPoint.percent(totalPnL, totalInvested)))
+                .dayPnL(FixedPoint.toMoney(dayPnL))
+                .cashBalance(FixedPoint.toBigDecimal(cashBalance))
+                .realizedPnL(FixedPoint.toBigDecimal(realizedPnL))
+                .netWorth(FixedPoint.toBigDecimal(totalValue + cashBalance))
+                .topGainer(topGainer)
+                .topLoser(topLoser)
+                .build();
+    }
+
+    // Totals only; no per-holding DTOs are built
+    public PortfolioSummaryDTO summary() {
+        long totalPnL = totalValue - totalInvested;
+        return PortfolioSummaryDTO.builder()
+                .totalValue(FixedPoint.toBigDecimal(totalValue))
+                .totalInvested(FixedPoint.toBigDecimal(totalInvested))
+                .totalPnL(FixedPoint.toBigDecimal(totalPnL))
+                .totalPnLPercentage(FixedPoint.toBigDecimal(FixedPoint.percent(totalPnL, totalInvested)))
+                .dayPnL(FixedPoint.toMoney(dayPnL))
+                .cashBalance(FixedPoint.toBigDecimal(cashBalance))
+                .realizedPnL(FixedPoint.toBigDecimal(realizedPnL))
+                .netWorth(FixedPoint.toBigDecimal(totalValue + cashBalance))
+                .holdingsCount(positions.size())
+                .build();
+    }
+
+    /**
+     * One page of holdings in {@code sort} order (ties by symbol), starting after
+     * {@code cursor} (null for the first page). Keyset paging: the cursor carries the last
+     * row's sort key and symbol, so rows do not shift between pages when others are added
+     * or removed. Selection keeps only {@code limit + 1} candidates, and DTOs are built for
+     * the returned rows only.
+     */
+    public HoldingsPageDTO page(Sort sort, boolean ascending, String cursor, int limit) {
+        Comparator<Row> order = Comparator.comparingLong((Row r) -> r.key);
+        if (!ascending) {
+            order = order.reversed();
+        }
+        order = order.thenComparing(r -> r.symbol);
+
+        Row after = cursor != null && !cursor.isEmpty() ? decodeCursor(cursor, sort, ascending) : null;
+        // Max-heap on the order, holding the limit + 1 smallest rows past the cursor
+        PriorityQueue<Row> selected = new PriorityQueue<>(limit + 2, order.reversed());
+        for (Map.Entry<String, Position> e : positions.entrySet()) {
+            Row row = new Row(sort.key(e.getValue()), e.getKey());
+            if (after != null && order.compare(row, after) <= 0) {
+                continue;
+            }
+            selected.add(row);
+            if (selected.size() > limit + 1) {
+                selected.poll();
+            }
+        }
+
+        boolean more = selected.size() > limit;
+        if (more) {
+            selected.poll();
+        }
+        List<Row> rows = new ArrayList<>(selected);
+        rows.sort(order);
+
+        List<HoldingDTO> holdings = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            holdings.add(holding(row.symbol, positions.get(row.symbol)));
+        }
+        return HoldingsPageDTO.builder()
+                .holdings(holdings)
+                .nextCursor(more ? encodeCursor(rows.get(rows.size() - 1), sort, ascending) : null)
+                .totalHoldings(positions.size())
+                .build();
+    }
+
+    private HoldingDTO holding(String symbol, Position p) {
+        return HoldingDTO.builder()
+                .symbol(symbol)
+                .quantity(p.quantity)
+                .averagePrice(FixedPoint.toBigDecimal(p.averagePrice))
+                .currentPrice(FixedPoint.toBigDecimal(p.price))
+                .currentValue(FixedPoint.toBigDecimal(p.value))
+                .pnl(FixedPoint.toBigDecimal(p.value - p.invested))
+                .pnlPercentage(FixedPoint.toBigDecimal(p.pnlPercent))
+                .allocationPercentage(FixedPoint.toBigDecimal(FixedPoint.percent(p.value, totalValue)))
+                .priceAvailable(p.priceAvailable)
+                .build();
+    }
+
+    // Opaque to clients: base64url of "sort:direction:key:symbol"
+    private static String encodeCursor(Row last, Sort sort, boolean ascending) {
+        String raw = sort.name() + ":" + (ascending ? "asc" : "desc") + ":" + last.key + ":" + last.symbol;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Row decodeCursor(String cursor, Sort sort, boolean ascending) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+            if (parts.length != 4 || !parts[0].equals(sort.name())
+                    || !parts[1].equals(ascending ? "asc" : "desc")) {
+                throw new IllegalArgumentException("Cursor does not match the requested sort");
+            }
+            return new Row(Long.parseLong(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + e.getMessage());
+        }
+    }
+
+    private static final class Row {
+        final long key;
+        final String symbol;
+
+        Row(long key, String symbol) {
+            this.key = key;
+            this.symbol = symbol;
+        }
+    }
+
+    private static final class Position {
+        final int quantity;
+        final long averagePrice;
+        final long price; // Falls back to the average price while unpriced
+        final boolean priceAvailable;
+        final long value;
+        final long invested;
+        final long dayPnL;
+        final long pnlPercent;
+
+        Position(int quantity, long averagePrice, long price, long prevClose) {
+            this.quantity = quantity;
+            this.averagePrice = averagePrice;
+            this.priceAvailable = price != FixedPoint.NONE;
+            this.price = priceAvailable ? price : averagePrice;
+            this.value = FixedPoint.times(this.price, quantity);
+            this.invested = FixedPoint.times(averagePrice, quantity);
+            // Day P&L against the previous close from the local price history
+            this.dayPnL = priceAvailable && prevClose != FixedPoint.NONE
+                    ? FixedPoint.times(price - prevClose, quantity)
+                    : 0;
+            this.pnlPercent = FixedPoint.percent(value - invested, invested);
+        }
+    }
+}
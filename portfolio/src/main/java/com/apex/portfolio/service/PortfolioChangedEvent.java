@@ -0,0 +1,32 @@
+package com.apex.portfolio.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Published when a user's cash or holdings change (trade, deposit, withdrawal).
+ * Carries the resulting state, not a diff, so applying it twice is harmless.
+ * The position fields are null for cash-only changes.
+ */
+@Getter
+@AllArgsConstructor
+public class PortfolioChangedEvent {
+    private final String userId;
+    private final BigDecimal cashBalance;
+    private final BigDecimal realizedPnL;
+
+    private final String symbol;
+    private final Integer quantity; // Remaining quantity, 0 if the position was closed
+    private final Double averagePrice;
+    private final BigDecimal tradePrice;
+
+    public static PortfolioChangedEvent cashOnly(String userId, BigDecimal cashBalance, BigDecimal realizedPnL) {
+        return new PortfolioChangedEvent(userId, cashBalance, realizedPnL, null, null, null, null);
+    }
+
+    public boolean hasPosition() {
+        return symbol != null;
+    }
+}
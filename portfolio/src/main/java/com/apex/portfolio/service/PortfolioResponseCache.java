@@ -0,0 +1,265 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.HoldingDTO;
+import com.apex.portfolio.dto.PortfolioDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-user cache of the serialized /api/portfolio response.
+ * <p>
+ * An entry is dropped when the user's portfolio changes (trade, deposit, withdrawal) or
+ * when a held symbol's quote moves more than {@code market.portfolio-cache.price-tolerance}
+ * (relative) away from the price the entry was rendered with; {@code max-age-seconds}
+ * bounds staleness if an event is missed. Size is bounded by entry count and total bytes
+ * with the same approximate LRU as the quote cache.
+ */
+@Component
+public class PortfolioResponseCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final ObjectMapper objectMapper;
+    private final BigDecimal priceTolerance;
+    private final long maxAgeNanos;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> holdersBySymbol = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // Bumped on every invalidation so a response built before it is never stored
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    // Counters
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong changeInvalidations = new AtomicLong();
+    private final AtomicLong priceInvalidations = new AtomicLong();
+    private final AtomicLong discardedPuts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public PortfolioResponseCache(ObjectMapper objectMapper,
+            @Value("${market.portfolio-cache.price-tolerance:0.001}") BigDecimal priceTolerance,
+            @Value("${market.portfolio-cache.max-age-seconds:60}") long maxAgeSeconds,
+            @Value("${market.portfolio-cache.max-entries:10000}") int maxEntries,
+            @Value("${market.portfolio-cache.max-bytes:67108864}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.priceTolerance = priceTolerance;
+        this.maxAgeNanos = maxAgeSeconds * 1_000_000_000L;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cached JSON for the user, or null on a miss.
+     */
+    public byte[] get(String userId) {
+        Entry entry = entries.get(userId);
+        long now = System.nanoTime();
+        // Age bound as a backstop; events normally invalidate well before it
+        if (entry == null || now - entry.createdAt > maxAgeNanos) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastAccess = now;
+        hits.incrementAndGet();
+        return entry.json;
+    }
+
+    /**
+     * Token to take before building a response; pass it to {@link #put} afterwards.
+     */
+    public long generation(String userId) {
+        return generations.get(stripe(userId));
+    }
+
+    /**
+     * Serializes the portfolio and caches it unless the user was invalidated after
+     * {@code generation} was taken. Returns the JSON either way.
+     */
+    public byte[] put(String userId, long generation, PortfolioDTO portfolio) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(portfolio);
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot serialize portfolio: " + e.getMessage(), e);
+        }
+
+        Map<String, BigDecimal> pricedAt = new LinkedHashMap<>();
+        if (portfolio.getHoldings() != null) {
+            for (HoldingDTO h : portfolio.getHoldings()) {
+                // Unpriced holdings are recorded as null so the first real quote refreshes them
+                pricedAt.put(h.getSymbol().toUpperCase(),
+                        Boolean.FALSE.equals(h.getPriceAvailable()) ? null : h.getCurrentPrice());
+            }
+        }
+        Entry entry = new Entry(json, pricedAt);
+
+        Entry previous = entries.put(userId, entry);
+        if (previous != null) {
+            release(userId, previous);
+        }
+        totalBytes.addAndGet(json.length);
+        pricedAt.keySet().forEach(symbol -> index(symbol, userId));
+        // Store first, then re-check: an invalidation either removes the entry or moves the generation
+        if (generations.get(stripe(userId)) != generation) {
+            discardedPuts.incrementAndGet();
+            remove(userId, entry);
+        } else if (entries.size() > maxEntries || totalBytes.get() > maxBytes) {
+            evict();
+        }
+        return json;
+    }
+
+    // Runs after LivePortfolioValuation has applied the change, so a rebuild sees the new state
+    @Order(2)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        generations.incrementAndGet(stripe(event.getUserId()));
+        Entry entry = entries.get(event.getUserId());
+        if (entry != null && remove(event.getUserId(), entry)) {
+            changeInvalidations.incrementAndGet();
+        }
+    }
+
+    // Rendered prices are recorded per entry, so a rebuild that raced a tick is caught by the next one
+    @Order(2)
+    @EventListener
+    public void onPriceChanged(PriceChangedEvent event) {
+        Set<String> holders = holdersBySymbol.get(event.getSymbol());
+        if (holders == null || holders.isEmpty()) {
+            return;
+        }
+        for (String userId : holders) {
+            Entry entry = entries.get(userId);
+            if (entry == null || !movedBeyondTolerance(entry.pricedAt.get(event.getSymbol()), event.getPrice())) {
+                continue;
+            }
+            generations.incrementAndGet(stripe(userId));
+            if (remove(userId, entry)) {
+                priceInvalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long total = hits.get() + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("bytes", totalBytes.get());
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total > 0 ? (double) hits.get() / total : 0.0);
+        stats.put("changeInvalidations", changeInvalidations.get());
+        stats.put("priceInvalidations", priceInvalidations.get());
+        stats.put("discardedPuts", discardedPuts.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private boolean movedBeyondTolerance(BigDecimal renderedPrice, BigDecimal price) {
+        if (renderedPrice == null || renderedPrice.signum() == 0) {
+            return true;
+        }
+        BigDecimal change = price.subtract(renderedPrice).abs().divide(renderedPrice, 8, RoundingMode.HALF_UP);
+        return change.compareTo(priceTolerance) > 0;
+    }
+
+    /**
+     * Approximate LRU: once over either bound, drop the least recently used entries
+     * until both are back at 90%.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+            snapshot.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            int targetEntries = (int) (maxEntries * 0.9);
+            long targetBytes = (long) (maxBytes * 0.9);
+            for (Map.Entry<String, Entry> e : snapshot) {
+                if (entries.size() <= targetEntries && totalBytes.get() <= targetBytes) {
+                    break;
+                }
+                if (remove(e.getKey(), e.getValue())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean remove(String userId, Entry entry) {
+        if (!entries.remove(userId, entry)) {
+            return false;
+        }
+        release(userId, entry);
+        return true;
+    }
+
+    private void release(String userId, Entry entry) {
+        totalBytes.addAndGet(-entry.json.length);
+        Entry current = entries.get(userId);
+        for (String symbol : entry.pricedAt.keySet()) {
+            if (current == null || !current.pricedAt.containsKey(symbol)) {
+                unindex(symbol, userId);
+            }
+        }
+    }
+
+    private void index(String symbol, String userId) {
+        holdersBySymbol.compute(symbol, (k, users) -> {
+            Set<String> set = users != null ? users : ConcurrentHashMap.newKeySet();
+            set.add(userId);
+            return set;
+        });
+    }
+
+    private void unindex(String symbol, String userId) {
+        holdersBySymbol.computeIfPresent(symbol, (k, users) -> {
+            users.remove(userId);
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    private static int stripe(String userId) {
+        return Math.floorMod(userId.hashCode(), GENERATION_STRIPES);
+    }
+
+    private static final class Entry {
+        final byte[] json;
+        final Map<String, BigDecimal> pricedAt; // Price each holding was rendered with
+        final long createdAt;
+        volatile long lastAccess;
+
+        Entry(byte[] json, Map<String, BigDecimal> pricedAt) {
+            this.json = json;
+            this.pricedAt = pricedAt;
+            this.createdAt = System.nanoTime();
+            this.lastAccess = createdAt;
+        }
+    }
+}
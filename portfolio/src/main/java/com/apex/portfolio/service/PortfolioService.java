@@ -1,17 +1,21 @@
 package com.apex.portfolio.service;
 
-import com.apex.portfolio.dto.HoldingDTO;
+import com.apex.portfolio.dto.HoldingsPageDTO;
 import com.apex.portfolio.dto.PortfolioDTO;
+import com.apex.portfolio.dto.PortfolioSummaryDTO;
 import com.apex.portfolio.model.Holding;
 import com.apex.portfolio.model.User;
 import com.apex.portfolio.repository.HoldingRepository;
 import com.apex.portfolio.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -19,10 +23,88 @@ import java.util.stream.Collectors;
 public class PortfolioService {
 
     private final HoldingRepository holdingRepository;
-    private final StockPriceService stockPriceService;
+    private final AsyncStockPriceService asyncPriceService;
     private final UserRepository userRepository; // Inject User Repo
-
+    private final PriceHistoryService priceHistoryService;
+    private final LivePortfolioValuation liveValuation;
+    private final PortfolioResponseCache responseCache;
+
+    // Longest a portfolio read waits on quotes before answering with what it has
+    @Value("${market.quote-deadline-ms:2000}")
+    private long quoteDeadlineMillis;
+
+    /**
+     * Dashboard read: served from the live valuation for active users. A cold user is
+     * computed from the database once and then kept current by price and trade events.
+     */
     public PortfolioDTO getPortfolio(String userId) {
+        PortfolioDTO live = liveValuation.view(userId);
+        if (live != null) {
+            return live;
+        }
+        return load(userId, true, PortfolioBook::render);
+    }
+
+    /**
+     * Serialized dashboard response, cached per user until a trade, cash move or
+     * significant quote change invalidates it.
+     */
+    public byte[] getPortfolioJson(String userId) {
+        byte[] cached = responseCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = responseCache.generation(userId);
+        return responseCache.put(userId, generation, getPortfolio(userId));
+    }
+
+    /**
+     * Totals only, for widgets and header bars; never builds per-holding DTOs.
+     */
+    public PortfolioSummaryDTO getSummary(String userId) {
+        PortfolioSummaryDTO live = liveValuation.read(userId, PortfolioBook::summary);
+        if (live != null) {
+            return live;
+        }
+        return load(userId, true, PortfolioBook::summary);
+    }
+
+    /**
+     * One page of holdings sorted server-side; see {@link PortfolioBook#page}.
+     */
+    public HoldingsPageDTO getHoldings(String userId, PortfolioBook.Sort sort, boolean ascending,
+            String cursor, int limit) {
+        Function<PortfolioBook, HoldingsPageDTO> page = book -> book.page(sort, ascending, cursor, limit);
+        HoldingsPageDTO live = liveValuation.read(userId, page);
+        if (live != null) {
+            return live;
+        }
+        return load(userId, true, page);
+    }
+
+    /**
+     * Totals for background jobs: the live book if the user is active, otherwise a
+     * recompute that does not activate one.
+     */
+    public PortfolioSummaryDTO computeSummary(String userId) {
+        PortfolioSummaryDTO live = liveValuation.read(userId, PortfolioBook::summary);
+        if (live != null) {
+            return live;
+        }
+        return load(userId, false, PortfolioBook::summary);
+    }
+
+    /**
+     * Full recompute from the database without activating a live valuation (batch jobs).
+     */
+    public PortfolioDTO computePortfolio(String userId) {
+        return load(userId, false, PortfolioBook::render);
+    }
+
+    // Cold path: builds the book from the database, renders it, then optionally hands it to the live valuation
+    private <T> T load(String userId, boolean activate, Function<PortfolioBook, T> view) {
+        long changeMarker = liveValuation.changeMarker(userId);
+
         // 0. Fetch User Financials
         User user = userRepository.findById(userId)
                 .orElse(User.builder()
@@ -36,78 +118,28 @@ public class PortfolioService {
 
         List<Holding> holdings = holdingRepository.findByUserId(userId);
 
-        BigDecimal totalValue = BigDecimal.ZERO;
-        BigDecimal totalInvested = BigDecimal.ZERO;
-
-        // 1. First Pass: Calculate basic values and totals
-        List<HoldingDTO> tempHoldings = new java.util.ArrayList<>();
+        // Price every held symbol in parallel; symbols still missing at the deadline are
+        // valued at cost and flagged so the client can show them as unpriced
+        Map<String, BigDecimal> prices = asyncPriceService.getPricesWithin(
+                holdings.stream().map(Holding::getSymbol).collect(Collectors.toList()),
+                Duration.ofMillis(quoteDeadlineMillis));
 
+        // Fixed-point from here on; BigDecimal again only in the rendered DTO
+        PortfolioBook book = new PortfolioBook(FixedPoint.of(cashBalance), FixedPoint.of(realizedPnL));
         for (Holding holding : holdings) {
-            BigDecimal currentPrice = stockPriceService.getPrice(holding.getSymbol());
-            BigDecimal avgPrice = BigDecimal.valueOf(holding.getAveragePrice());
-            BigDecimal quantity = BigDecimal.valueOf(holding.getQuantity());
-
-            BigDecimal invested = avgPrice.multiply(quantity);
-            BigDecimal currentVal = currentPrice.multiply(quantity);
-
-            BigDecimal pnl = currentVal.subtract(invested);
-            BigDecimal pnlPercent = invested.compareTo(BigDecimal.ZERO) > 0
-                    ? pnl.divide(invested, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-                    : BigDecimal.ZERO;
-
-            tempHoldings.add(HoldingDTO.builder()
-                    .symbol(holding.getSymbol())
-                    .quantity(holding.getQuantity())
-                    .averagePrice(avgPrice)
-                    .currentPrice(currentPrice)
-                    .currentValue(currentVal)
-                    .pnl(pnl)
-                    .pnlPercentage(pnlPercent)
-                    .build());
-
-            totalValue = totalValue.add(currentVal);
-            totalInvested = totalInvested.add(invested);
+            String symbol = holding.getSymbol().toUpperCase();
+            long price = FixedPoint.ofNullable(prices.get(symbol));
+            long prevClose = price != FixedPoint.NONE
+                    ? FixedPoint.ofNullable(priceHistoryService.previousClose(symbol))
+                    : FixedPoint.NONE;
+            book.apply(symbol, holding.getQuantity(), FixedPoint.of(holding.getAveragePrice()), price, prevClose);
         }
 
-        // 2. Second Pass: Calculate Allocation % and Find Gainer/Loser
-        List<HoldingDTO> finalHoldings = new java.util.ArrayList<>();
-        HoldingDTO topGainer = null;
-        HoldingDTO topLoser = null;
-
-        for (HoldingDTO h : tempHoldings) {
-            // Allocation
-            BigDecimal allocation = totalValue.compareTo(BigDecimal.ZERO) > 0
-                    ? h.getCurrentValue().divide(totalValue, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-                    : BigDecimal.ZERO;
-            h.setAllocationPercentage(allocation);
-            finalHoldings.add(h);
-
-            // Gainer/Loser
-            if (topGainer == null || h.getPnlPercentage().compareTo(topGainer.getPnlPercentage()) > 0) {
-                topGainer = h;
-            }
-            if (topLoser == null || h.getPnlPercentage().compareTo(topLoser.getPnlPercentage()) < 0) {
-                topLoser = h;
-            }
+        // Render before handing over: once active, the book is only touched under its lock
+        T result = view.apply(book);
+        if (activate) {
+            liveValuation.activate(userId, changeMarker, book);
         }
-
-        BigDecimal totalPnL = totalValue.subtract(totalInvested);
-        BigDecimal totalPnLPercent = totalInvested.compareTo(BigDecimal.ZERO) > 0
-                ? totalPnL.divide(totalInvested, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
-                : BigDecimal.ZERO;
-
-        return PortfolioDTO.builder()
-                .holdings(finalHoldings)
-                .totalValue(totalValue)
-                .totalInvested(totalInvested)
-                .totalPnL(totalPnL)
-                .totalPnLPercentage(totalPnLPercent)
-                .dayPnL(BigDecimal.ZERO)
-                .cashBalance(cashBalance)
-                .realizedPnL(realizedPnL)
-                .netWorth(totalValue.add(cashBalance))
-                .topGainer(topGainer)
-                .topLoser(topLoser)
-                .build();
+        return result;
     }
 }
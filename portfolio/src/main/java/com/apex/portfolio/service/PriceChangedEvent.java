@@ -0,0 +1,17 @@
+package com.apex.portfolio.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Published by the quote cache when a symbol's cached price changes.
+ * Listeners run on the thread that loaded the price, so they must stay cheap.
+ */
+@Getter
+@AllArgsConstructor
+public class PriceChangedEvent {
+    private final String symbol;
+    private final BigDecimal price;
+}
@@ -0,0 +1,150 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.CandleDTO;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Day-change and chart data from the local candle store.
+ * <p>
+ * Lookups never touch the network: a symbol without history simply has no previous
+ * close yet and is queued for a background backfill from the price provider.
+ * Stored symbols are topped up after each market close.
+ */
+@Service
+public class PriceHistoryService {
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private final PriceHistoryStore store;
+    private final PriceHistorySource source;
+    private final PriceWarmer priceWarmer;
+    private final int backfillDays;
+
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "price-history-backfill");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong backfills = new AtomicLong();
+    private final AtomicLong backfillFailures = new AtomicLong();
+
+    public PriceHistoryService(PriceHistoryStore store, PriceHistorySource source, PriceWarmer priceWarmer,
+            @Value("${market.history.backfill-days:365}") int backfillDays) {
+        this.store = store;
+        this.source = source;
+        this.priceWarmer = priceWarmer;
+        this.backfillDays = backfillDays;
+    }
+
+    /**
+     * Previous session close for the symbol's current trading day, or null if unknown.
+     */
+    public BigDecimal previousClose(String symbol) {
+        Double close = store.previousClose(symbol, sessionDate(symbol));
+        if (close == null) {
+            requestBackfill(symbol);
+            return null;
+        }
+        return BigDecimal.valueOf(close);
+    }
+
+    /**
+     * Percentage change of {@code price} against the previous close, or zero if unknown.
+     */
+    public BigDecimal changePercent(String symbol, BigDecimal price) {
+        BigDecimal prevClose = previousClose(symbol);
+        if (prevClose == null || prevClose.signum() <= 0 || price == null) {
+            return BigDecimal.ZERO;
+        }
+        return price.subtract(prevClose)
+                .multiply(BigDecimal.valueOf(100))
+                .divide(prevClose, 2, RoundingMode.HALF_UP);
+    }
+
+    public List<CandleDTO> range(String symbol, LocalDate from, LocalDate to) {
+        if (!store.contains(symbol)) {
+            requestBackfill(symbol);
+        }
+        return store.range(symbol, from, to);
+    }
+
+    public void requestBackfill(String symbol) {
+        String key = symbol.toUpperCase();
+        if (!queued.add(key)) {
+            return;
+        }
+        try {
+            backfillExecutor.execute(() -> {
+                try {
+                    backfill(key);
+                } finally {
+                    queued.remove(key);
+                }
+            });
+        } catch (Exception e) {
+            queued.remove(key);
+        }
+    }
+
+    private void backfill(String symbol) {
+        // A symbol we already have only needs the last few sessions
+        int days = store.contains(symbol) ? 10 : backfillDays;
+        try {
+            store.append(symbol, source.getDailyCandles(symbol, days));
+            backfills.incrementAndGet();
+        } catch (Exception e) {
+            backfillFailures.incrementAndGet();
+            System.err.println("[PriceHistoryService] Backfill failed for " + symbol + ": " + e.getMessage());
+        }
+    }
+
+    // After NSE close (IST) and NYSE close (ET), top up every stored and held symbol
+    @Scheduled(cron = "0 0 16 * * MON-FRI", zone = "Asia/Kolkata")
+    @Scheduled(cron = "0 30 16 * * MON-FRI", zone = "America/New_York")
+    public void refreshAfterClose() {
+        Set<String> symbols = new LinkedHashSet<>(store.symbols());
+        symbols.addAll(priceWarmer.warmedSymbols());
+        symbols.forEach(this::requestBackfill);
+    }
+
+    // Indian listings trade on IST dates, everything else on New York dates
+    private static LocalDate sessionDate(String symbol) {
+        String key = symbol.toUpperCase();
+        boolean indian = key.endsWith(".NS") || key.endsWith(".BO");
+        return LocalDate.now(indian ? IST : NEW_YORK);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("symbols", store.symbolCount());
+        stats.put("queuedBackfills", queued.size());
+        stats.put("backfills", backfills.get());
+        stats.put("backfillFailures", backfillFailures.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,15 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.CandleDTO;
+
+import java.util.List;
+
+/**
+ * Provider of daily OHLC candles used to backfill the local price history.
+ */
+public interface PriceHistorySource {
+    /**
+     * Returns up to {@code days} most recent daily candles, oldest first.
+     */
+    List<CandleDTO> getDailyCandles(String symbol, int days);
+}
@@ -0,0 +1,377 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.CandleDTO;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Local, append-only store of daily candles.
+ * <p>
+ * Each symbol has one memory-mapped file laid out by column: a 16 byte header
+ * (magic, version, row count, capacity) followed by the date column (epoch day ints)
+ * and the open/high/low/close/prevClose columns (doubles), each {@code capacity}
+ * slots long. The in-memory index maps a symbol to its mapping, so the latest candle
+ * is an O(1) read and a date range is a binary search over the date column followed
+ * by a sequential scan. When a file fills up it is extended in place to double capacity:
+ * the file grows, the columns move to their new offsets, and the header's capacity is
+ * written last, so a file whose size does not match its capacity was interrupted mid-grow
+ * and is discarded on open (history is refetched).
+ * <p>
+ * Writes are serialized. Readers do not lock: each series has a {@link StampedLock} used
+ * as a seqlock, taken for writing while the last row is rewritten or the columns move, so
+ * a read that overlapped a write is retried rather than returning a torn candle.
+ */
+@Component
+public class PriceHistoryStore {
+
+    private static final int MAGIC = 0x4F484C43; // "OHLC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int DOUBLE_COLUMNS = 5; // open, high, low, close, prevClose
+    private static final String EXTENSION = ".ohlc";
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, Series> index = new ConcurrentHashMap<>();
+
+    public PriceHistoryStore(@Value("${market.history.dir:data/history}") String directory) {
+        this.directory = Path.of(directory);
+        try {
+            Files.createDirectories(this.directory);
+            try (Stream<Path> files = Files.list(this.directory)) {
+                files.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).forEach(this::open);
+            }
+        } catch (IOException e) {
+            System.err.println("[PriceHistoryStore] Cannot open history directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    public boolean contains(String symbol) {
+        Series series = index.get(symbol.toUpperCase());
+        return series != null && series.count > 0;
+    }
+
+    public int symbolCount() {
+        return index.size();
+    }
+
+    public List<String> symbols() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * Appends candles (oldest first). A candle for the same date as the last stored one
+     * replaces it, so today's candle can be updated intraday; older dates are ignored.
+     */
+    public synchronized void append(String symbol, List<CandleDTO> candles) {
+        if (candles.isEmpty()) {
+            return;
+        }
+        String key = symbol.toUpperCase();
+        Series series = index.computeIfAbsent(key, k -> create(k, INITIAL_CAPACITY));
+        if (series == null) {
+            index.remove(key);
+            return;
+        }
+        Series target = series;
+        for (CandleDTO candle : candles) {
+            int day = (int) candle.getDate().toEpochDay();
+            int count = target.count;
+            if (count > 0) {
+                int lastDay = target.date(count - 1);
+                if (day < lastDay) {
+                    continue;
+                }
+                if (day == lastDay) {
+                    // Readers may be on this row
+                    long stamp = target.lock.writeLock();
+                    try {
+                        target.write(count - 1, day, candle);
+                    } finally {
+                        target.lock.unlockWrite(stamp);
+                    }
+                    continue;
+                }
+            }
+            if (count == target.capacity) {
+                target = grow(key, target);
+                if (target == null) {
+                    return;
+                }
+            }
+            // Past the published count, so no reader looks at it yet
+            target.write(count, day, candle);
+            target.setCount(count + 1);
+        }
+    }
+
+    /**
+     * Runs {@code reader} against the symbol's series without locking, and again if a write
+     * overlapped it; null if the symbol is unknown.
+     */
+    private <T> T read(String symbol, Function<Series, T> reader) {
+        String key = symbol.toUpperCase();
+        while (true) {
+            Series series = index.get(key);
+            if (series == null) {
+                return null;
+            }
+            long stamp = series.lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    T result = reader.apply(series);
+                    if (series.lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    // Bytes changed under the read; only a failed validation gets here
+                    if (series.lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            }
+            // A writer is active: wait for it, then read under the lock unless the series grew
+            stamp = series.lock.readLock();
+            try {
+                if (!series.retired) {
+                    return reader.apply(series);
+                }
+            } finally {
+                series.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Most recent stored candle, or null.
+     */
+    public CandleDTO latest(String symbol) {
+        return read(symbol, series -> {
+            int count = series.count;
+            return count == 0 ? null : series.read(count - 1);
+        });
+    }
+
+    /**
+     * Close of the last session strictly before {@code day}: the previous close to use for
+     * a day-change calculation on {@code day}.
+     */
+    public Double previousClose(String symbol, LocalDate day) {
+        int target = (int) day.toEpochDay();
+        return read(symbol, series -> {
+            int count = series.count;
+            if (count == 0) {
+                return null;
+            }
+            int last = series.date(count - 1);
+            if (last < target) {
+                return series.column(count - 1, 3); // close of the latest session
+            }
+            if (last == target) {
+                return series.column(count - 1, 4); // today's candle carries its prevClose
+            }
+            int i = series.lowerBound(target) - 1;
+            return i >= 0 ? series.column(i, 3) : null;
+        });
+    }
+
+    /**
+     * Candles with from <= date <= to, oldest first.
+     */
+    public List<CandleDTO> range(String symbol, LocalDate from, LocalDate to) {
+        int start = (int) from.toEpochDay();
+        int end = (int) to.toEpochDay();
+        List<CandleDTO> result = read(symbol, series -> {
+            List<CandleDTO> candles = new ArrayList<>();
+            int count = series.count;
+            for (int i = series.lowerBound(start); i < count && series.date(i) <= end; i++) {
+                candles.add(series.read(i));
+            }
+            return candles;
+        });
+        return result != null ? result : new ArrayList<>();
+    }
+
+    private Path fileFor(String symbol) {
+        return directory.resolve(URLEncoder.encode(symbol, StandardCharsets.UTF_8) + EXTENSION);
+    }
+
+    private void open(Path file) {
+        String name = file.getFileName().toString();
+        String symbol = URLDecoder.decode(name.substring(0, name.length() - EXTENSION.length()), StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            if (header.position() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                System.err.println("[PriceHistoryStore] Skipping unrecognised file " + file);
+                return;
+            }
+            int capacity = header.getInt(12);
+            if (capacity <= 0 || channel.size() != sizeFor(capacity)) {
+                // Interrupted while growing: the columns may be half moved, so start the symbol over
+                System.err.println("[PriceHistoryStore] Discarding " + file + ", interrupted while growing");
+                channel.truncate(sizeFor(INITIAL_CAPACITY));
+                index.put(symbol, initialize(channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        sizeFor(INITIAL_CAPACITY)), INITIAL_CAPACITY));
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            index.put(symbol, new Series(buffer, capacity, header.getInt(8)));
+        } catch (IOException e) {
+            System.err.println("[PriceHistoryStore] Cannot open " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static long sizeFor(int capacity) {
+        return HEADER_BYTES + (long) capacity * (4 + 8 * DOUBLE_COLUMNS);
+    }
+
+    private Series create(String symbol, int capacity) {
+        Path file = fileFor(symbol);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return initialize(channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeFor(capacity)), capacity);
+        } catch (IOException e) {
+            System.err.println("[PriceHistoryStore] Cannot create " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Series initialize(MappedByteBuffer buffer, int capacity) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, 0);
+        buffer.putInt(12, capacity);
+        return new Series(buffer, capacity, 0);
+    }
+
+    /**
+     * Doubles the file's capacity in place. The file is extended by writing its new last
+     * byte (no truncate or rename, which fail on a mapped file on Windows), remapped, and the
+     * columns moved to their new offsets, last column first since each one moves further
+     * out than the one before it. Readers of the old series are held off by its write lock
+     * and then see it retired.
+     */
+    private Series grow(String symbol, Series old) {
+        Path file = fileFor(symbol);
+        int capacity = old.capacity * 2;
+        long size = sizeFor(capacity);
+        long stamp = old.lock.writeLock();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Series bigger = new Series(buffer, capacity, old.count);
+            for (int column = DOUBLE_COLUMNS - 1; column >= 0; column--) {
+                int from = old.columnOffset(column);
+                int to = bigger.columnOffset(column);
+                // Destination starts past the source, so copy from the end
+                for (int i = old.count - 1; i >= 0; i--) {
+                    buffer.putDouble(to + i * 8, buffer.getDouble(from + i * 8));
+                }
+            }
+            buffer.force();
+            buffer.putInt(12, capacity); // The layout switches here
+            buffer.force();
+            old.retired = true;
+            index.put(symbol, bigger);
+            return bigger;
+        } catch (IOException e) {
+            System.err.println("[PriceHistoryStore] Cannot grow " + file + " to " + capacity + " candles, "
+                    + symbol + " history stops here: " + e.getMessage());
+            return null;
+        } finally {
+            old.lock.unlockWrite(stamp);
+        }
+    }
+
+    @PreDestroy
+    public void flush() {
+        index.values().forEach(series -> series.buffer.force());
+    }
+
+    private static final class Series {
+        final MappedByteBuffer buffer;
+        final int capacity;
+        volatile int count;
+        // Seqlock for readers; retired once the series has grown into a new mapping
+        final StampedLock lock = new StampedLock();
+        volatile boolean retired;
+
+        Series(MappedByteBuffer buffer, int capacity, int count) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.count = count;
+        }
+
+        int date(int row) {
+            return buffer.getInt(HEADER_BYTES + row * 4);
+        }
+
+        double column(int row, int column) {
+            return buffer.getDouble(columnOffset(column) + row * 8);
+        }
+
+        int columnOffset(int column) {
+            return HEADER_BYTES + capacity * 4 + column * capacity * 8;
+        }
+
+        void write(int row, int day, CandleDTO candle) {
+            buffer.putInt(HEADER_BYTES + row * 4, day);
+            buffer.putDouble(columnOffset(0) + row * 8, candle.getOpen());
+            buffer.putDouble(columnOffset(1) + row * 8, candle.getHigh());
+            buffer.putDouble(columnOffset(2) + row * 8, candle.getLow());
+            buffer.putDouble(columnOffset(3) + row * 8, candle.getClose());
+            buffer.putDouble(columnOffset(4) + row * 8, candle.getPrevClose());
+        }
+
+        void setCount(int newCount) {
+            buffer.putInt(8, newCount);
+            count = newCount; // Publish after the row is written
+        }
+
+        CandleDTO read(int row) {
+            return CandleDTO.builder()
+                    .date(LocalDate.ofEpochDay(date(row)))
+                    .open(column(row, 0))
+                    .high(column(row, 1))
+                    .low(column(row, 2))
+                    .close(column(row, 3))
+                    .prevClose(column(row, 4))
+                    .build();
+        }
+
+        // First row whose date is >= day
+        int lowerBound(int day) {
+            int lo = 0;
+            int hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (date(mid) < day) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
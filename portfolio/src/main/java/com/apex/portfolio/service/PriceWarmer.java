@@ -0,0 +1,165 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.repository.HoldingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps quotes for every held symbol warm in the price cache so portfolio reads
+ * never wait on Yahoo.
+ * <p>
+ * The symbol set is a holder count per symbol, loaded from the holdings table and
+ * kept current by TradeService as holdings are created and deleted. A periodic
+ * resync from the database corrects any drift (e.g. rolled back trades).
+ */
+@Component
+public class PriceWarmer {
+
+    private static final int BATCH_SIZE = 20;
+
+    private static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private final HoldingRepository holdingRepository;
+    private final CachingStockPriceService priceCache;
+    private final long openIntervalMillis;
+    private final long closedIntervalMillis;
+    private final long batchPauseMillis;
+
+    private final ConcurrentHashMap<String, AtomicInteger> holderCounts = new ConcurrentHashMap<>();
+    private volatile long lastRefreshStarted = 0;
+    private volatile long lastRefreshCompleted = 0;
+    private volatile long lastRefreshDurationMillis = 0;
+
+    public PriceWarmer(HoldingRepository holdingRepository, CachingStockPriceService priceCache,
+            @Value("${market.warmer.open-interval-seconds:15}") long openIntervalSeconds,
+            @Value("${market.warmer.closed-interval-seconds:300}") long closedIntervalSeconds,
+            @Value("${market.warmer.batches-per-second:2}") int batchesPerSecond) {
+        this.holdingRepository = holdingRepository;
+        this.priceCache = priceCache;
+        this.openIntervalMillis = openIntervalSeconds * 1000L;
+        this.closedIntervalMillis = closedIntervalSeconds * 1000L;
+        this.batchPauseMillis = 1000L / Math.max(1, batchesPerSecond);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        resyncFromDatabase();
+    }
+
+    // Called by TradeService when a user opens a new position
+    public void track(String symbol) {
+        holderCounts.computeIfAbsent(symbol.toUpperCase(), k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    // Called by TradeService when a user closes a position completely
+    public void untrack(String symbol) {
+        holderCounts.computeIfPresent(symbol.toUpperCase(), (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    public List<String> warmedSymbols() {
+        return new ArrayList<>(holderCounts.keySet());
+    }
+
+    // Rebuild the symbol set from the holdings table every 10 minutes
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    public void resyncFromDatabase() {
+        try {
+            Map<String, AtomicInteger> fresh = new ConcurrentHashMap<>();
+            for (Object[] row : holdingRepository.countHoldersBySymbol()) {
+                fresh.put(((String) row[0]).toUpperCase(), new AtomicInteger(((Number) row[1]).intValue()));
+            }
+            holderCounts.keySet().retainAll(fresh.keySet());
+            holderCounts.putAll(fresh);
+        } catch (Exception e) {
+            System.err.println("[PriceWarmer] Failed to load held symbols: " + e.getMessage());
+        }
+    }
+
+    // Ticks every second; the actual refresh cadence depends on market hours
+    @Scheduled(fixedDelay = 1000, initialDelay = 5000)
+    public void tick() {
+        long now = System.currentTimeMillis();
+        long interval = isAnyMarketOpen(ZonedDateTime.now()) ? openIntervalMillis : closedIntervalMillis;
+        if (now - lastRefreshStarted < interval) {
+            return;
+        }
+        lastRefreshStarted = now;
+        refreshAll();
+        lastRefreshCompleted = System.currentTimeMillis();
+        lastRefreshDurationMillis = lastRefreshCompleted - now;
+    }
+
+    private void refreshAll() {
+        List<String> symbols = warmedSymbols();
+        for (int i = 0; i < symbols.size(); i += BATCH_SIZE) {
+            List<String> batch = symbols.subList(i, Math.min(i + BATCH_SIZE, symbols.size()));
+            try {
+                priceCache.refresh(batch);
+            } catch (Exception e) {
+                System.err.println("[PriceWarmer] Refresh failed for " + batch + ": " + e.getMessage());
+            }
+            // Rate limit upstream calls between batches
+            if (i + BATCH_SIZE < symbols.size()) {
+                try {
+                    Thread.sleep(batchPauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // NSE 09:15-15:30 IST or NYSE 09:30-16:00 ET, weekdays
+    static boolean isAnyMarketOpen(ZonedDateTime now) {
+        return isOpen(now.withZoneSameInstant(IST), LocalTime.of(9, 15), LocalTime.of(15, 30))
+                || isOpen(now.withZoneSameInstant(NEW_YORK), LocalTime.of(9, 30), LocalTime.of(16, 0));
+    }
+
+    private static boolean isOpen(ZonedDateTime local, LocalTime open, LocalTime close) {
+        DayOfWeek day = local.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+            return false;
+        }
+        LocalTime time = local.toLocalTime();
+        return !time.isBefore(open) && time.isBefore(close);
+    }
+
+    public Map<String, Object> stats() {
+        List<String> symbols = warmedSymbols();
+        long oldest = 0;
+        long total = 0;
+        int cached = 0;
+        for (String symbol : symbols) {
+            long age = priceCache.ageMillis(symbol);
+            if (age >= 0) {
+                oldest = Math.max(oldest, age);
+                total += age;
+                cached++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("symbols", symbols.size());
+        stats.put("cachedSymbols", cached);
+        stats.put("oldestQuoteAgeMillis", oldest);
+        stats.put("averageQuoteAgeMillis", cached > 0 ? total / cached : 0);
+        stats.put("lastRefreshCompleted", lastRefreshCompleted);
+        stats.put("lastRefreshDurationMillis", lastRefreshDurationMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,282 @@
+package com.apex.portfolio.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes quote changes to Server-Sent Events subscribers.
+ * <p>
+ * One shared refresh loop prices the union of all subscribed symbols per tick and
+ * fans each change out to the interested connections. Every connection keeps only the
+ * latest pending price per symbol (conflation) and has at most one send in flight, on a
+ * sender thread of its own while it lasts, so a client that stops reading holds up only
+ * itself. A connection that is still busy with old updates for too many ticks, or whose
+ * send has been blocked for {@code market.stream.send-timeout-ms}, is dropped: its sender
+ * is interrupted and the emitter completed off the tick thread, since completing waits for
+ * the send. The blocked socket write itself gives up after the connector's timeout
+ * ({@code server.tomcat.connection-timeout}).
+ */
+@Service
+public class QuoteStreamService {
+
+    private final StockPriceService stockPriceService;
+    private final int maxSymbolsPerConnection;
+    private final int maxLaggingTicks;
+    private final long sendTimeoutMillis;
+    private final long emitterTimeoutMillis;
+
+    private final ConcurrentHashMap<String, Set<Subscription>> subscribersBySymbol = new ConcurrentHashMap<>();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, BigDecimal> lastPrices = new ConcurrentHashMap<>();
+
+    // Grows with the connections that are sending at once, never past one thread each
+    private final ExecutorService sendExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "quote-stream-send");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+    private final AtomicLong slowConsumersDropped = new AtomicLong();
+
+    public QuoteStreamService(StockPriceService stockPriceService,
+            @Value("${market.stream.max-symbols:50}") int maxSymbolsPerConnection,
+            @Value("${market.stream.max-lagging-ticks:5}") int maxLaggingTicks,
+            @Value("${market.stream.send-timeout-ms:10000}") long sendTimeoutMillis,
+            @Value("${market.stream.timeout-minutes:30}") long timeoutMinutes) {
+        this.stockPriceService = stockPriceService;
+        this.maxSymbolsPerConnection = maxSymbolsPerConnection;
+        this.maxLaggingTicks = maxLaggingTicks;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.emitterTimeoutMillis = timeoutMinutes * 60_000L;
+    }
+
+    public SseEmitter subscribe(Collection<String> symbols) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String symbol : symbols) {
+            if (!symbol.isBlank()) {
+                keys.add(symbol.trim().toUpperCase());
+            }
+        }
+        if (keys.isEmpty() || keys.size() > maxSymbolsPerConnection) {
+            throw new IllegalArgumentException("Subscribe to between 1 and " + maxSymbolsPerConnection + " symbols");
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscription subscription = new Subscription(emitter, keys);
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(e -> unsubscribe(subscription));
+
+        subscriptions.add(subscription);
+        for (String key : keys) {
+            subscribersBySymbol.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+            // New subscribers get the last known price straight away
+            BigDecimal last = lastPrices.get(key);
+            if (last != null) {
+                subscription.pending.put(key, last);
+            }
+        }
+        scheduleDrain(subscription);
+        return emitter;
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        if (!subscriptions.remove(subscription)) {
+            return;
+        }
+        for (String key : subscription.symbols) {
+            subscribersBySymbol.computeIfPresent(key, (k, subs) -> {
+                subs.remove(subscription);
+                return subs.isEmpty() ? null : subs;
+            });
+        }
+    }
+
+    // Single upstream loop shared by every connection
+    @Scheduled(fixedDelayString = "${market.stream.tick-ms:2000}")
+    public void tick() {
+        if (subscribersBySymbol.isEmpty()) {
+            return;
+        }
+        ticks.incrementAndGet();
+
+        // Stuck in a write whether or not anything new arrived for them
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions) {
+            long since = subscription.sendingSince;
+            if (since > 0 && now - since > sendTimeoutMillis) {
+                drop(subscription);
+            }
+        }
+
+        Map<String, BigDecimal> prices;
+        try {
+            prices = stockPriceService.getPrices(new ArrayList<>(subscribersBySymbol.keySet()));
+        } catch (Exception e) {
+            System.err.println("[QuoteStreamService] Refresh failed: " + e.getMessage());
+            return;
+        }
+
+        Set<Subscription> touched = new LinkedHashSet<>();
+        prices.forEach((symbol, price) -> {
+            // Made up while upstream is down: not a quote to show
+            if (FallbackPrice.isFallback(price)) {
+                return;
+            }
+            BigDecimal previous = lastPrices.put(symbol, price);
+            if (previous != null && previous.compareTo(price) == 0) {
+                return;
+            }
+            Set<Subscription> subs = subscribersBySymbol.get(symbol);
+            if (subs != null) {
+                for (Subscription subscription : subs) {
+                    subscription.pending.put(symbol, price);
+                    touched.add(subscription);
+                }
+            }
+        });
+
+        for (Subscription subscription : touched) {
+            if (subscription.draining.get()) {
+                // Still writing earlier updates: the new ones are conflated into pending
+                if (subscription.laggingTicks.incrementAndGet() > maxLaggingTicks) {
+                    drop(subscription);
+                }
+            } else {
+                scheduleDrain(subscription);
+            }
+        }
+
+        // Forget prices nobody is subscribed to any more
+        lastPrices.keySet().retainAll(subscribersBySymbol.keySet());
+    }
+
+    private void drop(Subscription subscription) {
+        if (!subscriptions.contains(subscription)) {
+            return;
+        }
+        slowConsumersDropped.incrementAndGet();
+        unsubscribe(subscription);
+        subscription.interruptSend();
+        // complete() waits for a send in progress, so never on the tick thread
+        try {
+            sendExecutor.execute(subscription.emitter::complete);
+        } catch (Exception e) {
+            // Shutting down, which completes every emitter
+        }
+    }
+
+    private void scheduleDrain(Subscription subscription) {
+        if (subscription.pending.isEmpty() || !subscription.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sendExecutor.execute(() -> drain(subscription));
+        } catch (Exception e) {
+            subscription.draining.set(false);
+        }
+    }
+
+    private void drain(Subscription subscription) {
+        try {
+            while (!subscription.pending.isEmpty() && subscriptions.contains(subscription)) {
+                Map<String, BigDecimal> batch = new LinkedHashMap<>();
+                for (String key : new ArrayList<>(subscription.pending.keySet())) {
+                    BigDecimal price = subscription.pending.remove(key);
+                    if (price != null) {
+                        batch.put(key, price);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    subscription.startSend();
+                    try {
+                        subscription.emitter.send(SseEmitter.event().name("quotes").data(batch));
+                    } finally {
+                        subscription.endSend();
+                    }
+                    eventsSent.incrementAndGet();
+                }
+            }
+            subscription.laggingTicks.set(0);
+        } catch (Exception e) {
+            unsubscribe(subscription);
+            subscription.emitter.completeWithError(e);
+        } finally {
+            subscription.draining.set(false);
+        }
+        // Updates may have arrived after the loop's last check
+        if (subscriptions.contains(subscription)) {
+            scheduleDrain(subscription);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connections", subscriptions.size());
+        stats.put("symbols", subscribersBySymbol.size());
+        stats.put("ticks", ticks.get());
+        stats.put("eventsSent", eventsSent.get());
+        stats.put("slowConsumersDropped", slowConsumersDropped.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<Subscription> open = new ArrayList<>(subscriptions);
+        open.forEach(subscription -> subscription.emitter.complete());
+        sendExecutor.shutdownNow();
+    }
+
+    private static final class Subscription {
+        final SseEmitter emitter;
+        final Set<String> symbols;
+        final ConcurrentHashMap<String, BigDecimal> pending = new ConcurrentHashMap<>();
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicInteger laggingTicks = new AtomicInteger();
+        // Set while a send is in progress
+        volatile long sendingSince;
+        private Thread sender;
+
+        Subscription(SseEmitter emitter, Set<String> symbols) {
+            this.emitter = emitter;
+            this.symbols = symbols;
+        }
+
+        synchronized void startSend() {
+            sender = Thread.currentThread();
+            sendingSince = System.currentTimeMillis();
+        }
+
+        // Under the lock, so an interrupt never reaches the thread after it moved on
+        synchronized void endSend() {
+            sender = null;
+            sendingSince = 0;
+        }
+
+        synchronized void interruptSend() {
+            if (sender != null) {
+                sender.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.TradeQuoteDTO;
+import com.apex.portfolio.model.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-phase trading: {@link #quote} prices an order and returns an HMAC-signed token
+ * binding user, symbol, side, quantity, price and expiry; {@link #execute} checks the
+ * signature and expiry and commits at the signed price. All network I/O happens in the
+ * quote phase, so the execute transaction only runs database statements.
+ * <p>
+ * Tokens are single-use: the trade's transaction inserts the token's nonce into
+ * {@code redeemed_quotes}, so a second redemption, on any instance or after a restart,
+ * finds the row and fails, and a trade that rolls back leaves the quote usable. Nonces
+ * redeemed here are also kept in memory until they expire, so a replay against the same
+ * instance is refused without a transaction. Set {@code trade.quote.secret} to share
+ * tokens across instances; without it a random key is generated at startup.
+ */
+@Service
+public class QuoteTokenService {
+
+    private static final String HMAC = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    // Rows are kept this long past expiry, in case another instance's clock is behind
+    private static final long PURGE_GRACE_MILLIS = 5 * 60_000L;
+
+    private final StockPriceService stockPriceService;
+    private final TradeService tradeService;
+    private final JdbcTemplate jdbcTemplate;
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    // Nonces redeemed by this instance -> expiry; a cache of redeemed_quotes
+    private final ConcurrentHashMap<String, Long> redeemed = new ConcurrentHashMap<>();
+
+    // Counters
+    private final AtomicLong quotes = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong replaysCaughtByDatabase = new AtomicLong();
+
+    public QuoteTokenService(StockPriceService stockPriceService, TradeService tradeService, DataSource dataSource,
+            @Value("${trade.quote.secret:}") String secret,
+            @Value("${trade.quote.ttl-seconds:15}") long ttlSeconds) {
+        this.stockPriceService = stockPriceService;
+        this.tradeService = tradeService;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            random.nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, HMAC);
+        this.ttlMillis = ttlSeconds * 1000L;
+    }
+
+    public TradeQuoteDTO quote(String userId, String symbol, int quantity, Transaction.TransactionType type) {
+        if (quantity <= 0) {
+            throw new RuntimeException("Quantity must be positive");
+        }
+        String ticker = symbol.toUpperCase();
+        long price = FixedPoint.of(stockPriceService.getPrice(ticker));
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        byte[] nonce = new byte[12];
+        random.nextBytes(nonce);
+
+        // userId|symbol|side|quantity|price units|expiry|nonce
+        String payload = String.join("|", userId, ticker, type.name(), Integer.toString(quantity),
+                Long.toString(price), Long.toString(expiresAt), ENCODER.encodeToString(nonce));
+        String token = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "."
+                + ENCODER.encodeToString(sign(payload));
+        quotes.incrementAndGet();
+
+        return TradeQuoteDTO.builder()
+                .token(token)
+                .symbol(ticker)
+                .type(type.name())
+                .quantity(quantity)
+                .price(FixedPoint.toBigDecimal(price))
+                .total(FixedPoint.toBigDecimal(FixedPoint.times(price, quantity)))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    /**
+     * Redeems a token for the user it was issued to. Throws if it is forged, expired,
+     * already used or someone else's.
+     */
+    public TradeQuoteDTO execute(String userId, String token) {
+        String[] fields = verify(userId, token);
+        String symbol = fields[1];
+        Transaction.TransactionType type = Transaction.TransactionType.valueOf(fields[2]);
+        int quantity = Integer.parseInt(fields[3]);
+        long price = Long.parseLong(fields[4]);
+        long expiresAt = Long.parseLong(fields[5]);
+
+        String nonce = fields[6];
+        if (redeemed.putIfAbsent(nonce, expiresAt) != null) {
+            rejected.incrementAndGet();
+            throw new RuntimeException("Quote already used");
+        }
+        try {
+            tradeService.executeAtPrice(userId, symbol, quantity, type, price,
+                    () -> recordRedemption(userId, nonce, expiresAt));
+        } catch (QuoteAlreadyUsedException e) {
+            // Redeemed elsewhere (or before a restart); keep it cached
+            rejected.incrementAndGet();
+            replaysCaughtByDatabase.incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            // A trade that did not happen leaves the quote usable until it expires
+            redeemed.remove(nonce);
+            throw e;
+        }
+        executions.incrementAndGet();
+        return TradeQuoteDTO.builder()
+                .symbol(symbol)
+                .type(type.name())
+                .quantity(quantity)
+                .price(FixedPoint.toBigDecimal(price))
+                .total(FixedPoint.toBigDecimal(FixedPoint.times(price, quantity)))
+                .expiresAt(expiresAt)
+                .build();
+    }
+
+    /**
+     * In the trade's transaction: a concurrent redemption of the same nonce waits on the key,
+     * then conflicts. The duplicate key becomes a plain RuntimeException so that
+     * UserTransactionExecutor, which retries integrity violations, does not retry it.
+     */
+    private void recordRedemption(String userId, String nonce, long expiresAt) {
+        try {
+            jdbcTemplate.update("insert into redeemed_quotes (nonce, user_id, expires_at, redeemed_at)"
+                    + " values (?, ?, ?, ?)", nonce, userId, expiresAt, Timestamp.valueOf(LocalDateTime.now()));
+        } catch (DuplicateKeyException e) {
+            throw new QuoteAlreadyUsedException();
+        }
+    }
+
+    static final class QuoteAlreadyUsedException extends RuntimeException {
+        QuoteAlreadyUsedException() {
+            super("Quote already used");
+        }
+    }
+
+    private String[] verify(String userId, String token) {
+        int dot = token != null ? token.indexOf('.') : -1;
+        String[] fields;
+        try {
+            if (dot < 0) {
+                throw new IllegalArgumentException();
+            }
+            String payload = new String(DECODER.decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+            // Constant-time compare so the signature cannot be probed byte by byte
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                throw new IllegalArgumentException();
+            }
+            fields = payload.split("\\|", -1);
+        } catch (IllegalArgumentException e) {
+            rejected.incrementAndGet();
+            throw new RuntimeException("Invalid quote token");
+        }
+        if (fields.length != 7 || !fields[0].equals(userId)) {
+            rejected.incrementAndGet();
+            throw new RuntimeException("Quote was issued to another user");
+        }
+        if (System.currentTimeMillis() > Long.parseLong(fields[5])) {
+            rejected.incrementAndGet();
+            throw new RuntimeException("Quote expired, request a new one");
+        }
+        return fields;
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot sign quote: " + e.getMessage(), e);
+        }
+    }
+
+    // Expired nonces can never verify again, so they need not be remembered
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeRedeemed() {
+        long now = System.currentTimeMillis();
+        redeemed.values().removeIf(expiresAt -> expiresAt < now);
+        try {
+            jdbcTemplate.update("delete from redeemed_quotes where expires_at < ?", now - PURGE_GRACE_MILLIS);
+        } catch (Exception e) {
+            System.err.println("[QuoteTokenService] Failed to purge redeemed quotes: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ttlSeconds", ttlMillis / 1000);
+        stats.put("quotes", quotes.get());
+        stats.put("executions", executions.get());
+        stats.put("rejected", rejected.get());
+        stats.put("replaysCaughtByDatabase", replaysCaughtByDatabase.get());
+        stats.put("outstandingNonces", redeemed.size());
+        return stats;
+    }
+}
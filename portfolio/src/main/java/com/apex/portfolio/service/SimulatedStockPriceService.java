@@ -0,0 +1,281 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.CandleDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Offline market simulator, active with the {@code simulator} profile in place of Yahoo.
+ * <p>
+ * Every symbol follows a geometric Brownian motion driven by a counter-based random
+ * generator: the shock for a symbol on a tick is a pure function of (seed, symbol, tick),
+ * so two runs with the same seed produce identical price paths. Prices live in one
+ * {@link AtomicLongArray} (double bits) advanced only by the ticker thread, so reads are a
+ * map lookup plus a volatile load and never block. The universe is the bundled
+ * symbols.csv plus {@code market.simulator.symbols} synthetic tickers (SIM00001...);
+ * any other symbol is given a free slot the first time it is requested.
+ */
+@Service("upstreamStockPriceService")
+@Profile("simulator")
+public class SimulatedStockPriceService implements StockPriceService, AsyncStockPriceService, PriceHistorySource {
+
+    // Trading seconds in a year (252 sessions of 6.5 hours), the unit for drift and volatility
+    private static final double SECONDS_PER_YEAR = 252 * 6.5 * 3600;
+    private static final double MIN_BASE_PRICE = 20;
+    private static final double MAX_BASE_PRICE = 5000;
+
+    private final long seed;
+    private final long tickMillis;
+    private final double driftPerTick;
+    private final double volatilityPerTick;
+    private final double dailyDrift;
+    private final double dailyVolatility;
+
+    // Slot storage, sized once at startup
+    private final int capacity;
+    private final long[] symbolSeeds;
+    private final AtomicLongArray prices;
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    private final AtomicLong tick = new AtomicLong();
+    private final AtomicLong overflowLookups = new AtomicLong();
+    private volatile long startedAtNanos;
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "market-simulator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SimulatedStockPriceService(@Value("${market.simulator.seed:42}") long seed,
+            @Value("${market.simulator.symbols:5000}") int syntheticSymbols,
+            @Value("${market.simulator.extra-symbols:10000}") int extraSymbols,
+            @Value("${market.simulator.tick-ms:100}") long tickMillis,
+            @Value("${market.simulator.time-scale:60}") double timeScale,
+            @Value("${market.simulator.drift:0.05}") double annualDrift,
+            @Value("${market.simulator.volatility:0.30}") double annualVolatility) {
+        this.seed = seed;
+        this.tickMillis = Math.max(1, tickMillis);
+
+        // One tick advances simulated time by tick-ms * time-scale
+        double dt = this.tickMillis / 1000.0 * timeScale / SECONDS_PER_YEAR;
+        this.driftPerTick = (annualDrift - annualVolatility * annualVolatility / 2) * dt;
+        this.volatilityPerTick = annualVolatility * Math.sqrt(dt);
+        this.dailyDrift = (annualDrift - annualVolatility * annualVolatility / 2) / 252;
+        this.dailyVolatility = annualVolatility / Math.sqrt(252);
+
+        List<String> universe = loadUniverse();
+        this.capacity = universe.size() + syntheticSymbols + Math.max(0, extraSymbols);
+        this.symbolSeeds = new long[capacity];
+        this.prices = new AtomicLongArray(capacity);
+        universe.forEach(this::register);
+        for (int i = 1; i <= syntheticSymbols; i++) {
+            register(String.format("SIM%05d", i));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        startedAtNanos = System.nanoTime();
+        ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        System.out.println("[SimulatedStockPriceService] Simulating " + registeredCount() + " symbols, seed " + seed
+                + ", tick " + tickMillis + "ms");
+    }
+
+    @Override
+    public BigDecimal getPrice(String symbol) {
+        int slot = slotFor(symbol.toUpperCase());
+        return BigDecimal.valueOf(Double.longBitsToDouble(prices.get(slot))).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public Map<String, BigDecimal> getPrices(Collection<String> symbols) {
+        Map<String, BigDecimal> result = new HashMap<>();
+        for (String symbol : symbols) {
+            result.put(symbol.toUpperCase(), getPrice(symbol));
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getPriceAsync(String symbol) {
+        return CompletableFuture.completedFuture(getPrice(symbol));
+    }
+
+    /**
+     * Synthetic daily history ending at today's simulated price, reproducible from the seed.
+     */
+    @Override
+    public List<CandleDTO> getDailyCandles(String symbol, int days) {
+        String key = symbol.toUpperCase();
+        int slot = slotFor(key);
+        long symbolSeed = symbolSeeds[slot];
+
+        // Walk backwards from the current price so the history joins the live series
+        List<LocalDate> sessions = new ArrayList<>();
+        for (LocalDate day = LocalDate.now(); sessions.size() < days; day = day.minusDays(1)) {
+            if (day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY) {
+                sessions.add(0, day);
+            }
+        }
+        double[] closes = new double[sessions.size() + 1];
+        closes[closes.length - 1] = Double.longBitsToDouble(prices.get(slot));
+        for (int i = closes.length - 2; i >= 0; i--) {
+            double z = gaussian(symbolSeed, -sessions.get(i).toEpochDay());
+            closes[i] = closes[i + 1] / Math.exp(dailyDrift + dailyVolatility * z);
+        }
+
+        List<CandleDTO> candles = new ArrayList<>(sessions.size());
+        for (int i = 0; i < sessions.size(); i++) {
+            double open = closes[i];
+            double close = closes[i + 1];
+            double range = Math.abs(gaussian(symbolSeed ^ 0x5DEECE66DL, sessions.get(i).toEpochDay()))
+                    * dailyVolatility / 2;
+            candles.add(CandleDTO.builder()
+                    .date(sessions.get(i))
+                    .open(round(open))
+                    .high(round(Math.max(open, close) * (1 + range)))
+                    .low(round(Math.min(open, close) * (1 - range)))
+                    .close(round(close))
+                    .prevClose(round(open))
+                    .build());
+        }
+        return candles;
+    }
+
+    public Map<String, Object> stats() {
+        long ticks = tick.get();
+        double elapsedSeconds = (System.nanoTime() - startedAtNanos) / 1e9;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("seed", seed);
+        stats.put("symbols", registeredCount());
+        stats.put("capacity", capacity);
+        stats.put("tickMillis", tickMillis);
+        stats.put("ticks", ticks);
+        stats.put("priceUpdatesPerSecond", elapsedSeconds > 0 ? Math.round(ticks * (double) registeredCount() / elapsedSeconds) : 0);
+        stats.put("overflowLookups", overflowLookups.get());
+        return stats;
+    }
+
+    // Ticker thread: the only writer of prices
+    private void advance() {
+        try {
+            long t = tick.incrementAndGet();
+            int count = registeredCount();
+            for (int i = 0; i < count; i++) {
+                double price = Double.longBitsToDouble(prices.get(i));
+                if (price == 0) {
+                    continue; // Slot reserved but not filled yet
+                }
+                double next = price * Math.exp(driftPerTick + volatilityPerTick * gaussian(symbolSeeds[i], t));
+                prices.lazySet(i, Double.doubleToRawLongBits(next));
+            }
+        } catch (Exception e) {
+            System.err.println("[SimulatedStockPriceService] Tick failed: " + e.getMessage());
+        }
+    }
+
+    private int slotFor(String key) {
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        slot = register(key);
+        if (slot != null) {
+            return slot;
+        }
+        // Universe is full: share a slot chosen by hash so the price is still stable per symbol
+        overflowLookups.incrementAndGet();
+        return Math.floorMod(key.hashCode(), capacity);
+    }
+
+    private int registeredCount() {
+        return Math.min(nextSlot.get(), capacity);
+    }
+
+    private Integer register(String key) {
+        return slots.computeIfAbsent(key, k -> {
+            int slot = nextSlot.getAndIncrement();
+            if (slot >= capacity) {
+                return null;
+            }
+            long symbolSeed = mix(seed ^ k.hashCode() * 0x9E3779B97F4A7C15L);
+            symbolSeeds[slot] = symbolSeed;
+            // Log-uniform starting price between MIN and MAX
+            double u = (mix(symbolSeed) >>> 11) * 0x1.0p-53;
+            // Volatile write publishes the slot to the ticker
+            prices.set(slot, Double.doubleToRawLongBits(MIN_BASE_PRICE * Math.pow(MAX_BASE_PRICE / MIN_BASE_PRICE, u)));
+            return slot;
+        });
+    }
+
+    // Standard normal from (symbol seed, step) via Box-Muller on two SplitMix64 outputs
+    private static double gaussian(long symbolSeed, long step) {
+        long a = mix(symbolSeed + step * 0x9E3779B97F4A7C15L);
+        long b = mix(a);
+        double u1 = ((a >>> 11) + 1) * 0x1.0p-53; // (0, 1]
+        double u2 = (b >>> 11) * 0x1.0p-53;
+        return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static List<String> loadUniverse() {
+        List<String> universe = new ArrayList<>();
+        try (InputStream in = new ClassPathResource("symbols.csv").getInputStream();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma > 0) {
+                    universe.add(line.substring(0, comma).trim().toUpperCase());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[SimulatedStockPriceService] Cannot read symbols.csv: " + e.getMessage());
+        }
+        return universe;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,199 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.model.PortfolioSnapshot;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact columnar encoding of one user's date-ordered snapshots.
+ * <p>
+ * Layout: a version byte, the row count and the first date (epoch day) as varints, then per
+ * row the day gap since the previous row, a null mask for the five amounts, and each
+ * non-null amount as the zigzag varint delta from that column's previous value in
+ * {@link FixedPoint} units. Day-to-day changes are small, so a row is typically 10-15
+ * bytes against a hundred or more for a table row plus its index entry.
+ */
+public final class SnapshotArchiveCodec {
+
+    private static final byte VERSION = 1;
+    private static final int COLUMNS = 5;
+    private static final int ALL_COLUMNS = (1 << COLUMNS) - 1;
+    private static final long MIN_DAY = LocalDate.MIN.toEpochDay();
+    private static final long MAX_DAY = LocalDate.MAX.toEpochDay();
+
+    private SnapshotArchiveCodec() {
+    }
+
+    public static byte[] encode(String userId, List<PortfolioSnapshot> snapshots) {
+        Output out = new Output(16 + snapshots.size() * 12);
+        out.write(VERSION);
+        out.writeVarint(snapshots.size());
+        if (snapshots.isEmpty()) {
+            return out.toByteArray();
+        }
+        long previousDay = snapshots.get(0).getDate().toEpochDay();
+        out.writeVarint(zigzag(previousDay));
+        long[] previous = new long[COLUMNS];
+        for (PortfolioSnapshot snapshot : snapshots) {
+            long day = snapshot.getDate().toEpochDay();
+            if (day < previousDay) {
+                throw new IllegalArgumentException("Snapshots for " + userId + " are not in date order");
+            }
+            out.writeVarint(day - previousDay);
+            previousDay = day;
+
+            BigDecimal[] amounts = amounts(snapshot);
+            int mask = 0;
+            for (int c = 0; c < COLUMNS; c++) {
+                if (amounts[c] != null) {
+                    mask |= 1 << c;
+                }
+            }
+            out.write((byte) mask);
+            for (int c = 0; c < COLUMNS; c++) {
+                if (amounts[c] != null) {
+                    long value = FixedPoint.of(amounts[c]);
+                    out.writeVarint(zigzag(value - previous[c]));
+                    previous[c] = value;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static List<PortfolioSnapshot> decode(String userId, byte[] data) {
+        Input in = new Input(data);
+        if (in.read() != VERSION) {
+            throw new IllegalStateException("Unsupported snapshot archive version for " + userId);
+        }
+        long count = in.readVarint();
+        // Every row takes at least two bytes (day gap, mask), which bounds a corrupt count
+        if (count > in.remaining() / 2) {
+            throw new IllegalStateException("Malformed snapshot archive for " + userId + ": " + count + " rows");
+        }
+        List<PortfolioSnapshot> snapshots = new ArrayList<>((int) count);
+        if (count == 0) {
+            in.expectEnd(userId);
+            return snapshots;
+        }
+        long day = unzigzag(in.readVarint());
+        long[] previous = new long[COLUMNS];
+        for (int i = 0; i < count; i++) {
+            day += in.readVarint();
+            if (day < MIN_DAY || day > MAX_DAY) {
+                throw new IllegalStateException("Malformed snapshot archive for " + userId + ": day " + day);
+            }
+            int mask = in.read();
+            if ((mask & ~ALL_COLUMNS) != 0) {
+                throw new IllegalStateException("Malformed snapshot archive for " + userId + ": mask " + mask);
+            }
+            BigDecimal[] amounts = new BigDecimal[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) {
+                if ((mask & (1 << c)) != 0) {
+                    previous[c] += unzigzag(in.readVarint());
+                    amounts[c] = FixedPoint.toBigDecimal(previous[c]);
+                }
+            }
+            snapshots.add(PortfolioSnapshot.builder()
+                    .userId(userId)
+                    .date(LocalDate.ofEpochDay(day))
+                    .totalValue(amounts[0])
+                    .investedAmount(amounts[1])
+                    .cashBalance(amounts[2])
+                    .unrealizedPnL(amounts[3])
+                    .realizedPnL(amounts[4])
+                    .build());
+        }
+        in.expectEnd(userId);
+        return snapshots;
+    }
+
+    private static BigDecimal[] amounts(PortfolioSnapshot s) {
+        return new BigDecimal[] {s.getTotalValue(), s.getInvestedAmount(), s.getCashBalance(),
+                s.getUnrealizedPnL(), s.getRealizedPnL()};
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Output {
+        private byte[] buffer;
+        private int size;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(byte b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = b;
+        }
+
+        // Unsigned LEB128: 7 bits per byte, high bit set on all but the last
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((byte) value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        int read() {
+            if (position >= data.length) {
+                throw new IllegalStateException("Truncated snapshot archive");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                // The tenth byte holds only the top bit of a long
+                if (shift == 63 && b > 1) {
+                    break;
+                }
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed varint in snapshot archive");
+        }
+
+        int remaining() {
+            return data.length - position;
+        }
+
+        void expectEnd(String userId) {
+            if (position != data.length) {
+                throw new IllegalStateException("Malformed snapshot archive for " + userId + ": "
+                        + remaining() + " trailing bytes");
+            }
+        }
+    }
+}
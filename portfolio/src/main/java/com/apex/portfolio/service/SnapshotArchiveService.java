@@ -0,0 +1,142 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.model.PortfolioSnapshot;
+import com.apex.portfolio.model.SnapshotArchive;
+import com.apex.portfolio.repository.PortfolioSnapshotRepository;
+import com.apex.portfolio.repository.SnapshotArchiveRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves snapshots older than {@code snapshot.archive.after-days} out of
+ * portfolio_snapshots into one {@link SnapshotArchiveCodec} blob per user, and reads
+ * them back for {@link SnapshotHistoryService}. Each user is archived in its own short
+ * transaction: the blob is rewritten and the archived rows deleted together.
+ */
+@Service
+public class SnapshotArchiveService {
+
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final SnapshotArchiveRepository archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int afterDays;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Counters
+    private final AtomicLong archivedUsers = new AtomicLong();
+    private final AtomicLong archivedRows = new AtomicLong();
+    private final AtomicLong archiveReads = new AtomicLong();
+    private final AtomicLong archiveSkips = new AtomicLong();
+    private volatile long lastRunMillis;
+
+    public SnapshotArchiveService(PortfolioSnapshotRepository snapshotRepository,
+            SnapshotArchiveRepository archiveRepository, PlatformTransactionManager transactionManager,
+            @Value("${snapshot.archive.after-days:90}") int afterDays) {
+        this.snapshotRepository = snapshotRepository;
+        this.archiveRepository = archiveRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.afterDays = afterDays;
+    }
+
+    // After the nightly snapshot job
+    @Scheduled(cron = "${snapshot.archive.cron:0 30 0 * * ?}")
+    public void archiveOldSnapshots() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            LocalDate cutoff = LocalDate.now().minusDays(afterDays);
+            for (String userId : snapshotRepository.findUserIdsWithSnapshotsBefore(cutoff)) {
+                try {
+                    archiveUser(userId, cutoff);
+                } catch (Exception e) {
+                    System.err.println("[SnapshotArchiveService] Archiving " + userId + " failed: " + e.getMessage());
+                }
+            }
+        } finally {
+            lastRunMillis = System.currentTimeMillis() - started;
+            running.set(false);
+        }
+    }
+
+    private void archiveUser(String userId, LocalDate cutoff) {
+        transactionTemplate.executeWithoutResult(tx -> {
+            List<PortfolioSnapshot> rows = snapshotRepository.findByUserIdAndDateBetweenOrderByDateAsc(
+                    userId, SnapshotHistoryService.EPOCH, cutoff.minusDays(1));
+            if (rows.isEmpty()) {
+                return;
+            }
+            // One entry per date; a table row wins over an archived one for the same day
+            TreeMap<LocalDate, PortfolioSnapshot> merged = new TreeMap<>();
+            SnapshotArchive archive = archiveRepository.findById(userId)
+                    .orElse(SnapshotArchive.builder().userId(userId).build());
+            if (archive.getData() != null) {
+                SnapshotArchiveCodec.decode(userId, archive.getData()).forEach(s -> merged.put(s.getDate(), s));
+            }
+            rows.forEach(s -> merged.put(s.getDate(), s));
+
+            archive.setData(SnapshotArchiveCodec.encode(userId, new ArrayList<>(merged.values())));
+            archive.setFirstDate(merged.firstKey());
+            archive.setLastDate(merged.lastKey());
+            archive.setRowCount(merged.size());
+            archive.setUpdatedAt(LocalDateTime.now());
+            archiveRepository.save(archive);
+            snapshotRepository.deleteAllInBatch(rows);
+
+            archivedUsers.incrementAndGet();
+            archivedRows.addAndGet(rows.size());
+        });
+    }
+
+    /**
+     * Archived snapshots for the user in {@code [from, to]}, in date order. The blob is only
+     * loaded and decoded when the archived date range overlaps the request.
+     */
+    public List<PortfolioSnapshot> read(String userId, LocalDate from, LocalDate to) {
+        SnapshotArchiveRepository.Span span = archiveRepository.findSpanByUserId(userId).orElse(null);
+        if (span == null || span.getFirstDate() == null
+                || span.getLastDate().isBefore(from) || span.getFirstDate().isAfter(to)) {
+            archiveSkips.incrementAndGet();
+            return List.of();
+        }
+        SnapshotArchive archive = archiveRepository.findById(userId).orElse(null);
+        if (archive == null || archive.getData() == null) {
+            return List.of();
+        }
+        archiveReads.incrementAndGet();
+        List<PortfolioSnapshot> inRange = new ArrayList<>();
+        for (PortfolioSnapshot s : SnapshotArchiveCodec.decode(userId, archive.getData())) {
+            if (!s.getDate().isBefore(from) && !s.getDate().isAfter(to)) {
+                inRange.add(s);
+            }
+        }
+        return inRange;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("afterDays", afterDays);
+        stats.put("archives", archiveRepository.count());
+        stats.put("archivedUsers", archivedUsers.get());
+        stats.put("archivedRows", archivedRows.get());
+        stats.put("archiveReads", archiveReads.get());
+        stats.put("archiveSkips", archiveSkips.get());
+        stats.put("lastRunMillis", lastRunMillis);
+        return stats;
+    }
+}
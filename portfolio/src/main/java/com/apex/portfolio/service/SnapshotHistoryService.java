@@ -0,0 +1,176 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.SnapshotPointDTO;
+import com.apex.portfolio.model.PortfolioSnapshot;
+import com.apex.portfolio.repository.PortfolioSnapshotRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot history reads for charts: raw rows for a date range (the table merged with the
+ * cold archive, see {@link SnapshotArchiveService}), or rolled up into
+ * daily/weekly/monthly points carrying first/last/min/max net worth. A rollup is capped at
+ * {@code maxPoints} (the chart's pixel width) by merging adjacent periods, so the payload
+ * does not grow with account age.
+ */
+@Service
+@RequiredArgsConstructor
+public class SnapshotHistoryService {
+
+    // Earliest date a range query starts from when none is given
+    static final LocalDate EPOCH = LocalDate.of(1970, 1, 1);
+
+    private final PortfolioSnapshotRepository snapshotRepository;
+    private final SnapshotArchiveService archiveService;
+
+    public enum Resolution {
+        DAILY, WEEKLY, MONTHLY, AUTO;
+
+        public static Resolution of(String name) {
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown resolution: " + name + " (daily, weekly, monthly, auto)");
+            }
+        }
+
+        LocalDate periodStart(LocalDate date) {
+            switch (this) {
+                case WEEKLY:
+                    return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTHLY:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date;
+            }
+        }
+    }
+
+    /**
+     * Rows in {@code [from, to]}: recent ones from the table, older ones from the user's
+     * archive. The archive is skipped when {@code from} is covered by the table, and
+     * otherwise only decoded if its stored date range shows days before the first table
+     * row, so a whole-history read of a user without old data never touches the blob.
+     */
+    public List<PortfolioSnapshot> getSnapshots(String userId, LocalDate from, LocalDate to) {
+        LocalDate start = from != null ? from : EPOCH;
+        LocalDate end = to != null ? to : LocalDate.now();
+        List<PortfolioSnapshot> recent = snapshotRepository.findByUserIdAndDateBetweenOrderByDateAsc(userId, start, end);
+        if (from != null && !recent.isEmpty() && !recent.get(0).getDate().isAfter(from)) {
+            return recent;
+        }
+        // Archived days older than the first table row; the table wins if a day is in both
+        LocalDate archiveEnd = recent.isEmpty() ? end : recent.get(0).getDate().minusDays(1);
+        if (archiveEnd.isBefore(start)) {
+            return recent;
+        }
+        List<PortfolioSnapshot> archived = archiveService.read(userId, start, archiveEnd);
+        if (archived.isEmpty()) {
+            return recent;
+        }
+        List<PortfolioSnapshot> merged = new ArrayList<>(archived.size() + recent.size());
+        merged.addAll(archived);
+        merged.addAll(recent);
+        return merged;
+    }
+
+    /**
+     * Rolled-up series for {@code [from, to]}. AUTO picks the finest resolution that fits
+     * in {@code maxPoints}; any resolution that still does not fit has adjacent periods merged.
+     */
+    public List<SnapshotPointDTO> getSeries(String userId, LocalDate from, LocalDate to, Resolution resolution,
+            int maxPoints) {
+        List<PortfolioSnapshot> rows = getSnapshots(userId, from, to);
+        if (resolution == Resolution.AUTO) {
+            resolution = Resolution.MONTHLY;
+            for (Resolution candidate : new Resolution[] {Resolution.DAILY, Resolution.WEEKLY}) {
+                if (countPeriods(rows, candidate) <= maxPoints) {
+                    resolution = candidate;
+                    break;
+                }
+            }
+        }
+        List<SnapshotPointDTO> points = rollUp(rows, resolution);
+        return points.size() > maxPoints ? merge(points, (points.size() + maxPoints - 1) / maxPoints) : points;
+    }
+
+    private static int countPeriods(List<PortfolioSnapshot> rows, Resolution resolution) {
+        int count = 0;
+        LocalDate current = null;
+        for (PortfolioSnapshot row : rows) {
+            LocalDate period = resolution.periodStart(row.getDate());
+            if (!period.equals(current)) {
+                current = period;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Rows are in date order, so each period is one contiguous run
+    private static List<SnapshotPointDTO> rollUp(List<PortfolioSnapshot> rows, Resolution resolution) {
+        List<SnapshotPointDTO> points = new ArrayList<>();
+        SnapshotPointDTO point = null;
+        for (PortfolioSnapshot row : rows) {
+            LocalDate period = resolution.periodStart(row.getDate());
+            BigDecimal netWorth = row.getTotalValue() != null ? row.getTotalValue() : BigDecimal.ZERO;
+            if (point == null || !period.equals(point.getPeriodStart())) {
+                point = SnapshotPointDTO.builder()
+                        .periodStart(period)
+                        .days(0)
+                        .first(netWorth)
+                        .min(netWorth)
+                        .max(netWorth)
+                        .build();
+                points.add(point);
+            }
+            point.setDays(point.getDays() + 1);
+            point.setPeriodEnd(row.getDate());
+            point.setLast(netWorth);
+            point.setMin(point.getMin().min(netWorth));
+            point.setMax(point.getMax().max(netWorth));
+            point.setInvestedAmount(row.getInvestedAmount());
+            point.setCashBalance(row.getCashBalance());
+            point.setUnrealizedPnL(row.getUnrealizedPnL());
+            point.setRealizedPnL(row.getRealizedPnL());
+        }
+        return points;
+    }
+
+    // Folds every {@code group} consecutive points into one
+    private static List<SnapshotPointDTO> merge(List<SnapshotPointDTO> points, int group) {
+        List<SnapshotPointDTO> merged = new ArrayList<>((points.size() + group - 1) / group);
+        for (int i = 0; i < points.size(); i += group) {
+            SnapshotPointDTO head = points.get(i);
+            SnapshotPointDTO tail = points.get(Math.min(i + group, points.size()) - 1);
+            SnapshotPointDTO point = SnapshotPointDTO.builder()
+                    .periodStart(head.getPeriodStart())
+                    .periodEnd(tail.getPeriodEnd())
+                    .days(0)
+                    .first(head.getFirst())
+                    .last(tail.getLast())
+                    .min(head.getMin())
+                    .max(head.getMax())
+                    .investedAmount(tail.getInvestedAmount())
+                    .cashBalance(tail.getCashBalance())
+                    .unrealizedPnL(tail.getUnrealizedPnL())
+                    .realizedPnL(tail.getRealizedPnL())
+                    .build();
+            for (int j = i; j < i + group && j < points.size(); j++) {
+                SnapshotPointDTO p = points.get(j);
+                point.setDays(point.getDays() + p.getDays());
+                point.setMin(point.getMin().min(p.getMin()));
+                point.setMax(point.getMax().max(p.getMax()));
+            }
+            merged.add(point);
+        }
+        return merged;
+    }
+}
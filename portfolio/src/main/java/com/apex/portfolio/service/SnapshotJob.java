@@ -0,0 +1,298 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.model.SnapshotJobCheckpoint;
+import com.apex.portfolio.repository.SnapshotJobCheckpointRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nightly snapshot run, partitioned by user id.
+ * <p>
+ * The coordinator pages user ids in key order ({@code snapshot.job.chunk-size} per page)
+ * and hands each page to a fixed pool of {@code snapshot.job.workers} threads. A worker
+ * values its id range with {@link BulkValuationEngine}, then replaces that range's rows
+ * for the day with one JDBC batch insert in its own short transaction, so the run never
+ * holds more connections than it has workers. At most two chunks per worker are queued.
+ * <p>
+ * The checkpoint records the last user id below which every chunk has committed (chunks
+ * finish out of order, so this is the contiguous prefix). A run that finds its day's
+ * checkpoint still RUNNING, e.g. after a crash, resumes after that id; chunks past it are
+ * rewritten, which is harmless since each chunk replaces its own rows.
+ */
+@Service
+public class SnapshotJob {
+
+    // A per-user snapshot landing between a chunk's delete and insert fails the insert; the chunk is redone
+    private static final int CHUNK_ATTEMPTS = 3;
+
+    private final BulkValuationEngine bulkValuationEngine;
+    private final SnapshotJobCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int workers;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Progress of the current (or last) run
+    private volatile LocalDate runDate;
+    private volatile String status = "IDLE";
+    private volatile long totalUsers;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private final AtomicLong usersDone = new AtomicLong();
+    private final AtomicLong usersThisRun = new AtomicLong();
+    private final AtomicInteger chunksDone = new AtomicInteger();
+    private final AtomicInteger chunksFailed = new AtomicInteger();
+
+    public SnapshotJob(BulkValuationEngine bulkValuationEngine, SnapshotJobCheckpointRepository checkpointRepository,
+            DataSource dataSource, PlatformTransactionManager transactionManager,
+            @Value("${snapshot.job.chunk-size:1000}") int chunkSize,
+            @Value("${snapshot.job.workers:4}") int workers) {
+        this.bulkValuationEngine = bulkValuationEngine;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.workers = workers;
+    }
+
+    // A run interrupted by a restart carries on once the app is up
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        for (SnapshotJobCheckpoint checkpoint : checkpointRepository.findByStatus(SnapshotJobCheckpoint.Status.RUNNING)) {
+            System.out.println("[SnapshotJob] Resuming run for " + checkpoint.getRunDate()
+                    + " after user " + checkpoint.getLastUserId());
+            Thread thread = new Thread(() -> run(checkpoint.getRunDate()), "snapshot-job-resume");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Writes every user's snapshot for {@code date}, resuming from the checkpoint if a run
+     * for that date was interrupted. Returns false if a run is already in progress.
+     */
+    public boolean run(LocalDate date) {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("[SnapshotJob] Run for " + date + " skipped, another run is in progress");
+            return false;
+        }
+        try {
+            execute(date);
+            return true;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void execute(LocalDate date) {
+        SnapshotJobCheckpoint checkpoint = checkpointRepository.findById(date)
+                .filter(c -> c.getStatus() != SnapshotJobCheckpoint.Status.COMPLETED)
+                .orElse(SnapshotJobCheckpoint.builder().runDate(date).usersDone(0L).build());
+        String resumeAfter = checkpoint.getLastUserId() != null ? checkpoint.getLastUserId() : "";
+
+        runDate = date;
+        status = "RUNNING";
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        totalUsers = jdbcTemplate.queryForObject("select count(*) from users", Long.class);
+        usersDone.set(checkpoint.getUsersDone() != null ? checkpoint.getUsersDone() : 0);
+        usersThisRun.set(0);
+        chunksDone.set(0);
+        chunksFailed.set(0);
+        saveCheckpoint(checkpoint, checkpoint.getLastUserId(), SnapshotJobCheckpoint.Status.RUNNING);
+
+        Watermark watermark = new Watermark(checkpoint.getLastUserId());
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "snapshot-job");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore inFlight = new Semaphore(workers * 2);
+        try {
+            String after = resumeAfter;
+            int sequence = 0;
+            while (chunksFailed.get() == 0) {
+                List<String> ids = jdbcTemplate.queryForList(
+                        "select id from users where id > ? order by id limit ?", String.class, after, chunkSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                String first = after;
+                String last = ids.get(ids.size() - 1);
+                int chunk = sequence++;
+                watermark.register(last);
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        int written = writeChunk(date, first, last);
+                        chunksDone.incrementAndGet();
+                        usersThisRun.addAndGet(written);
+                        long done = usersDone.addAndGet(written);
+                        String committed = watermark.complete(chunk);
+                        if (committed != null) {
+                            saveCheckpoint(checkpoint, committed, SnapshotJobCheckpoint.Status.RUNNING, done);
+                        }
+                    } catch (Exception e) {
+                        chunksFailed.incrementAndGet();
+                        System.err.println("[SnapshotJob] Chunk (" + first + ", " + last + "] failed: " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                after = last;
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        finishedAt = System.currentTimeMillis();
+        boolean ok = chunksFailed.get() == 0;
+        status = ok ? "COMPLETED" : "FAILED";
+        // A failed run keeps its watermark, so the next run for the date resumes from there
+        saveCheckpoint(checkpoint, watermark.committed(),
+                ok ? SnapshotJobCheckpoint.Status.COMPLETED : SnapshotJobCheckpoint.Status.FAILED, usersDone.get());
+        System.out.println("[SnapshotJob] " + status + " " + date + ": " + usersThisRun.get() + " users in "
+                + chunksDone.get() + " chunks, " + (finishedAt - startedAt) + "ms");
+    }
+
+    // Replaces the range's rows for the day in one short transaction; returns the number of users written
+    private int writeChunk(LocalDate date, String afterUserId, String lastUserId) {
+        BulkValuationEngine.Valuation valuation = bulkValuationEngine.valueRange(afterUserId, lastUserId);
+        List<Object[]> rows = new ArrayList<>(valuation.size());
+        for (int i = 0; i < valuation.size(); i++) {
+            rows.add(new Object[] {
+                    valuation.userId(i),
+                    Date.valueOf(date),
+                    FixedPoint.toBigDecimal(valuation.netWorth(i)), // Net Worth = Assets + Cash
+                    FixedPoint.toBigDecimal(valuation.totalInvested(i)),
+                    FixedPoint.toBigDecimal(valuation.cashBalance(i)),
+                    FixedPoint.toBigDecimal(valuation.unrealizedPnL(i)),
+                    FixedPoint.toBigDecimal(valuation.realizedPnL(i))
+            });
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(tx -> {
+                    jdbcTemplate.update("delete from portfolio_snapshots"
+                            + " where date = ? and user_id > ? and user_id <= ?", Date.valueOf(date), afterUserId,
+                            lastUserId);
+                    jdbcTemplate.batchUpdate("insert into portfolio_snapshots (user_id, date, total_value,"
+                            + " invested_amount, cash_balance, unrealized_pnl, realized_pnl)"
+                            + " values (?, ?, ?, ?, ?, ?, ?)", rows);
+                });
+                return rows.size();
+            } catch (DataIntegrityViolationException e) {
+                // The unique (user_id, date) constraint: SnapshotService wrote one of these users meanwhile
+                if (attempt == CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void saveCheckpoint(SnapshotJobCheckpoint checkpoint, String lastUserId, SnapshotJobCheckpoint.Status s) {
+        saveCheckpoint(checkpoint, lastUserId, s, usersDone.get());
+    }
+
+    private synchronized void saveCheckpoint(SnapshotJobCheckpoint checkpoint, String lastUserId,
+            SnapshotJobCheckpoint.Status s, long done) {
+        checkpoint.setLastUserId(lastUserId);
+        checkpoint.setUsersDone(done);
+        checkpoint.setStatus(s);
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        try {
+            checkpointRepository.save(checkpoint);
+        } catch (Exception e) {
+            // Losing a checkpoint only means redoing some chunks on resume
+            System.err.println("[SnapshotJob] Failed to save checkpoint: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long end = finishedAt > 0 ? finishedAt : System.currentTimeMillis();
+        long elapsed = startedAt > 0 ? end - startedAt : 0;
+        double usersPerSecond = elapsed > 0 ? usersThisRun.get() * 1000.0 / elapsed : 0.0;
+        long remaining = Math.max(0, totalUsers - usersDone.get());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("status", status);
+        stats.put("runDate", runDate);
+        stats.put("workers", workers);
+        stats.put("chunkSize", chunkSize);
+        stats.put("totalUsers", totalUsers);
+        stats.put("usersDone", usersDone.get());
+        stats.put("chunksDone", chunksDone.get());
+        stats.put("chunksFailed", chunksFailed.get());
+        stats.put("elapsedMillis", elapsed);
+        stats.put("usersPerSecond", Math.round(usersPerSecond));
+        stats.put("etaSeconds", "RUNNING".equals(status) && usersPerSecond > 0
+                ? Math.round(remaining / usersPerSecond) : 0);
+        return stats;
+    }
+
+    /**
+     * Tracks the last user id below which every chunk has committed.
+     */
+    private static final class Watermark {
+        private final List<String> lastIds = new ArrayList<>(); // Per chunk, in key order
+        private final List<Boolean> done = new ArrayList<>();
+        private int contiguous; // Chunks [0, contiguous) are done
+        private volatile String committed;
+
+        Watermark(String resumedFrom) {
+            this.committed = resumedFrom;
+        }
+
+        synchronized void register(String lastId) {
+            lastIds.add(lastId);
+            done.add(false);
+        }
+
+        // Returns the new watermark if it moved, else null
+        synchronized String complete(int chunk) {
+            done.set(chunk, true);
+            int before = contiguous;
+            while (contiguous < done.size() && done.get(contiguous)) {
+                contiguous++;
+            }
+            if (contiguous == before) {
+                return null;
+            }
+            committed = lastIds.get(contiguous - 1);
+            return committed;
+        }
+
+        String committed() {
+            return committed;
+        }
+    }
+}
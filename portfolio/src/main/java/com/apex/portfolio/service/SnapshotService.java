@@ -1,57 +1,119 @@
 package com.apex.portfolio.service;
 
-import com.apex.portfolio.dto.PortfolioDTO;
+import com.apex.portfolio.dto.PortfolioSummaryDTO;
 import com.apex.portfolio.model.PortfolioSnapshot;
-import com.apex.portfolio.model.User;
 import com.apex.portfolio.repository.PortfolioSnapshotRepository;
-import com.apex.portfolio.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.annotation.Order;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
-@RequiredArgsConstructor
 public class SnapshotService {
 
-    private final UserRepository userRepository;
-    private final PortfolioService portfolioService;
+    private final SnapshotJob snapshotJob;
     private final PortfolioSnapshotRepository snapshotRepository;
+    private final PortfolioService portfolioService;
+    private final UserTransactionExecutor userExecutor;
+
+    // Users changed since the last flush; a set, so several trades in one window cost one write
+    private final Set<String> pendingUsers = ConcurrentHashMap.newKeySet();
+
+    // Counters
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public SnapshotService(SnapshotJob snapshotJob, PortfolioSnapshotRepository snapshotRepository,
+            PortfolioService portfolioService, UserTransactionExecutor userExecutor) {
+        this.snapshotJob = snapshotJob;
+        this.snapshotRepository = snapshotRepository;
+        this.portfolioService = portfolioService;
+        this.userExecutor = userExecutor;
+    }
 
-    // Run every day at midnight (00:00)
+    // Run every day at midnight (00:00); chunked and resumable, see SnapshotJob
     @Scheduled(cron = "0 0 0 * * ?")
-    @Transactional
     public void captureDailySnapshots() {
-        List<User> users = userRepository.findAll();
-        LocalDate today = LocalDate.now();
+        snapshotJob.run(LocalDate.now());
+    }
 
-        for (User user : users) {
+    // Manual trigger for testing
+    public boolean captureSnapshotsNow() {
+        return snapshotJob.run(LocalDate.now());
+    }
+
+    /**
+     * Queues today's snapshot for the changed user, after commit so a rolled-back trade is
+     * never recorded, and after the live valuation has applied the change, so the write
+     * values the new state. The write itself happens in {@link #flushPending()}.
+     */
+    @Order(3)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPortfolioChanged(PortfolioChangedEvent event) {
+        requested.incrementAndGet();
+        pendingUsers.add(event.getUserId());
+    }
+
+    // Background writer: one upsert per changed user per interval
+    @Scheduled(fixedDelayString = "${snapshot.incremental.flush-ms:2000}")
+    public void flushPending() {
+        for (String userId : new ArrayList<>(pendingUsers)) {
+            // Remove before valuing, so a change arriving during the write queues another one
+            pendingUsers.remove(userId);
             try {
-                PortfolioDTO portfolio = portfolioService.getPortfolio(user.getId());
-
-                PortfolioSnapshot snapshot = PortfolioSnapshot.builder()
-                        .userId(user.getId())
-                        .date(today)
-                        .totalValue(portfolio.getNetWorth()) // Net Worth = Assets + Cash
-                        .investedAmount(portfolio.getTotalInvested())
-                        .cashBalance(portfolio.getCashBalance())
-                        .unrealizedPnL(portfolio.getTotalPnL())
-                        .realizedPnL(portfolio.getRealizedPnL())
-                        .build();
-
-                snapshotRepository.save(snapshot);
+                captureUserSnapshot(userId);
+                written.incrementAndGet();
             } catch (Exception e) {
-                System.err.println("Failed to capture snapshot for user: " + user.getId());
-                e.printStackTrace();
+                failed.incrementAndGet();
+                System.err.println("[SnapshotService] Snapshot for " + userId + " failed: " + e.getMessage());
             }
         }
     }
 
-    // Manual trigger for testing
-    public void captureSnapshotsNow() {
-        captureDailySnapshots();
+    // Don't lose the last window's changes on shutdown
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushPending();
+    }
+
+    /**
+     * Upserts today's snapshot for one user. Valued from the live book when the user is
+     * active (they usually are, having just traded), so this is O(1) in the user count.
+     * The find-then-save runs in the user's transaction; if the nightly job or the close flush
+     * inserts the day's row first, the unique (user_id, date) constraint fails the insert and
+     * the retry updates that row instead.
+     */
+    public void captureUserSnapshot(String userId) {
+        PortfolioSummaryDTO summary = portfolioService.computeSummary(userId);
+        LocalDate today = LocalDate.now();
+        userExecutor.execute(userId, status -> {
+            PortfolioSnapshot snapshot = snapshotRepository.findByUserIdAndDate(userId, today)
+                    .orElseGet(() -> PortfolioSnapshot.builder().userId(userId).date(today).build());
+            snapshot.setTotalValue(summary.getNetWorth()); // Net Worth = Assets + Cash
+            snapshot.setInvestedAmount(summary.getTotalInvested());
+            snapshot.setCashBalance(summary.getCashBalance());
+            snapshot.setUnrealizedPnL(summary.getTotalPnL());
+            snapshot.setRealizedPnL(summary.getRealizedPnL());
+            return snapshotRepository.saveAndFlush(snapshot);
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pendingUsers.size());
+        stats.put("requested", requested.get());
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        return stats;
     }
 }
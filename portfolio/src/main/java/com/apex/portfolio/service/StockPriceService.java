@@ -1,7 +1,31 @@
 package com.apex.portfolio.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public interface StockPriceService {
     BigDecimal getPrice(String symbol);
+
+    /**
+     * Prices many symbols in one call. Keys of the returned map are the upper-cased
+     * symbols; symbols that could not be priced are left out.
+     * Implementations backed by a remote API should override this to batch requests.
+     */
+    default Map<String, BigDecimal> getPrices(Collection<String> symbols) {
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            String key = symbol.toUpperCase();
+            if (prices.containsKey(key)) {
+                continue;
+            }
+            try {
+                prices.put(key, getPrice(key));
+            } catch (Exception e) {
+                System.err.println("[StockPriceService] Failed to price " + key + ": " + e.getMessage());
+            }
+        }
+        return prices;
+    }
 }
@@ -0,0 +1,230 @@
+package com.apex.portfolio.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable search index over the symbol universe.
+ * <p>
+ * Every ticker, full company name and individual name word is lower-cased into one
+ * sorted key array with a parallel array of entry ids, so a prefix query is a binary
+ * search plus a short forward scan. Fuzzy matching (edit distance) runs only when
+ * prefix matching leaves room in the result list, and only over the keys sharing the
+ * query's first letter, which the sorted array already holds as one range. A typo in the
+ * first letter is not corrected.
+ * <p>
+ * Per-query buffers are kept per thread and reset by the entries a query touched, so a
+ * search allocates in proportion to its matches rather than to the universe.
+ */
+public final class SymbolIndex {
+
+    // Match quality, lower is better
+    private static final int EXACT_TICKER = 0;
+    private static final int TICKER_PREFIX = 1;
+    private static final int NAME_PREFIX = 2;
+    private static final int FUZZY = 3;
+
+    private final String[] symbols;
+    private final String[] names;
+    private final String[] exchanges;
+
+    private final String[] keys;
+    private final int[] keyEntries;
+    private final boolean[] keyIsTicker;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    public SymbolIndex(List<String[]> rows) {
+        int n = rows.size();
+        symbols = new String[n];
+        names = new String[n];
+        exchanges = new String[n];
+
+        List<Object[]> keyList = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String[] row = rows.get(i);
+            symbols[i] = row[0];
+            names[i] = row[1];
+            exchanges[i] = row[2];
+
+            keyList.add(new Object[] { normalize(row[0]), i, true });
+            // "reliance.ns" should also match "reliance"
+            int dot = row[0].indexOf('.');
+            if (dot > 0) {
+                keyList.add(new Object[] { normalize(row[0].substring(0, dot)), i, true });
+            }
+            keyList.add(new Object[] { normalize(row[1]), i, false });
+            for (String word : normalize(row[1]).split("[^a-z0-9&]+")) {
+                if (word.length() > 1) {
+                    keyList.add(new Object[] { word, i, false });
+                }
+            }
+        }
+        keyList.sort(Comparator.comparing(k -> (String) k[0]));
+
+        keys = new String[keyList.size()];
+        keyEntries = new int[keyList.size()];
+        keyIsTicker = new boolean[keyList.size()];
+        for (int i = 0; i < keyList.size(); i++) {
+            keys[i] = (String) keyList.get(i)[0];
+            keyEntries[i] = (Integer) keyList.get(i)[1];
+            keyIsTicker[i] = (Boolean) keyList.get(i)[2];
+        }
+        scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public String symbol(int entry) {
+        return symbols[entry];
+    }
+
+    public String name(int entry) {
+        return names[entry];
+    }
+
+    public String exchange(int entry) {
+        return exchanges[entry];
+    }
+
+    /**
+     * Returns up to {@code limit} entry ids, best matches first.
+     */
+    public int[] search(String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        Scratch s = scratch.get();
+        int[] best = s.best;
+        try {
+            // 1. Prefix matches via binary search on the sorted keys
+            for (int i = lowerBound(q); i < keys.length && keys[i].startsWith(q); i++) {
+                int rank = keyIsTicker[i] ? (keys[i].length() == q.length() ? EXACT_TICKER : TICKER_PREFIX) : NAME_PREFIX;
+                s.match(keyEntries[i], rank);
+            }
+
+            // 2. Typo-tolerant matches if the prefix pass did not fill the list
+            if (s.found < limit && q.length() >= 4) {
+                int maxDistance = q.length() <= 5 ? 1 : 2;
+                char first = q.charAt(0);
+                int end = lowerBound(String.valueOf((char) (first + 1)));
+                for (int i = lowerBound(String.valueOf(first)); i < end; i++) {
+                    int entry = keyEntries[i];
+                    if (best[entry] != Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    // Compare against the key's leading characters so partial words still match
+                    String key = keys[i];
+                    int length = key.length() > q.length() + maxDistance ? q.length() : key.length();
+                    if (Math.abs(length - q.length()) <= maxDistance
+                            && s.editDistance(q, key, length, maxDistance) <= maxDistance) {
+                        s.match(entry, FUZZY);
+                    }
+                }
+            }
+
+            List<Integer> matches = new ArrayList<>(s.found);
+            for (int i = 0; i < s.found; i++) {
+                matches.add(s.touched[i]);
+            }
+            matches.sort(Comparator.<Integer>comparingInt(e -> best[e])
+                    .thenComparingInt(e -> symbols[e].length())
+                    .thenComparing(e -> symbols[e]));
+
+            int count = Math.min(limit, matches.size());
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = matches.get(i);
+            }
+            return result;
+        } finally {
+            s.reset();
+        }
+    }
+
+    private int lowerBound(String q) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(q) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static String normalize(String s) {
+        return s.trim().toLowerCase();
+    }
+
+    // One thread's buffers for a query
+    private static final class Scratch {
+        // Best rank per entry, MAX_VALUE if unmatched; touched lists the matched entries
+        final int[] best;
+        final int[] touched;
+        int found;
+        int[] prev = new int[16];
+        int[] curr = new int[16];
+
+        Scratch(int entries) {
+            best = new int[entries];
+            touched = new int[entries];
+            Arrays.fill(best, Integer.MAX_VALUE);
+        }
+
+        void match(int entry, int rank) {
+            if (best[entry] == Integer.MAX_VALUE) {
+                touched[found++] = entry;
+            }
+            best[entry] = Math.min(best[entry], rank);
+        }
+
+        void reset() {
+            for (int i = 0; i < found; i++) {
+                best[touched[i]] = Integer.MAX_VALUE;
+            }
+            found = 0;
+        }
+
+        /**
+         * Levenshtein distance between {@code a} and the first {@code length} characters of
+         * {@code b}, giving up early once every path exceeds {@code max}.
+         */
+        int editDistance(String a, String b, int length, int max) {
+            if (prev.length <= length) {
+                prev = new int[length + 1];
+                curr = new int[length + 1];
+            }
+            int[] p = prev;
+            int[] c = curr;
+            for (int j = 0; j <= length; j++) {
+                p[j] = j;
+            }
+            for (int i = 1; i <= a.length(); i++) {
+                c[0] = i;
+                int rowMin = c[0];
+                for (int j = 1; j <= length; j++) {
+                    int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                    c[j] = Math.min(Math.min(c[j - 1] + 1, p[j] + 1), p[j - 1] + cost);
+                    rowMin = Math.min(rowMin, c[j]);
+                }
+                if (rowMin > max) {
+                    return max + 1;
+                }
+                int[] tmp = p;
+                p = c;
+                c = tmp;
+            }
+            return p[length];
+        }
+    }
+}
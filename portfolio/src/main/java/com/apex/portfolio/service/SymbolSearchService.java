@@ -0,0 +1,143 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.SymbolMatchDTO;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typeahead search over the local symbol universe (symbol,name,exchange CSV; a field
+ * containing commas is double-quoted, with "" for a quote inside it).
+ * <p>
+ * Reads from {@code market.symbols.file} when set, otherwise from the bundled
+ * classpath:symbols.csv. An external file is polled for changes and swapped in
+ * atomically, so the universe can be updated without a restart.
+ */
+@Service
+public class SymbolSearchService {
+
+    private final String externalFile;
+
+    private volatile SymbolIndex index = new SymbolIndex(List.of());
+    private volatile long loadedModifiedTime = -1;
+
+    public SymbolSearchService(@Value("${market.symbols.file:}") String externalFile) {
+        this.externalFile = externalFile;
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            List<String[]> rows;
+            if (!externalFile.isBlank()) {
+                Path path = Path.of(externalFile);
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                try (InputStream in = Files.newInputStream(path)) {
+                    rows = parse(in);
+                }
+                loadedModifiedTime = modified;
+            } else {
+                try (InputStream in = new ClassPathResource("symbols.csv").getInputStream()) {
+                    rows = parse(in);
+                }
+            }
+            index = new SymbolIndex(rows);
+            System.out.println("[SymbolSearchService] Loaded " + rows.size() + " symbols");
+        } catch (Exception e) {
+            System.err.println("[SymbolSearchService] Failed to load symbol universe: " + e.getMessage());
+        }
+    }
+
+    // Hot reload: pick up edits to the external symbols file
+    @Scheduled(fixedDelay = 30_000, initialDelay = 30_000)
+    public void reloadIfChanged() {
+        if (externalFile.isBlank()) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(Path.of(externalFile)).toMillis();
+            if (modified != loadedModifiedTime) {
+                load();
+            }
+        } catch (Exception e) {
+            System.err.println("[SymbolSearchService] Cannot check symbols file: " + e.getMessage());
+        }
+    }
+
+    public List<SymbolMatchDTO> search(String query, int limit) {
+        SymbolIndex current = index;
+        List<SymbolMatchDTO> results = new ArrayList<>();
+        for (int entry : current.search(query, limit)) {
+            results.add(SymbolMatchDTO.builder()
+                    .symbol(current.symbol(entry))
+                    .name(current.name(entry))
+                    .exchange(current.exchange(entry))
+                    .build());
+        }
+        return results;
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private static List<String[]> parse(InputStream in) throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                if (header) {
+                    header = false;
+                    continue;
+                }
+                List<String> parts = splitCsv(line);
+                if (parts.size() >= 3 && !parts.get(0).isBlank()) {
+                    rows.add(new String[] { parts.get(0).trim().toUpperCase(), parts.get(1).trim(),
+                            parts.get(2).trim() });
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Fields of one CSV line, e.g. AAPL,"Apple, Inc.",NASDAQ
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,572 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.BatchOrderResultDTO;
+import com.apex.portfolio.dto.BatchTradeResultDTO;
+import com.apex.portfolio.dto.TradeCommandDTO;
+import com.apex.portfolio.dto.TradeRequest;
+import com.apex.portfolio.model.TradeCommandResult;
+import com.apex.portfolio.model.Transaction;
+import com.apex.portfolio.repository.TradeCommandResultRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous trade intake: a command is acknowledged once it is in the {@link TradeJournal}
+ * and applied to the database afterwards.
+ * <p>
+ * Intake does no database or network I/O. It rejects a reused idempotency key (scoped to the
+ * user) using an in-memory index of every command still in the journal, so the window is the
+ * journal's retention ({@code trade.journal.retention-hours}).
+ * <p>
+ * Commands are applied by {@code trade.journal.appliers} threads, each owning the users whose
+ * id hashes to it, so one user's commands are applied by one thread in journal order. A thread
+ * drains up to {@code trade.journal.group-size} commands, prices all their symbols in one call,
+ * and applies each user's share as one in-order basket through {@link BatchTradeService}: one
+ * transaction for the trades and their result rows (group commit). A command whose result row
+ * already exists, e.g. applied just before a crash, is not applied again.
+ * <p>
+ * A group is never applied at prices older than {@code trade.quote.ttl-seconds}, the age a
+ * signed quote may reach: a group reached late in a slow batch, and every retry, is priced
+ * again first.
+ * <p>
+ * A failed group is retried with backoff. Failures that say the database is unreachable or
+ * busy are retried for as long as they last, since nothing else could be applied either;
+ * others count towards {@code trade.journal.max-apply-attempts}. A group that uses them up
+ * is applied one command at a time, so that only the failing command is held back, and
+ * that command is stored as FAILED. If even that cannot be stored it is parked: it stays
+ * in the journal, unsettled, and is tried again after a restart.
+ */
+@Service
+public class TradeCommandService {
+
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final int MAX_SYMBOL_LENGTH = 32;
+    private static final int MAX_MESSAGE_LENGTH = 512;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final TradeJournal journal;
+    private final BatchTradeService batchTradeService;
+    private final StockPriceService stockPriceService;
+    private final TradeCommandResultRepository resultRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int groupSize;
+    private final int maxPending;
+    private final int maxApplyAttempts;
+    private final long maxPriceAgeMillis;
+    private final long retentionMillis;
+
+    // Every command still in the journal, by user and key
+    private final ConcurrentHashMap<String, Command> commands = new ConcurrentHashMap<>();
+    private final List<LinkedBlockingQueue<Command>> queues = new ArrayList<>();
+    private final List<Thread> appliers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // Counters
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong backlogRejected = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong alreadyApplied = new AtomicLong();
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong groupedCommands = new AtomicLong();
+    private final AtomicLong applyFailures = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong parked = new AtomicLong();
+    private final AtomicLong repriced = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    public TradeCommandService(TradeJournal journal, BatchTradeService batchTradeService,
+            StockPriceService stockPriceService, TradeCommandResultRepository resultRepository, DataSource dataSource,
+            @Value("${trade.journal.appliers:4}") int applierCount,
+            @Value("${trade.journal.group-size:256}") int groupSize,
+            @Value("${trade.journal.max-pending:100000}") int maxPending,
+            @Value("${trade.journal.max-apply-attempts:5}") int maxApplyAttempts,
+            @Value("${trade.quote.ttl-seconds:15}") long priceTtlSeconds,
+            @Value("${trade.journal.retention-hours:24}") long retentionHours) {
+        this.journal = journal;
+        this.batchTradeService = batchTradeService;
+        this.stockPriceService = stockPriceService;
+        this.resultRepository = resultRepository;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.groupSize = groupSize;
+        this.maxPending = maxPending;
+        this.maxApplyAttempts = maxApplyAttempts;
+        this.maxPriceAgeMillis = TimeUnit.SECONDS.toMillis(priceTtlSeconds);
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        for (int i = 0; i < applierCount; i++) {
+            queues.add(new LinkedBlockingQueue<>());
+        }
+
+        // Everything in the journal is queued again; commands with a stored outcome are skipped when applied
+        journal.replay(entry -> {
+            Command command = new Command(entry.getUserId(), entry.getIdempotencyKey());
+            command.entry = entry;
+            commands.put(indexKey(entry.getUserId(), entry.getIdempotencyKey()), command);
+            pending.incrementAndGet();
+            queueFor(entry.getUserId()).add(command);
+            replayed.incrementAndGet();
+        });
+    }
+
+    // Applying starts once the app is up, after the replayed commands are queued
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (int i = 0; i < queues.size(); i++) {
+            LinkedBlockingQueue<Command> queue = queues.get(i);
+            Thread thread = new Thread(() -> applyLoop(queue), "trade-applier-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            appliers.add(thread);
+        }
+        if (replayed.get() > 0) {
+            System.out.println("[TradeCommandService] Replaying " + replayed.get() + " journaled commands");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Unapplied commands stay in the journal and are replayed on the next start
+        running = false;
+        for (Thread thread : appliers) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Journals a BUY or SELL command. Returns the accepted command, or, if the user already
+     * used the key, the original command with {@code duplicate} set.
+     */
+    public TradeCommandDTO submit(String userId, String idempotencyKey, String symbol, Integer quantity,
+            String side) {
+        String key = idempotencyKey != null ? idempotencyKey.trim() : "";
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("Idempotency-Key is required, at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String ticker = symbol != null ? symbol.trim().toUpperCase() : "";
+        if (ticker.isEmpty() || ticker.length() > MAX_SYMBOL_LENGTH) {
+            throw new RuntimeException("Invalid symbol: " + symbol);
+        }
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("Quantity must be positive");
+        }
+        Transaction.TransactionType type = Transaction.TransactionType.valueOf(side.trim().toUpperCase());
+        if (type != Transaction.TransactionType.BUY && type != Transaction.TransactionType.SELL) {
+            throw new RuntimeException("side must be BUY or SELL");
+        }
+
+        String indexKey = indexKey(userId, key);
+        Command command = new Command(userId, key);
+        Command existing = commands.putIfAbsent(indexKey, command);
+        if (existing != null) {
+            duplicates.incrementAndGet();
+            return existing.toDTO(true);
+        }
+        if (pending.get() >= maxPending) {
+            commands.remove(indexKey, command);
+            backlogRejected.incrementAndGet();
+            throw new RuntimeException("Trade backlog is full, retry later");
+        }
+        try {
+            command.entry = journal.append(key, userId, ticker, type == Transaction.TransactionType.BUY, quantity);
+        } catch (RuntimeException e) {
+            commands.remove(indexKey, command);
+            throw e;
+        }
+        pending.incrementAndGet();
+        accepted.incrementAndGet();
+        queueFor(userId).add(command);
+        return command.toDTO(false);
+    }
+
+    /**
+     * Status of a command by key: from the journal index while it is retained, else from
+     * its stored outcome. Null if the key is unknown.
+     */
+    public TradeCommandDTO find(String userId, String idempotencyKey) {
+        Command command = commands.get(indexKey(userId, idempotencyKey));
+        if (command != null && command.entry != null) {
+            return command.toDTO(false);
+        }
+        return resultRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                .map(TradeCommandService::toDTO)
+                .orElse(null);
+    }
+
+    // Deletes fully applied journal segments past retention, and forgets their keys
+    @Scheduled(fixedDelayString = "${trade.journal.retire-ms:60000}")
+    public void retireJournal() {
+        Set<Long> retired = journal.retire(System.currentTimeMillis() - retentionMillis);
+        if (!retired.isEmpty()) {
+            commands.values().removeIf(c -> c.entry != null && retired.contains(c.entry.getSegmentId()));
+        }
+    }
+
+    private void applyLoop(LinkedBlockingQueue<Command> queue) {
+        List<Command> batch = new ArrayList<>(groupSize);
+        while (running) {
+            try {
+                Command first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, groupSize - 1);
+
+            // Journal order is kept within each user
+            Map<String, List<Command>> byUser = new LinkedHashMap<>();
+            Set<String> symbols = new LinkedHashSet<>();
+            for (Command command : batch) {
+                byUser.computeIfAbsent(command.userId, u -> new ArrayList<>()).add(command);
+                symbols.add(command.entry.getSymbol());
+            }
+            Prices prices = new Prices(stockPriceService.getPrices(symbols));
+            for (Map.Entry<String, List<Command>> group : byUser.entrySet()) {
+                applyWithRetry(group.getKey(), group.getValue(), prices);
+            }
+            batch.clear();
+        }
+    }
+
+    private void applyWithRetry(String userId, List<Command> group, Prices prices) {
+        Exception failure = null;
+        int counted = 0;
+        for (int attempt = 1; counted < maxApplyAttempts; attempt++) {
+            try {
+                // A retry may come long after the batch was priced
+                if (attempt > 1 || prices.olderThan(maxPriceAgeMillis)) {
+                    prices = new Prices(stockPriceService.getPrices(symbolsOf(group)));
+                    repriced.incrementAndGet();
+                }
+                applyGroup(userId, group, prices.bySymbol);
+                return;
+            } catch (Exception e) {
+                applyFailures.incrementAndGet();
+                failure = e;
+                if (!isTransient(e)) {
+                    counted++;
+                }
+                System.err.println("[TradeCommandService] Applying " + group.size() + " commands for " + userId
+                        + " failed (attempt " + attempt + "): " + e.getMessage());
+                if (!backoff(attempt)) {
+                    return;
+                }
+            }
+        }
+
+        // One of the commands keeps failing: apply them singly so only that one is held back
+        if (group.size() > 1) {
+            for (Command command : group) {
+                applyWithRetry(userId, List.of(command), prices);
+            }
+            return;
+        }
+        recordFailure(userId, group.get(0), failure);
+    }
+
+    // Stores a command that could not be applied as FAILED, or parks it if even that fails
+    private void recordFailure(String userId, Command command, Exception failure) {
+        String message = "Not applied after " + maxApplyAttempts + " attempts: " + failure.getMessage();
+        BatchOrderResultDTO outcome = BatchOrderResultDTO.builder().status("FAILED").message(message).build();
+        int counted = 0;
+        for (int attempt = 1; counted < maxApplyAttempts; attempt++) {
+            try {
+                LocalDateTime appliedAt = LocalDateTime.now();
+                insertResults(userId, List.of(command), List.of(outcome), appliedAt);
+                command.complete("FAILED", message, null, appliedAt);
+                settle(command);
+                failed.incrementAndGet();
+                System.err.println("[TradeCommandService] Command " + command.key + " for " + userId + " FAILED: "
+                        + failure.getMessage());
+                return;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    counted++;
+                }
+                if (!backoff(attempt)) {
+                    return;
+                }
+            }
+        }
+        command.complete("PARKED", message, null, null);
+        parked.incrementAndGet();
+        System.err.println("[TradeCommandService] Parked command " + command.key + " for " + userId
+                + " until restart: " + failure.getMessage());
+    }
+
+    private static Set<String> symbolsOf(List<Command> group) {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (Command command : group) {
+            symbols.add(command.entry.getSymbol());
+        }
+        return symbols;
+    }
+
+    // Failures of the database rather than of the commands: connections, timeouts, lock conflicts
+    private static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof TransientDataAccessException || t instanceof RecoverableDataAccessException
+                    || t instanceof DataAccessResourceFailureException || t instanceof CannotCreateTransactionException
+                    || t instanceof SQLTransientException || t instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // False once stopping
+    private boolean backoff(int attempt) {
+        if (!running) {
+            return false;
+        }
+        try {
+            Thread.sleep(Math.min(5000L, 100L << Math.min(attempt, 6)));
+            return running;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void applyGroup(String userId, List<Command> group, Map<String, BigDecimal> prices) {
+        Map<String, TradeCommandResult> stored = storedResults(userId, group);
+        List<Command> fresh = new ArrayList<>(group.size());
+        for (Command command : group) {
+            TradeCommandResult result = stored.get(command.key);
+            if (result != null) {
+                command.complete(result.getStatus(), result.getMessage(),
+                        result.getPrice() != null ? BigDecimal.valueOf(result.getPrice()) : null,
+                        result.getAppliedAt());
+                settle(command);
+                alreadyApplied.incrementAndGet();
+            } else {
+                fresh.add(command);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        List<TradeRequest> orders = new ArrayList<>(fresh.size());
+        for (Command command : fresh) {
+            orders.add(TradeRequest.builder()
+                    .symbol(command.entry.getSymbol())
+                    .quantity(command.entry.getQuantity())
+                    .type(command.entry.isBuy() ? "BUY" : "SELL")
+                    .build());
+        }
+        LocalDateTime appliedAt = LocalDateTime.now();
+        BatchTradeResultDTO result = batchTradeService.applyInOrder(userId, orders, prices,
+                r -> insertResults(userId, fresh, r.getOrders(), appliedAt));
+
+        // Committed: publish outcomes and release the journal entries
+        for (int i = 0; i < fresh.size(); i++) {
+            BatchOrderResultDTO order = result.getOrders().get(i);
+            Command command = fresh.get(i);
+            command.complete(order.getStatus(), order.getMessage(), order.getPrice(), appliedAt);
+            settle(command);
+            if ("EXECUTED".equals(order.getStatus())) {
+                executed.incrementAndGet();
+            } else {
+                rejected.incrementAndGet();
+            }
+        }
+        groups.incrementAndGet();
+        groupedCommands.addAndGet(fresh.size());
+    }
+
+    // Stored outcomes for the group's keys
+    private Map<String, TradeCommandResult> storedResults(String userId, List<Command> group) {
+        List<Object> args = new ArrayList<>(group.size() + 1);
+        args.add(userId);
+        for (Command command : group) {
+            args.add(command.key);
+        }
+        String placeholders = String.join(", ", Collections.nCopies(group.size(), "?"));
+        Map<String, TradeCommandResult> stored = new HashMap<>();
+        jdbcTemplate.query("select idempotency_key, status, message, price, applied_at from trade_command_results"
+                + " where user_id = ? and idempotency_key in (" + placeholders + ")", rs -> {
+                    Timestamp applied = rs.getTimestamp(5);
+                    double price = rs.getDouble(4);
+                    stored.put(rs.getString(1), TradeCommandResult.builder()
+                            .status(rs.getString(2))
+                            .message(rs.getString(3))
+                            .price(rs.wasNull() ? null : price)
+                            .appliedAt(applied != null ? applied.toLocalDateTime() : null)
+                            .build());
+                }, args.toArray());
+        return stored;
+    }
+
+    // Inside the trade's transaction, so an outcome is stored if and only if the trade committed
+    private void insertResults(String userId, List<Command> fresh, List<BatchOrderResultDTO> orders,
+            LocalDateTime appliedAt) {
+        List<Object[]> rows = new ArrayList<>(fresh.size());
+        for (int i = 0; i < fresh.size(); i++) {
+            TradeJournal.Entry entry = fresh.get(i).entry;
+            BatchOrderResultDTO order = orders.get(i);
+            String message = order.getMessage();
+            if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+                message = message.substring(0, MAX_MESSAGE_LENGTH);
+            }
+            rows.add(new Object[] {
+                    userId, entry.getIdempotencyKey(), entry.getSequence(), entry.getSymbol(),
+                    entry.isBuy() ? "BUY" : "SELL", entry.getQuantity(),
+                    order.getPrice() != null ? order.getPrice().doubleValue() : null,
+                    order.getStatus(), message,
+                    Timestamp.valueOf(toLocalDateTime(entry.getAcceptedAt())), Timestamp.valueOf(appliedAt)
+            });
+        }
+        jdbcTemplate.batchUpdate("insert into trade_command_results (user_id, idempotency_key, journal_sequence,"
+                + " symbol, type, quantity, price, status, message, accepted_at, applied_at)"
+                + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    private void settle(Command command) {
+        journal.markApplied(command.entry);
+        pending.decrementAndGet();
+    }
+
+    private LinkedBlockingQueue<Command> queueFor(String userId) {
+        return queues.get(Math.floorMod(userId.hashCode(), queues.size()));
+    }
+
+    private static String indexKey(String userId, String key) {
+        return userId + '\n' + key;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZONE);
+    }
+
+    private static Long toEpochMillis(LocalDateTime time) {
+        return time != null ? time.atZone(ZONE).toInstant().toEpochMilli() : null;
+    }
+
+    private static TradeCommandDTO toDTO(TradeCommandResult result) {
+        return TradeCommandDTO.builder()
+                .idempotencyKey(result.getIdempotencyKey())
+                .sequence(result.getJournalSequence())
+                .symbol(result.getSymbol())
+                .type(result.getType())
+                .quantity(result.getQuantity())
+                .status(result.getStatus())
+                .message(result.getMessage())
+                .price(result.getPrice() != null ? BigDecimal.valueOf(result.getPrice()) : null)
+                .acceptedAt(toEpochMillis(result.getAcceptedAt()))
+                .appliedAt(toEpochMillis(result.getAppliedAt()))
+                .duplicate(false)
+                .build();
+    }
+
+    public Map<String, Object> stats() {
+        long groupCount = groups.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("appliers", queues.size());
+        stats.put("accepted", accepted.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("backlogRejected", backlogRejected.get());
+        stats.put("pending", pending.get());
+        stats.put("executed", executed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("alreadyApplied", alreadyApplied.get());
+        stats.put("replayed", replayed.get());
+        stats.put("groups", groupCount);
+        stats.put("avgGroupSize", groupCount > 0 ? Math.round(groupedCommands.get() * 100.0 / groupCount) / 100.0 : 0.0);
+        stats.put("applyFailures", applyFailures.get());
+        stats.put("failed", failed.get());
+        stats.put("parked", parked.get());
+        stats.put("repriced", repriced.get());
+        stats.put("indexedKeys", commands.size());
+        stats.put("journal", journal.stats());
+        return stats;
+    }
+
+    // Prices and when they were fetched
+    private static final class Prices {
+        final Map<String, BigDecimal> bySymbol;
+        final long fetchedAt = System.currentTimeMillis();
+
+        Prices(Map<String, BigDecimal> bySymbol) {
+            this.bySymbol = bySymbol;
+        }
+
+        boolean olderThan(long millis) {
+            return System.currentTimeMillis() - fetchedAt > millis;
+        }
+    }
+
+    // A command by user and key; entry is null until the append returns
+    private static final class Command {
+        final String userId;
+        final String key;
+        volatile TradeJournal.Entry entry;
+        volatile String status = "ACCEPTED";
+        volatile String message;
+        volatile BigDecimal price;
+        volatile LocalDateTime appliedAt;
+
+        Command(String userId, String key) {
+            this.userId = userId;
+            this.key = key;
+        }
+
+        void complete(String status, String message, BigDecimal price, LocalDateTime appliedAt) {
+            this.message = message;
+            this.price = price;
+            this.appliedAt = appliedAt;
+            this.status = status; // Last, so a reader seeing the outcome sees its details
+        }
+
+        TradeCommandDTO toDTO(boolean duplicate) {
+            TradeJournal.Entry e = entry;
+            return TradeCommandDTO.builder()
+                    .idempotencyKey(key)
+                    .sequence(e != null ? e.getSequence() : null)
+                    .symbol(e != null ? e.getSymbol() : null)
+                    .type(e != null ? (e.isBuy() ? "BUY" : "SELL") : null)
+                    .quantity(e != null ? e.getQuantity() : null)
+                    .status(status)
+                    .message(message)
+                    .price(price)
+                    .acceptedAt(e != null ? e.getAcceptedAt() : null)
+                    .appliedAt(toEpochMillis(appliedAt))
+                    .duplicate(duplicate)
+                    .build();
+        }
+    }
+}
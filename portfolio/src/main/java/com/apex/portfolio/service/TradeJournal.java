@@ -0,0 +1,440 @@
+package com.apex.portfolio.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local, append-only journal of trade commands.
+ * <p>
+ * The journal is a sequence of memory-mapped segment files of {@code trade.journal.segment-bytes}
+ * each, named by the sequence number of their first entry. A segment starts with an 8 byte
+ * header (magic, version) followed by entries laid out as body length, CRC32 of the body, and
+ * the body itself (sequence, accepted-at millis, type, quantity, then the idempotency key, user
+ * id and symbol as length-prefixed UTF-8). A zero length marks the end of the written part.
+ * <p>
+ * Appends are serialized and only copy bytes into the mapping. With {@code trade.journal.fsync}
+ * on, the appender then waits for the flusher thread, which forces everything appended so far
+ * in one call: appends that arrive while a force is running share the next one (group commit).
+ * With it off, an append is acknowledged once in the page cache, which survives a process
+ * crash but not a machine crash.
+ * <p>
+ * On startup every segment is scanned; the first entry with a bad length or checksum, e.g. one
+ * torn by a crash, ends the journal and anything after it is zeroed.
+ */
+@Component
+public class TradeJournal {
+
+    private static final int MAGIC = 0x54524A4C; // "TRJL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int ENTRY_HEADER_BYTES = 8; // body length, crc
+    private static final String EXTENSION = ".journal";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+
+    // Segments by first sequence; the last one is being appended to
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private Segment active;
+    private long nextSequence = 1;
+
+    // Group commit: appendedSequence is written under the append lock, durableSequence under syncMonitor
+    private final Object syncMonitor = new Object();
+    private volatile long appendedSequence;
+    private volatile long durableSequence;
+    private volatile boolean running = true;
+    private final Thread flusher;
+
+    // Counters
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong bytesAppended = new AtomicLong();
+    private final AtomicLong forces = new AtomicLong();
+    private final AtomicLong forceNanos = new AtomicLong();
+    private final AtomicLong segmentsRetired = new AtomicLong();
+    private volatile long recoveredEntries;
+    private volatile long tornBytesZeroed;
+
+    public TradeJournal(@Value("${trade.journal.dir:data/journal}") String directory,
+            @Value("${trade.journal.segment-bytes:67108864}") int segmentBytes,
+            @Value("${trade.journal.fsync:true}") boolean fsync) {
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(this.directory);
+            try (Stream<Path> files = Files.list(this.directory)) {
+                files.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).sorted().forEach(this::open);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open trade journal " + directory + ": " + e.getMessage(), e);
+        }
+        recover();
+        if (active == null) {
+            active = create(nextSequence);
+        }
+        appendedSequence = nextSequence - 1;
+        durableSequence = appendedSequence;
+
+        flusher = new Thread(this::flushLoop, "trade-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * One journaled command. {@code segmentId} identifies the segment holding it, for
+     * {@link #markApplied} and {@link #retire}.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Entry {
+        private final long sequence;
+        private final long acceptedAt;
+        private final String idempotencyKey;
+        private final String userId;
+        private final String symbol;
+        private final boolean buy;
+        private final int quantity;
+        private final long segmentId;
+    }
+
+    /**
+     * Appends a command and returns its entry once it is durable (or, with fsync off, once
+     * it is in the mapping).
+     */
+    public Entry append(String idempotencyKey, String userId, String symbol, boolean buy, int quantity) {
+        byte[] key = idempotencyKey.getBytes(StandardCharsets.UTF_8);
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] sym = symbol.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 8 + 8 + 1 + 4 + 2 + key.length + 2 + user.length + 2 + sym.length;
+        if (HEADER_BYTES + ENTRY_HEADER_BYTES + bodyLength > segmentBytes) {
+            throw new RuntimeException("Trade command too large for the journal");
+        }
+
+        Entry entry;
+        synchronized (this) {
+            if (!running) {
+                throw new RuntimeException("Trade journal is closed");
+            }
+            if (active.position + ENTRY_HEADER_BYTES + bodyLength > active.buffer.capacity()) {
+                rotate();
+            }
+            long sequence = nextSequence++;
+            long acceptedAt = System.currentTimeMillis();
+            MappedByteBuffer buffer = active.buffer;
+            int start = active.position + ENTRY_HEADER_BYTES;
+            buffer.position(start);
+            buffer.putLong(sequence);
+            buffer.putLong(acceptedAt);
+            buffer.put((byte) (buy ? 1 : 0));
+            buffer.putInt(quantity);
+            putString(buffer, key);
+            putString(buffer, user);
+            putString(buffer, sym);
+            // Checksum before the length, so a reader never sees a length without its body
+            buffer.putInt(active.position + 4, crc(buffer, start, bodyLength));
+            buffer.putInt(active.position, bodyLength);
+            active.position = start + bodyLength;
+            active.entries.incrementAndGet();
+            active.pending.incrementAndGet();
+            active.lastAcceptedAt = acceptedAt;
+            entry = new Entry(sequence, acceptedAt, idempotencyKey, userId, symbol, buy, quantity, active.firstSequence);
+            appendedSequence = sequence;
+        }
+        appends.incrementAndGet();
+        bytesAppended.addAndGet(ENTRY_HEADER_BYTES + bodyLength);
+
+        if (fsync) {
+            awaitDurable(entry.getSequence());
+        }
+        return entry;
+    }
+
+    /**
+     * Calls {@code consumer} with every entry in the journal, oldest first. Meant for startup,
+     * before anything is appended.
+     */
+    public void replay(Consumer<Entry> consumer) {
+        for (Segment segment : segments.values()) {
+            int position = HEADER_BYTES;
+            while (position < segment.position) {
+                int bodyLength = segment.buffer.getInt(position);
+                consumer.accept(read(segment, position + ENTRY_HEADER_BYTES));
+                position += ENTRY_HEADER_BYTES + bodyLength;
+            }
+        }
+    }
+
+    // Called once an entry's outcome is stored in the database
+    public void markApplied(Entry entry) {
+        Segment segment = segments.get(entry.getSegmentId());
+        if (segment != null) {
+            segment.pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Deletes full segments whose entries are all applied and were all accepted before
+     * {@code acceptedBefore}; returns their ids.
+     */
+    public Set<Long> retire(long acceptedBefore) {
+        Set<Long> retired = new HashSet<>();
+        for (Segment segment : segments.values()) {
+            if (segment == active || segment.pending.get() > 0 || segment.lastAcceptedAt >= acceptedBefore) {
+                continue;
+            }
+            segments.remove(segment.firstSequence);
+            try {
+                Files.deleteIfExists(segment.file);
+                retired.add(segment.firstSequence);
+                segmentsRetired.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("[TradeJournal] Cannot delete " + segment.file + ": " + e.getMessage());
+            }
+        }
+        return retired;
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (this) {
+            running = false;
+        }
+        flusher.interrupt();
+        synchronized (this) {
+            active.buffer.force();
+        }
+        synchronized (syncMonitor) {
+            durableSequence = appendedSequence;
+            syncMonitor.notifyAll();
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        synchronized (syncMonitor) {
+            syncMonitor.notifyAll(); // Wake the flusher
+            while (durableSequence < sequence) {
+                if (!running && durableSequence < sequence) {
+                    throw new RuntimeException("Trade journal closed before the command was durable");
+                }
+                try {
+                    syncMonitor.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted waiting for the trade journal", e);
+                }
+            }
+        }
+    }
+
+    // Forces whatever has been appended since the last force, then releases everyone it covered
+    private void flushLoop() {
+        while (running) {
+            long target;
+            synchronized (syncMonitor) {
+                while (running && durableSequence >= appendedSequence) {
+                    try {
+                        syncMonitor.wait(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                target = appendedSequence;
+            }
+            Segment segment;
+            synchronized (this) {
+                segment = active; // Earlier segments were forced when rotated away from
+            }
+            long started = System.nanoTime();
+            segment.buffer.force();
+            forces.incrementAndGet();
+            forceNanos.addAndGet(System.nanoTime() - started);
+            synchronized (syncMonitor) {
+                durableSequence = Math.max(durableSequence, target);
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    // Under the append lock
+    private void rotate() {
+        active.buffer.force();
+        active = create(nextSequence);
+    }
+
+    private Segment create(long firstSequence) {
+        Path file = directory.resolve(String.format("%020d", firstSequence) + EXTENSION);
+        // Never reuse an existing file: its name says which sequences it holds
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.force();
+            Segment segment = new Segment(file, firstSequence, buffer);
+            segments.put(firstSequence, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create journal segment " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void open(Path file) {
+        String name = file.getFileName().toString();
+        long firstSequence;
+        try {
+            firstSequence = Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            System.err.println("[TradeJournal] Skipping unrecognised file " + file);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (channel.size() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                // Its sequences may have been handed out, so new entries start past them
+                System.err.println("[TradeJournal] Skipping unrecognised file " + file);
+                nextSequence = Math.max(nextSequence, firstSequence + 1);
+                return;
+            }
+            segments.put(firstSequence, new Segment(file, firstSequence, buffer));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open journal segment " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Finds the valid end of every segment; the last segment becomes the active one
+    private void recover() {
+        long entries = 0;
+        for (Segment segment : segments.values()) {
+            // An empty segment still owns its first sequence
+            nextSequence = Math.max(nextSequence, segment.firstSequence);
+            MappedByteBuffer buffer = segment.buffer;
+            int limit = buffer.capacity();
+            int position = HEADER_BYTES;
+            while (position + ENTRY_HEADER_BYTES <= limit) {
+                int bodyLength = buffer.getInt(position);
+                int start = position + ENTRY_HEADER_BYTES;
+                if (bodyLength <= 0 || start + bodyLength > limit
+                        || buffer.getInt(position + 4) != crc(buffer, start, bodyLength)) {
+                    break;
+                }
+                Entry entry = read(segment, start);
+                nextSequence = Math.max(nextSequence, entry.getSequence() + 1);
+                segment.entries.incrementAndGet();
+                segment.pending.incrementAndGet();
+                segment.lastAcceptedAt = Math.max(segment.lastAcceptedAt, entry.getAcceptedAt());
+                position = start + bodyLength;
+                entries++;
+            }
+            // Zero a torn tail so a later append can never run into stale bytes
+            if (position + 4 <= limit && buffer.getInt(position) != 0) {
+                for (int i = position; i < limit; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.force();
+                tornBytesZeroed += limit - position;
+                System.err.println("[TradeJournal] Truncated torn entry in " + segment.file + " at " + position);
+            }
+            segment.position = position;
+            active = segment;
+        }
+        recoveredEntries = entries;
+        if (entries > 0) {
+            System.out.println("[TradeJournal] Recovered " + entries + " entries from " + segments.size()
+                    + " segments");
+        }
+    }
+
+    private static Entry read(Segment segment, int start) {
+        MappedByteBuffer buffer = segment.buffer;
+        long sequence = buffer.getLong(start);
+        long acceptedAt = buffer.getLong(start + 8);
+        boolean buy = buffer.get(start + 16) == 1;
+        int quantity = buffer.getInt(start + 17);
+        int position = start + 21;
+        String key = getString(buffer, position);
+        position += 2 + buffer.getShort(position);
+        String userId = getString(buffer, position);
+        position += 2 + buffer.getShort(position);
+        String symbol = getString(buffer, position);
+        return new Entry(sequence, acceptedAt, key, userId, symbol, buy, quantity, segment.firstSequence);
+    }
+
+    private static void putString(MappedByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(MappedByteBuffer buffer, int position) {
+        byte[] bytes = new byte[buffer.getShort(position)];
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(MappedByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    public Map<String, Object> stats() {
+        long forceCount = forces.get();
+        long pending = 0;
+        for (Segment segment : segments.values()) {
+            pending += segment.pending.get();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("fsync", fsync);
+        stats.put("segments", segments.size());
+        stats.put("segmentBytes", segmentBytes);
+        stats.put("appends", appends.get());
+        stats.put("bytesAppended", bytesAppended.get());
+        stats.put("appendedSequence", appendedSequence);
+        stats.put("durableSequence", durableSequence);
+        stats.put("forces", forceCount);
+        stats.put("appendsPerForce", forceCount > 0 ? Math.round(appends.get() * 100.0 / forceCount) / 100.0 : 0.0);
+        stats.put("avgForceMicros", forceCount > 0 ? forceNanos.get() / forceCount / 1000 : 0);
+        stats.put("unappliedEntries", pending);
+        stats.put("recoveredEntries", recoveredEntries);
+        stats.put("tornBytesZeroed", tornBytesZeroed);
+        stats.put("segmentsRetired", segmentsRetired.get());
+        return stats;
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long firstSequence;
+        final MappedByteBuffer buffer;
+        final AtomicInteger entries = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger(); // Entries whose outcome is not yet stored
+        int position = HEADER_BYTES; // End of the written part; guarded by the journal's lock
+        volatile long lastAcceptedAt;
+
+        Segment(Path file, long firstSequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+        }
+    }
+}
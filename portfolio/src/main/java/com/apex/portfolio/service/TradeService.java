@@ -7,10 +7,9 @@ import com.apex.portfolio.model.User;
 import com.apex.portfolio.repository.HoldingRepository;
 import com.apex.portfolio.repository.TransactionRepository;
 import com.apex.portfolio.repository.UserRepository;
-import com.apex.portfolio.service.SnapshotService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -24,16 +23,57 @@ public class TradeService {
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
     private final StockPriceService stockPriceService;
-    private final SnapshotService snapshotService;
-
-    @Transactional
+    private final PriceWarmer priceWarmer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserTransactionExecutor userExecutor;
+
+    /**
+     * Executes a trade at the current quote, serialized per user (see
+     * {@link UserTransactionExecutor}). The quote is fetched before the lock, so no network
+     * call holds a lock or a connection.
+     */
     public void executeTrade(String userId, TradeRequest request) {
         String symbol = request.getSymbol().toUpperCase();
-        Integer quantity = request.getQuantity();
         Transaction.TransactionType type = Transaction.TransactionType.valueOf(request.getType().toUpperCase());
-        Double currentPriceVal = stockPriceService.getPrice(symbol).doubleValue();
-        BigDecimal price = BigDecimal.valueOf(currentPriceVal);
-        BigDecimal tradeValue = price.multiply(BigDecimal.valueOf(quantity));
+        // Money is fixed-point (FixedPoint) throughout; entities still store BigDecimal/Double
+        long price = FixedPoint.of(stockPriceService.getPrice(symbol));
+        executeAtPrice(userId, symbol, request.getQuantity(), type, price);
+    }
+
+    /**
+     * Executes a trade at an already agreed price (e.g. a verified quote token); does no
+     * network I/O, so the transaction lasts only for the database statements.
+     */
+    public void executeAtPrice(String userId, String symbol, int quantity, Transaction.TransactionType type,
+            long price) {
+        executeAtPrice(userId, symbol, quantity, type, price, null);
+    }
+
+    /**
+     * As above, running {@code inTransaction} first in the trade's transaction (again on a
+     * retry), e.g. to record a redeemed quote so that it commits or rolls back with the trade.
+     */
+    public void executeAtPrice(String userId, String symbol, int quantity, Transaction.TransactionType type,
+            long price, Runnable inTransaction) {
+        int positionQuantity = userExecutor.execute(userId, tx -> {
+            if (inTransaction != null) {
+                inTransaction.run();
+            }
+            return applyTrade(userId, symbol, quantity, type, price);
+        });
+
+        // After commit, so a retried or rolled back attempt never counts twice.
+        // A buy that ends at exactly its own quantity opened the position
+        if (type == Transaction.TransactionType.BUY && positionQuantity == quantity) {
+            priceWarmer.track(symbol);
+        } else if (type == Transaction.TransactionType.SELL && positionQuantity == 0) {
+            priceWarmer.untrack(symbol);
+        }
+    }
+
+    // One attempt inside a transaction; returns the resulting position quantity
+    private int applyTrade(String userId, String symbol, int quantity, Transaction.TransactionType type, long price) {
+        long tradeValue = FixedPoint.times(price, quantity);
 
         // 1. Get or Create User (Ensure financial state exists)
         User user = userRepository.findById(userId)
@@ -46,14 +86,16 @@ public class TradeService {
                             .build();
                     return userRepository.save(newUser);
                 });
+        long cashBalance = user.getCashBalance() != null ? FixedPoint.of(user.getCashBalance()) : 0;
+        long realizedPnL = user.getRealizedPnL() != null ? FixedPoint.of(user.getRealizedPnL()) : 0;
 
         // 2. Validate & Update Cash/PnL
         if (type == Transaction.TransactionType.BUY) {
-            if (user.getCashBalance().compareTo(tradeValue) < 0) {
-                throw new RuntimeException(
-                        "Insufficient Funds! Available: " + user.getCashBalance() + ", Required: " + tradeValue);
+            if (cashBalance < tradeValue) {
+                throw new RuntimeException("Insufficient Funds! Available: " + FixedPoint.toBigDecimal(cashBalance)
+                        + ", Required: " + FixedPoint.toBigDecimal(tradeValue));
             }
-            user.setCashBalance(user.getCashBalance().subtract(tradeValue));
+            cashBalance -= tradeValue;
         } else if (type == Transaction.TransactionType.SELL) {
             // Check ownership is done below, but we need average price for PnL
             // Logic handled in Holding update section
@@ -61,28 +103,33 @@ public class TradeService {
 
         // 3. Update Holdings
         Optional<Holding> existingHoldingOpt = holdingRepository.findByUserIdAndSymbol(userId, symbol);
+        // Resulting position, quantity 0 once fully sold
+        int positionQuantity;
+        long positionAverage;
 
         if (type == Transaction.TransactionType.BUY) {
             if (existingHoldingOpt.isPresent()) {
                 Holding holding = existingHoldingOpt.get();
-                // Weighted Average Logic
-                BigDecimal oldTotal = BigDecimal.valueOf(holding.getAveragePrice())
-                        .multiply(BigDecimal.valueOf(holding.getQuantity()));
-                BigDecimal newTotal = oldTotal.add(tradeValue);
+                // Weighted Average Logic (rounded HALF_UP to 4 decimals)
+                long oldTotal = FixedPoint.times(FixedPoint.of(holding.getAveragePrice()), holding.getQuantity());
                 int newQty = holding.getQuantity() + quantity;
-                BigDecimal newAvg = newTotal.divide(BigDecimal.valueOf(newQty), 4, java.math.RoundingMode.HALF_UP);
+                long newAvg = FixedPoint.divide(oldTotal + tradeValue, newQty);
 
                 holding.setQuantity(newQty);
-                holding.setAveragePrice(newAvg.doubleValue());
+                holding.setAveragePrice(FixedPoint.toDouble(newAvg));
                 holdingRepository.save(holding);
+                positionQuantity = newQty;
+                positionAverage = newAvg;
             } else {
                 Holding newHolding = Holding.builder()
                         .userId(userId)
                         .symbol(symbol)
                         .quantity(quantity)
-                        .averagePrice(price.doubleValue())
+                        .averagePrice(FixedPoint.toDouble(price))
                         .build();
                 holdingRepository.save(newHolding);
+                positionQuantity = quantity;
+                positionAverage = price;
             }
         } else if (type == Transaction.TransactionType.SELL) {
             if (existingHoldingOpt.isEmpty()) {
@@ -93,13 +140,10 @@ public class TradeService {
                 throw new RuntimeException("Insufficient quantity to sell");
             }
 
-            // Realized PnL Calculation
-            BigDecimal avgPrice = BigDecimal.valueOf(holding.getAveragePrice());
-            BigDecimal sellPnlPerUnit = price.subtract(avgPrice); // (SellPrice - BuyAvg)
-            BigDecimal totalSellPnl = sellPnlPerUnit.multiply(BigDecimal.valueOf(quantity));
-
-            user.setRealizedPnL(user.getRealizedPnL().add(totalSellPnl));
-            user.setCashBalance(user.getCashBalance().add(tradeValue)); // Add cash back (Principal + Profit)
+            // Realized PnL Calculation: (SellPrice - BuyAvg) * quantity
+            long avgPrice = FixedPoint.of(holding.getAveragePrice());
+            realizedPnL += FixedPoint.times(price - avgPrice, quantity);
+            cashBalance += tradeValue; // Add cash back (Principal + Profit)
 
             int remainingQty = holding.getQuantity() - quantity;
             if (remainingQty == 0) {
@@ -108,7 +152,13 @@ public class TradeService {
                 holding.setQuantity(remainingQty);
                 holdingRepository.save(holding);
             }
+            positionQuantity = remainingQty;
+            positionAverage = avgPrice;
+        } else {
+            throw new RuntimeException("Unsupported trade type: " + type);
         }
+        user.setCashBalance(FixedPoint.toMoney(cashBalance));
+        user.setRealizedPnL(FixedPoint.toMoney(realizedPnL));
 
         // 4. Save User State & Record Transaction
         userRepository.save(user);
@@ -118,15 +168,14 @@ public class TradeService {
                 .symbol(symbol)
                 .quantity(quantity)
                 .type(type)
-                .price(price.doubleValue())
+                .price(FixedPoint.toDouble(price))
                 .timestamp(LocalDateTime.now())
                 .build();
         transactionRepository.save(transaction);
 
-        // Capture snapshot so portfolio chart updates immediately
-        try {
-            snapshotService.captureSnapshotsNow();
-        } catch (Exception ignored) {
-        }
+        // Live valuation and today's snapshot pick this up after commit
+        eventPublisher.publishEvent(new PortfolioChangedEvent(userId, user.getCashBalance(), user.getRealizedPnL(),
+                symbol, positionQuantity, FixedPoint.toDouble(positionAverage), FixedPoint.toBigDecimal(price)));
+        return positionQuantity;
     }
 }
@@ -0,0 +1,106 @@
+package com.apex.portfolio.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs one user's money-moving work (trades, deposits, withdrawals) one at a time.
+ * <p>
+ * Within this instance a striped lock keyed by user id serializes a user's operations,
+ * while different users hash to different stripes and run in parallel. Across instances
+ * the {@code @Version} columns on User and Holding catch a concurrent write at commit; the
+ * work is then retried in a fresh transaction, up to {@code trade.max-attempts} times, as
+ * is a duplicate-key failure from two instances creating the same user or holding.
+ * The work must be safe to re-run: side effects belong after this returns.
+ */
+@Component
+public class UserTransactionExecutor {
+
+    private final ReentrantLock[] stripes;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+
+    // Counters
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong transactionNanos = new AtomicLong(); // Connection hold time, summed
+    private final AtomicLong maxTransactionNanos = new AtomicLong();
+
+    public UserTransactionExecutor(PlatformTransactionManager transactionManager,
+            @Value("${trade.lock-stripes:1024}") int lockStripes,
+            @Value("${trade.max-attempts:3}") int maxAttempts) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.stripes = new ReentrantLock[lockStripes];
+        for (int i = 0; i < lockStripes; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T execute(String userId, TransactionCallback<T> work) {
+        ReentrantLock lock = stripes[Math.floorMod(userId.hashCode(), stripes.length)];
+        if (!lock.tryLock()) {
+            contended.incrementAndGet();
+            lock.lock();
+        }
+        try {
+            executions.incrementAndGet();
+            for (int attempt = 1; ; attempt++) {
+                long started = System.nanoTime();
+                try {
+                    return transactionTemplate.execute(work);
+                } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                    if (attempt >= maxAttempts) {
+                        exhausted.incrementAndGet();
+                        throw new RuntimeException("Concurrent update, please retry", e);
+                    }
+                    retries.incrementAndGet();
+                    backoff(attempt);
+                } finally {
+                    long elapsed = System.nanoTime() - started;
+                    transactionNanos.addAndGet(elapsed);
+                    maxTransactionNanos.accumulateAndGet(elapsed, Math::max);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Short jittered pause so two instances don't collide again in lockstep
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5L << attempt, 20L << attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while retrying", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stripes", stripes.length);
+        stats.put("maxAttempts", maxAttempts);
+        stats.put("executions", executions.get());
+        stats.put("contended", contended.get());
+        stats.put("retries", retries.get());
+        stats.put("exhausted", exhausted.get());
+        long count = executions.get() + retries.get();
+        stats.put("avgTransactionMicros", count > 0 ? transactionNanos.get() / count / 1000 : 0);
+        stats.put("maxTransactionMicros", maxTransactionNanos.get() / 1000);
+        return stats;
+    }
+}
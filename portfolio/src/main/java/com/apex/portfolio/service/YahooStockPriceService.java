@@ -1,30 +1,103 @@
 package com.apex.portfolio.service;
 
+import com.apex.portfolio.dto.CandleDTO;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.context.annotation.Primary;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-@Service
-@Primary
-public class YahooStockPriceService implements StockPriceService {
+@Service("upstreamStockPriceService")
+@Profile("!simulator")
+public class YahooStockPriceService implements StockPriceService, AsyncStockPriceService, PriceHistorySource {
 
     private final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(5))
             .build();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // Yahoo's spark endpoint accepts up to 20 symbols per request
+    private static final int BATCH_SIZE = 20;
+
+    // Shared pool for concurrent batch requests and per-symbol retries
+    private final ExecutorService fetchExecutor = Executors.newFixedThreadPool(8, r -> {
+        Thread t = new Thread(r, "yahoo-price-fetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Blocking legacy-library calls run here so they never starve the fetch pool
+    private final ExecutorService legacyExecutor = Executors.newFixedThreadPool(8, r -> {
+        Thread t = new Thread(r, "yahoo-legacy-fetch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Bounds how many async v8 requests are on the wire at once; the rest wait in the queue
+    private final Semaphore asyncPermits;
+    private final ConcurrentLinkedQueue<Runnable> pendingAsyncRequests = new ConcurrentLinkedQueue<>();
+
+    // Source health: open breakers are skipped until a background probe succeeds
+    private static final String PROBE_SYMBOL = "SPY";
+    private final CircuitBreaker v8Breaker;
+    private final CircuitBreaker legacyBreaker;
+    private final LatencyTracker v8Latency = new LatencyTracker();
+    private final LatencyTracker legacyLatency = new LatencyTracker();
+    private final AtomicLong fallbacksServed = new AtomicLong();
+
+    // Hedging: if v8 has not answered by its p95, ask the legacy library as well
+    private final boolean hedgingEnabled;
+    private final long hedgeMinDelayMillis;
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    public YahooStockPriceService(@Value("${market.yahoo.max-concurrent-requests:16}") int maxConcurrentRequests,
+            @Value("${market.yahoo.breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${market.yahoo.breaker.open-seconds:30}") long openSeconds,
+            @Value("${market.yahoo.hedge.enabled:false}") boolean hedgingEnabled,
+            @Value("${market.yahoo.hedge.min-delay-ms:250}") long hedgeMinDelayMillis) {
+        this.asyncPermits = new Semaphore(maxConcurrentRequests);
+        this.v8Breaker = new CircuitBreaker("yahoo-v8", failureThreshold, openSeconds * 1000L);
+        this.legacyBreaker = new CircuitBreaker("yahoo-legacy", failureThreshold, openSeconds * 1000L);
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+    }
+
     // Fallback prices for common Indian stocks (used when Yahoo is unreachable)
     private static final Map<String, BigDecimal> FALLBACK_PRICES = new HashMap<>();
     private static final Random random = new Random();
@@ -60,31 +133,308 @@ public class YahooStockPriceService implements StockPriceService {
 
     @Override
     public BigDecimal getPrice(String symbol) {
-        // 1. Try Yahoo Finance v8 chart API (direct HTTP)
+        BigDecimal price = null;
+
+        // 1. Try Yahoo Finance v8 chart API (direct HTTP), hedged with the legacy library if enabled
+        if (v8Breaker.allowRequest()) {
+            if (hedgingEnabled && legacyBreaker.isClosed()) {
+                price = awaitQuietly(fetchHedged(symbol));
+                return price != null ? price : fallback(symbol);
+            }
+            price = callV8(symbol);
+        }
+
+        // 2. Try the old yahoofinance library as second attempt
+        if (price == null && legacyBreaker.allowRequest()) {
+            price = callLegacy(symbol);
+        }
+
+        // 3. Fall back to realistic mock prices so the app remains functional
+        return price != null ? price : fallback(symbol);
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> getPriceAsync(String symbol) {
+        if (!v8Breaker.allowRequest()) {
+            return secondaryAsync(symbol);
+        }
+        if (hedgingEnabled && legacyBreaker.isClosed()) {
+            return fetchHedged(symbol).exceptionally(e -> fallback(symbol));
+        }
+        // v8 over sendAsync first; the blocking legacy library only runs if that fails
+        return v8Async(symbol).exceptionallyCompose(e -> {
+            System.err.println("[YahooStockPriceService] Async Yahoo API failed for " + symbol + ": " + e.getMessage());
+            return secondaryAsync(symbol);
+        });
+    }
+
+    private CompletableFuture<BigDecimal> secondaryAsync(String symbol) {
+        if (!legacyBreaker.allowRequest()) {
+            return CompletableFuture.completedFuture(fallback(symbol));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            BigDecimal price = callLegacy(symbol);
+            return price != null ? price : fallback(symbol);
+        }, legacyExecutor);
+    }
+
+    /**
+     * Sends v8 first and, if it has not answered within its recent p95 latency (or fails
+     * outright), fires the legacy library too. The first valid price wins.
+     */
+    private CompletableFuture<BigDecimal> fetchHedged(String symbol) {
+        CompletableFuture<BigDecimal> result = new CompletableFuture<>();
+        AtomicBoolean hedgeFired = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+
+        CompletableFuture<BigDecimal> primary = v8Async(symbol);
+
+        Runnable fireHedge = () -> {
+            if (result.isDone() || !hedgeFired.compareAndSet(false, true)) {
+                return;
+            }
+            hedgesFired.incrementAndGet();
+            CompletableFuture.supplyAsync(() -> callLegacyOrThrow(symbol), legacyExecutor)
+                    .whenComplete((price, error) -> {
+                        if (error == null) {
+                            if (result.complete(price) && !primary.isDone()) {
+                                hedgesWon.incrementAndGet();
+                            }
+                        } else if (failures.incrementAndGet() == 2) {
+                            result.completeExceptionally(error);
+                        }
+                    });
+        };
+
+        primary.whenComplete((price, error) -> {
+            if (error == null) {
+                result.complete(price);
+            } else if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(error);
+            } else {
+                fireHedge.run(); // Primary failed fast: no point waiting for the timer
+            }
+        });
+
+        CompletableFuture.delayedExecutor(hedgeDelayMillis(), TimeUnit.MILLISECONDS, legacyExecutor).execute(fireHedge);
+        return result;
+    }
+
+    private long hedgeDelayMillis() {
+        long p95 = v8Latency.sampleCount() >= 20 ? v8Latency.percentile(0.95) : -1;
+        return Math.max(p95, hedgeMinDelayMillis);
+    }
+
+    private CompletableFuture<BigDecimal> v8Async(String symbol) {
+        // v8 chart API over HttpClient.sendAsync, limited to maxConcurrentRequests in flight
+        return withPermit(() -> {
+            long start = System.nanoTime();
+            return httpClient.sendAsync(buildV8Request(symbol), HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> parseV8Response(response))
+                    .whenComplete((price, error) -> record(v8Breaker, v8Latency, start, error == null));
+        });
+    }
+
+    private BigDecimal callV8(String symbol) {
+        long start = System.nanoTime();
         try {
-            return fetchFromYahooV8(symbol);
+            BigDecimal price = fetchFromYahooV8(symbol);
+            record(v8Breaker, v8Latency, start, true);
+            return price;
         } catch (Exception e) {
+            record(v8Breaker, v8Latency, start, false);
             System.err.println("[YahooStockPriceService] Yahoo API failed for " + symbol + ": " + e.getMessage());
+            return null;
         }
+    }
 
-        // 2. Try the old yahoofinance library as second attempt
+    private BigDecimal callLegacy(String symbol) {
+        try {
+            return callLegacyOrThrow(symbol);
+        } catch (Exception e) {
+            System.err.println("[YahooStockPriceService] Legacy library failed for " + symbol + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private BigDecimal callLegacyOrThrow(String symbol) {
+        long start = System.nanoTime();
         try {
             yahoofinance.Stock stock = yahoofinance.YahooFinance.get(symbol);
-            if (stock != null && stock.getQuote() != null && stock.getQuote().getPrice() != null) {
-                return stock.getQuote().getPrice();
+            if (stock == null || stock.getQuote() == null || stock.getQuote().getPrice() == null) {
+                throw new RuntimeException("No quote returned");
             }
+            record(legacyBreaker, legacyLatency, start, true);
+            return stock.getQuote().getPrice();
         } catch (Exception e) {
-            System.err.println("[YahooStockPriceService] Legacy library failed for " + symbol + ": " + e.getMessage());
+            record(legacyBreaker, legacyLatency, start, false);
+            throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e.getMessage(), e);
         }
+    }
 
-        // 3. Fall back to realistic mock prices so the app remains functional
+    private static void record(CircuitBreaker breaker, LatencyTracker latency, long startNanos, boolean success) {
+        latency.record((System.nanoTime() - startNanos) / 1_000_000L);
+        if (success) {
+            breaker.recordSuccess();
+        } else {
+            breaker.recordFailure();
+        }
+    }
+
+    private BigDecimal fallback(String symbol) {
+        fallbacksServed.incrementAndGet();
         System.err.println("[YahooStockPriceService] Using fallback price for " + symbol);
         return getFallbackPrice(symbol);
     }
 
-    private BigDecimal fetchFromYahooV8(String symbol) throws Exception {
-        String url = "https://query1.finance.yahoo.com/v8/finance/chart/" + symbol
-                + "?interval=1d&range=1d";
+    private static BigDecimal awaitQuietly(CompletableFuture<BigDecimal> future) {
+        try {
+            return future.get(15, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Re-tests sources whose breaker is open, off the request path
+    @Scheduled(fixedDelay = 5000)
+    public void probeOpenSources() {
+        if (v8Breaker.tryStartProbe()) {
+            fetchExecutor.execute(() -> callV8(PROBE_SYMBOL));
+        }
+        if (legacyBreaker.tryStartProbe()) {
+            legacyExecutor.execute(() -> callLegacy(PROBE_SYMBOL));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> v8 = new LinkedHashMap<>(v8Breaker.stats());
+        v8.put("p50Millis", v8Latency.percentile(0.50));
+        v8.put("p95Millis", v8Latency.percentile(0.95));
+        Map<String, Object> legacy = new LinkedHashMap<>(legacyBreaker.stats());
+        legacy.put("p50Millis", legacyLatency.percentile(0.50));
+        legacy.put("p95Millis", legacyLatency.percentile(0.95));
+
+        Map<String, Object> hedging = new LinkedHashMap<>();
+        hedging.put("enabled", hedgingEnabled);
+        hedging.put("delayMillis", hedgeDelayMillis());
+        hedging.put("fired", hedgesFired.get());
+        hedging.put("won", hedgesWon.get());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("v8", v8);
+        stats.put("legacy", legacy);
+        stats.put("fallbacksServed", fallbacksServed.get());
+        stats.put("hedging", hedging);
+        return stats;
+    }
+
+    /**
+     * Starts the request immediately if a permit is free, otherwise queues it until an
+     * in-flight request finishes. Never blocks the calling thread.
+     */
+    private <T> CompletableFuture<T> withPermit(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            try {
+                request.get().whenComplete((value, error) -> {
+                    releasePermit();
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (Exception e) {
+                releasePermit();
+                result.completeExceptionally(e);
+            }
+        };
+        if (asyncPermits.tryAcquire()) {
+            start.run();
+        } else {
+            pendingAsyncRequests.add(start);
+            // A permit may have been released between tryAcquire and add
+            if (asyncPermits.tryAcquire()) {
+                releasePermit();
+            }
+        }
+        return result;
+    }
+
+    private void releasePermit() {
+        Runnable next = pendingAsyncRequests.poll();
+        if (next != null) {
+            next.run(); // Hand the permit straight to the next queued request
+        } else {
+            asyncPermits.release();
+            // Re-check in case something was queued while releasing
+            if (!pendingAsyncRequests.isEmpty() && asyncPermits.tryAcquire()) {
+                releasePermit();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, BigDecimal> getPrices(Collection<String> symbols) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String symbol : symbols) {
+            unique.add(symbol.toUpperCase());
+        }
+        if (unique.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        // 1. Fire one spark request per batch of symbols, all batches in parallel
+        // (spark shares the v8 breaker since both hit the same Yahoo host)
+        List<String> ordered = new ArrayList<>(unique);
+        Map<String, BigDecimal> found = new ConcurrentHashMap<>();
+        if (v8Breaker.allowRequest()) {
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (int i = 0; i < ordered.size(); i += BATCH_SIZE) {
+                List<String> batch = ordered.subList(i, Math.min(i + BATCH_SIZE, ordered.size()));
+                batches.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        found.putAll(fetchBatchFromYahooSpark(batch));
+                        v8Breaker.recordSuccess();
+                    } catch (Exception e) {
+                        v8Breaker.recordFailure();
+                        System.err.println("[YahooStockPriceService] Batch quote failed for " + batch + ": " + e.getMessage());
+                    }
+                }, fetchExecutor));
+            }
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+        }
+
+        // 2. Anything the batch call missed goes through the per-symbol path, also in parallel
+        List<CompletableFuture<Void>> retries = new ArrayList<>();
+        for (String symbol : ordered) {
+            if (!found.containsKey(symbol)) {
+                retries.add(CompletableFuture.runAsync(() -> found.put(symbol, getPrice(symbol)), fetchExecutor));
+            }
+        }
+        CompletableFuture.allOf(retries.toArray(new CompletableFuture[0])).join();
+
+        Map<String, BigDecimal> prices = new LinkedHashMap<>();
+        for (String symbol : ordered) {
+            BigDecimal price = found.get(symbol);
+            if (price != null) {
+                prices.put(symbol, price);
+            }
+        }
+        return prices;
+    }
+
+    private Map<String, BigDecimal> fetchBatchFromYahooSpark(List<String> symbols) throws Exception {
+        List<String> encoded = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            encoded.add(encode(symbol));
+        }
+        // The separating commas stay literal; commas inside a symbol are encoded
+        String url = "https://query1.finance.yahoo.com/v7/finance/spark?symbols="
+                + String.join(",", encoded) + "&range=1d&interval=1d";
 
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
@@ -99,8 +449,104 @@ public class YahooStockPriceService implements StockPriceService {
             throw new RuntimeException("HTTP " + response.statusCode());
         }
 
-        JsonNode root = objectMapper.readTree(response.body());
-        JsonNode meta = root.path("chart").path("result").get(0).path("meta");
+        Map<String, BigDecimal> prices = new HashMap<>();
+        JsonNode results = objectMapper.readTree(response.body()).path("spark").path("result");
+        for (JsonNode result : results) {
+            String symbol = result.path("symbol").asText().toUpperCase();
+            double price = result.path("response").path(0).path("meta").path("regularMarketPrice").asDouble();
+            if (!symbol.isEmpty() && price > 0) {
+                prices.put(symbol, BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP));
+            }
+        }
+        return prices;
+    }
+
+    @Override
+    public List<CandleDTO> getDailyCandles(String symbol, int days) {
+        if (!v8Breaker.allowRequest()) {
+            throw new RuntimeException("Yahoo v8 source unavailable");
+        }
+        String range = days <= 5 ? "5d" : days <= 30 ? "1mo" : days <= 90 ? "3mo"
+                : days <= 180 ? "6mo" : days <= 365 ? "1y" : days <= 730 ? "2y" : "5y";
+        String url = "https://query1.finance.yahoo.com/v8/finance/chart/" + encode(symbol)
+                + "?interval=1d&range=" + range;
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("User-Agent", "Mozilla/5.0")
+                .GET()
+                .timeout(Duration.ofSeconds(10))
+                .build();
+
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("HTTP " + response.statusCode());
+            }
+            JsonNode result = objectMapper.readTree(response.body()).path("chart").path("result").path(0);
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(result.path("meta").path("gmtoffset").asInt(0));
+            JsonNode timestamps = result.path("timestamp");
+            JsonNode quote = result.path("indicators").path("quote").path(0);
+
+            List<CandleDTO> candles = new ArrayList<>();
+            double prevClose = result.path("meta").path("chartPreviousClose").asDouble(0);
+            for (int i = 0; i < timestamps.size(); i++) {
+                JsonNode close = quote.path("close").path(i);
+                if (close.isNull() || close.isMissingNode()) {
+                    continue; // Yahoo leaves nulls for sessions without trades
+                }
+                LocalDate date = Instant.ofEpochSecond(timestamps.get(i).asLong()).atOffset(offset).toLocalDate();
+                double closeValue = close.asDouble();
+                candles.add(CandleDTO.builder()
+                        .date(date)
+                        .open(quote.path("open").path(i).asDouble(closeValue))
+                        .high(quote.path("high").path(i).asDouble(closeValue))
+                        .low(quote.path("low").path(i).asDouble(closeValue))
+                        .close(closeValue)
+                        .prevClose(prevClose > 0 ? prevClose : closeValue)
+                        .build());
+                prevClose = closeValue;
+            }
+            v8Breaker.recordSuccess();
+            return candles;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted");
+        } catch (Exception e) {
+            v8Breaker.recordFailure();
+            throw new RuntimeException("History fetch failed for " + symbol + ": " + e.getMessage(), e);
+        }
+    }
+
+    private BigDecimal fetchFromYahooV8(String symbol) throws Exception {
+        HttpResponse<String> response = httpClient.send(buildV8Request(symbol), HttpResponse.BodyHandlers.ofString());
+        return parseV8Response(response);
+    }
+
+    private HttpRequest buildV8Request(String symbol) {
+        String url = "https://query1.finance.yahoo.com/v8/finance/chart/" + encode(symbol)
+                + "?interval=1d&range=1d";
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("User-Agent", "Mozilla/5.0")
+                .GET()
+                .timeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private BigDecimal parseV8Response(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("HTTP " + response.statusCode());
+        }
+
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(response.body());
+        } catch (Exception e) {
+            throw new RuntimeException("Unreadable response: " + e.getMessage());
+        }
+        JsonNode meta = root.path("chart").path("result").path(0).path("meta");
         double price = meta.path("regularMarketPrice").asDouble();
 
         if (price <= 0) {
@@ -110,13 +556,24 @@ public class YahooStockPriceService implements StockPriceService {
         return BigDecimal.valueOf(price).setScale(2, RoundingMode.HALF_UP);
     }
 
+    // Symbols such as ^NSEI or M&M.NS are not URL-safe; %20 rather than + so it also fits a path
+    private static String encode(String symbol) {
+        return URLEncoder.encode(symbol, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
     private BigDecimal getFallbackPrice(String symbol) {
         String key = symbol.toUpperCase();
         BigDecimal basePrice = FALLBACK_PRICES.getOrDefault(key, new BigDecimal("100.00"));
 
         // Add small random fluctuation (+/- 1%) to make it feel realistic
         double fluctuation = (random.nextDouble() - 0.5) * 0.02;
-        return basePrice.multiply(BigDecimal.valueOf(1 + fluctuation))
-                .setScale(2, RoundingMode.HALF_UP);
+        return new FallbackPrice(basePrice.multiply(BigDecimal.valueOf(1 + fluctuation))
+                .setScale(2, RoundingMode.HALF_UP));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+        legacyExecutor.shutdownNow();
     }
 }
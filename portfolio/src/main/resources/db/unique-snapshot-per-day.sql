@@ -0,0 +1,14 @@
+-- One-off migration, run by hand (psql -f) before deploying the unique (user_id, date)
+-- constraint on portfolio_snapshots. Schema update cannot add the constraint while a day
+-- has several rows (written by the old snapshot-everyone-per-trade path), so keep each
+-- user's latest row for the day, then add the constraint under the name the entity uses.
+begin;
+
+delete from portfolio_snapshots s
+where exists (select 1 from portfolio_snapshots d
+              where d.user_id = s.user_id and d.date = s.date and d.id > s.id);
+
+alter table portfolio_snapshots
+    add constraint uk_snapshot_user_date unique (user_id, date);
+
+commit;
@@ -0,0 +1,43 @@
+package com.apex.portfolio.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CachingStockPriceServiceTest {
+
+    private final List<Object> events = new ArrayList<>();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    // Upstream is down for the first two calls
+    private final StockPriceService upstream = symbol -> upstreamCalls.incrementAndGet() <= 2
+            ? new FallbackPrice(new BigDecimal("99.50"))
+            : new BigDecimal("101.25");
+    private final CachingStockPriceService cache = new CachingStockPriceService(upstream, 30, 300, 100, events::add);
+
+    @AfterEach
+    void shutdown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void fallbackPricesAreServedButNeitherCachedNorPublished() {
+        assertThat(cache.getPrice("AAPL")).isEqualByComparingTo("99.50");
+        assertThat(cache.getPrices(List.of("AAPL"))).containsKey("AAPL");
+        assertThat(cache.ageMillis("AAPL")).isEqualTo(-1);
+        assertThat(events).isEmpty();
+
+        // Upstream is back: the real price is loaded, cached and published once
+        assertThat(cache.getPrice("AAPL")).isEqualByComparingTo("101.25");
+        assertThat(cache.getPrice("AAPL")).isEqualByComparingTo("101.25");
+        assertThat(upstreamCalls).hasValue(3);
+        assertThat(events).singleElement().isInstanceOfSatisfying(PriceChangedEvent.class,
+                event -> assertThat(event.getPrice()).isEqualByComparingTo("101.25"));
+        assertThat(cache.stats()).containsEntry("fallbacksSkipped", 2L);
+    }
+}
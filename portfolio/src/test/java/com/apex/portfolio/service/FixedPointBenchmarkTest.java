@@ -0,0 +1,238 @@
+package com.apex.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * FixedPoint against the BigDecimal code it replaced (TradeService's weighted average and
+ * realized P&L, PortfolioService's per-holding valuation), on the same random trades.
+ * <p>
+ * The equivalence check always runs. The timing harness only runs with
+ * {@code mvn test -Dtest=FixedPointBenchmarkTest -Dbenchmark=true}, and prints ns per trade
+ * and per holding valued rather than asserting on them.
+ */
+class FixedPointBenchmarkTest {
+
+    private static final int SYMBOLS = 50;
+
+    // One generated trade sequence: symbol, buy or sell, quantity and a two decimal quote
+    private static final class Trades {
+        final int[] symbol;
+        final boolean[] buy;
+        final int[] quantity;
+        final long[] priceCents;
+
+        Trades(long seed, int count) {
+            SplittableRandom random = new SplittableRandom(seed);
+            symbol = new int[count];
+            buy = new boolean[count];
+            quantity = new int[count];
+            priceCents = new long[count];
+            for (int i = 0; i < count; i++) {
+                symbol[i] = random.nextInt(SYMBOLS);
+                buy[i] = random.nextInt(3) > 0;
+                quantity[i] = 1 + random.nextInt(50);
+                priceCents[i] = 1_00 + random.nextLong(5_000_00);
+            }
+        }
+    }
+
+    // The previous implementation: BigDecimal money, Double average price
+    private static final class BigDecimalBook {
+        BigDecimal cash = new BigDecimal("1000000000");
+        BigDecimal realizedPnL = BigDecimal.ZERO;
+        final int[] quantity = new int[SYMBOLS];
+        final Double[] average = new Double[SYMBOLS];
+
+        void trade(int s, boolean buy, int qty, double quote) {
+            BigDecimal price = BigDecimal.valueOf(quote);
+            BigDecimal tradeValue = price.multiply(BigDecimal.valueOf(qty));
+            if (buy) {
+                cash = cash.subtract(tradeValue);
+                if (quantity[s] > 0) {
+                    BigDecimal oldTotal = BigDecimal.valueOf(average[s]).multiply(BigDecimal.valueOf(quantity[s]));
+                    int newQty = quantity[s] + qty;
+                    average[s] = oldTotal.add(tradeValue)
+                            .divide(BigDecimal.valueOf(newQty), 4, RoundingMode.HALF_UP).doubleValue();
+                    quantity[s] = newQty;
+                } else {
+                    quantity[s] = qty;
+                    average[s] = price.doubleValue();
+                }
+            } else if (quantity[s] >= qty) {
+                BigDecimal pnl = price.subtract(BigDecimal.valueOf(average[s])).multiply(BigDecimal.valueOf(qty));
+                realizedPnL = realizedPnL.add(pnl);
+                cash = cash.add(tradeValue);
+                quantity[s] -= qty;
+            }
+        }
+
+        // Total value, total invested and summed per-holding P&L percent
+        BigDecimal[] value(double[] quotes) {
+            BigDecimal totalValue = BigDecimal.ZERO;
+            BigDecimal totalInvested = BigDecimal.ZERO;
+            BigDecimal percents = BigDecimal.ZERO;
+            for (int s = 0; s < SYMBOLS; s++) {
+                if (quantity[s] == 0) {
+                    continue;
+                }
+                BigDecimal currentPrice = BigDecimal.valueOf(quotes[s]);
+                BigDecimal avgPrice = BigDecimal.valueOf(average[s]);
+                BigDecimal qty = BigDecimal.valueOf(quantity[s]);
+                BigDecimal invested = avgPrice.multiply(qty);
+                BigDecimal currentVal = currentPrice.multiply(qty);
+                BigDecimal pnl = currentVal.subtract(invested);
+                BigDecimal pnlPercent = invested.compareTo(BigDecimal.ZERO) > 0
+                        ? pnl.divide(invested, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100))
+                        : BigDecimal.ZERO;
+                totalValue = totalValue.add(currentVal);
+                totalInvested = totalInvested.add(invested);
+                percents = percents.add(pnlPercent);
+            }
+            return new BigDecimal[] { totalValue, totalInvested, percents };
+        }
+    }
+
+    // The same book on FixedPoint longs, as TradeService and PortfolioService do it now
+    private static final class FixedPointBook {
+        long cash = FixedPoint.of(new BigDecimal("1000000000"));
+        long realizedPnL;
+        final int[] quantity = new int[SYMBOLS];
+        final long[] average = new long[SYMBOLS];
+
+        void trade(int s, boolean buy, int qty, double quote) {
+            long price = FixedPoint.of(quote);
+            long tradeValue = FixedPoint.times(price, qty);
+            if (buy) {
+                cash -= tradeValue;
+                if (quantity[s] > 0) {
+                    long oldTotal = FixedPoint.times(average[s], quantity[s]);
+                    int newQty = quantity[s] + qty;
+                    average[s] = FixedPoint.divide(oldTotal + tradeValue, newQty);
+                    quantity[s] = newQty;
+                } else {
+                    quantity[s] = qty;
+                    average[s] = price;
+                }
+            } else if (quantity[s] >= qty) {
+                realizedPnL += FixedPoint.times(price - average[s], qty);
+                cash += tradeValue;
+                quantity[s] -= qty;
+            }
+        }
+
+        long[] value(double[] quotes) {
+            long totalValue = 0;
+            long totalInvested = 0;
+            long percents = 0;
+            for (int s = 0; s < SYMBOLS; s++) {
+                if (quantity[s] == 0) {
+                    continue;
+                }
+                long invested = FixedPoint.times(average[s], quantity[s]);
+                long currentVal = FixedPoint.times(FixedPoint.of(quotes[s]), quantity[s]);
+                totalValue += currentVal;
+                totalInvested += invested;
+                percents += FixedPoint.percent(currentVal - invested, invested);
+            }
+            return new long[] { totalValue, totalInvested, percents };
+        }
+    }
+
+    private static double quote(long cents) {
+        return cents / 100.0;
+    }
+
+    private static double[] quotes(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] quotes = new double[SYMBOLS];
+        for (int s = 0; s < SYMBOLS; s++) {
+            quotes[s] = quote(1_00 + random.nextLong(5_000_00));
+        }
+        return quotes;
+    }
+
+    @Test
+    void fixedPointMatchesBigDecimal() {
+        Trades trades = new Trades(42, 20_000);
+        double[] quotes = quotes(7);
+        BigDecimalBook expected = new BigDecimalBook();
+        FixedPointBook actual = new FixedPointBook();
+        for (int i = 0; i < trades.symbol.length; i++) {
+            double price = quote(trades.priceCents[i]);
+            expected.trade(trades.symbol[i], trades.buy[i], trades.quantity[i], price);
+            actual.trade(trades.symbol[i], trades.buy[i], trades.quantity[i], price);
+
+            assertThat(FixedPoint.of(expected.cash)).isEqualTo(actual.cash);
+            assertThat(FixedPoint.of(expected.realizedPnL)).isEqualTo(actual.realizedPnL);
+            int s = trades.symbol[i];
+            assertThat(actual.quantity[s]).isEqualTo(expected.quantity[s]);
+            if (actual.quantity[s] > 0) {
+                assertThat(FixedPoint.of(expected.average[s])).isEqualTo(actual.average[s]);
+            }
+        }
+
+        BigDecimal[] expectedValue = expected.value(quotes);
+        long[] actualValue = actual.value(quotes);
+        for (int i = 0; i < actualValue.length; i++) {
+            assertThat(actualValue[i]).isEqualTo(FixedPoint.of(expectedValue[i]));
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmark() {
+        int count = 1_000_000;
+        Trades trades = new Trades(1, count);
+        double[] prices = new double[count];
+        for (int i = 0; i < count; i++) {
+            prices[i] = quote(trades.priceCents[i]);
+        }
+        double[] quotes = quotes(2);
+        int valuations = 200_000;
+
+        for (int round = 1; round <= 5; round++) {
+            BigDecimalBook big = new BigDecimalBook();
+            long started = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                big.trade(trades.symbol[i], trades.buy[i], trades.quantity[i], prices[i]);
+            }
+            long bigTrades = System.nanoTime() - started;
+            started = System.nanoTime();
+            BigDecimal bigSink = BigDecimal.ZERO;
+            for (int i = 0; i < valuations; i++) {
+                bigSink = bigSink.add(big.value(quotes)[0]);
+            }
+            long bigValuation = System.nanoTime() - started;
+
+            FixedPointBook fixed = new FixedPointBook();
+            started = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                fixed.trade(trades.symbol[i], trades.buy[i], trades.quantity[i], prices[i]);
+            }
+            long fixedTrades = System.nanoTime() - started;
+            started = System.nanoTime();
+            long fixedSink = 0;
+            for (int i = 0; i < valuations; i++) {
+                fixedSink += fixed.value(quotes)[0];
+            }
+            long fixedValuation = System.nanoTime() - started;
+
+            long held = 0;
+            for (int q : fixed.quantity) {
+                held += q > 0 ? 1 : 0;
+            }
+            System.out.printf("[FixedPointBenchmark] round %d: trade %.1f ns (BigDecimal) vs %.1f ns (FixedPoint);"
+                    + " valuation per holding %.1f ns vs %.1f ns (%d holdings, sinks %s/%d)%n", round,
+                    (double) bigTrades / count, (double) fixedTrades / count,
+                    (double) bigValuation / valuations / held, (double) fixedValuation / valuations / held, held,
+                    bigSink.signum(), Long.signum(fixedSink));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.apex.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FixedPointTest {
+
+    @Test
+    void ofBigDecimalRoundsHalfUpToFourDecimals() {
+        assertThat(FixedPoint.of(new BigDecimal("1.23455"))).isEqualTo(12346);
+        assertThat(FixedPoint.of(new BigDecimal("1.23454"))).isEqualTo(12345);
+        assertThat(FixedPoint.of(new BigDecimal("-1.23455"))).isEqualTo(-12346);
+        assertThat(FixedPoint.of(new BigDecimal("100.00"))).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void ofDoubleRoundsHalfAwayFromZero() {
+        // 1.03125 is exact in binary, so x 10,000 is a true half
+        assertThat(FixedPoint.of(1.03125)).isEqualTo(10313);
+        assertThat(FixedPoint.of(-1.03125)).isEqualTo(-10313);
+        assertThat(FixedPoint.of(0.1)).isEqualTo(1000);
+        assertThat(FixedPoint.of(-0.1)).isEqualTo(-1000);
+        assertThat(FixedPoint.of(0.0)).isZero();
+    }
+
+    @Test
+    void ofRejectsValuesOutsideTheRange() {
+        assertThatThrownBy(() -> FixedPoint.of(Double.NaN)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> FixedPoint.of(Double.POSITIVE_INFINITY)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> FixedPoint.of((double) (Long.MAX_VALUE / FixedPoint.ONE + 1)))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> FixedPoint.of(BigDecimal.valueOf(Long.MAX_VALUE, 3)))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void largestValuesConvertExactly() {
+        long max = Long.MAX_VALUE;
+        assertThat(FixedPoint.of(BigDecimal.valueOf(max, FixedPoint.SCALE))).isEqualTo(max);
+        assertThat(FixedPoint.of(BigDecimal.valueOf(-max, FixedPoint.SCALE))).isEqualTo(-max);
+        assertThat(FixedPoint.toBigDecimal(max)).isEqualTo(BigDecimal.valueOf(max, FixedPoint.SCALE));
+    }
+
+    @Test
+    void noneIsNeverAValue() {
+        assertThat(FixedPoint.ofNullable((BigDecimal) null)).isEqualTo(FixedPoint.NONE);
+        assertThat(FixedPoint.ofNullable((Double) null)).isEqualTo(FixedPoint.NONE);
+        assertThat(FixedPoint.toBigDecimal(FixedPoint.NONE)).isNull();
+        // Long.MIN_VALUE units would read back as "no value"
+        assertThatThrownBy(() -> FixedPoint.of(BigDecimal.valueOf(Long.MIN_VALUE, FixedPoint.SCALE)))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void timesIsExactAndThrowsOnOverflow() {
+        assertThat(FixedPoint.times(FixedPoint.of(new BigDecimal("123.4567")), 3)).isEqualTo(3_703_701);
+        assertThat(FixedPoint.times(-12_500, 4)).isEqualTo(-50_000);
+        long limit = Long.MAX_VALUE / FixedPoint.ONE;
+        assertThat(FixedPoint.times(limit, FixedPoint.ONE)).isEqualTo(limit * FixedPoint.ONE);
+        assertThatThrownBy(() -> FixedPoint.times(limit + 1, FixedPoint.ONE)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> FixedPoint.times(Long.MAX_VALUE, 2)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void divideRoundsHalfAwayFromZero() {
+        assertThat(FixedPoint.divide(7, 2)).isEqualTo(4);
+        assertThat(FixedPoint.divide(-7, 2)).isEqualTo(-4);
+        assertThat(FixedPoint.divide(7, -2)).isEqualTo(-4);
+        assertThat(FixedPoint.divide(-7, -2)).isEqualTo(4);
+        assertThat(FixedPoint.divide(5, 3)).isEqualTo(2);
+        assertThat(FixedPoint.divide(4, 3)).isEqualTo(1);
+        assertThat(FixedPoint.divide(-4, 3)).isEqualTo(-1);
+        assertThat(FixedPoint.divide(Long.MAX_VALUE, 1)).isEqualTo(Long.MAX_VALUE);
+        assertThat(FixedPoint.divide(Long.MAX_VALUE, Long.MAX_VALUE)).isEqualTo(1);
+        assertThatThrownBy(() -> FixedPoint.divide(1, 0)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void weightedAverageMatchesBigDecimal() {
+        // Buys of 1 @ 100, 1 @ 101 and 1 @ 101: 302 / 3 = 100.6667
+        long total = FixedPoint.times(1_000_000, 1) + FixedPoint.times(1_010_000, 1) + FixedPoint.times(1_010_000, 1);
+        long average = FixedPoint.divide(total, 3);
+        assertThat(average).isEqualTo(1_006_667);
+        assertThat(FixedPoint.toBigDecimal(average)).isEqualTo(new BigDecimal("302")
+                .divide(BigDecimal.valueOf(3), 4, java.math.RoundingMode.HALF_UP));
+    }
+
+    @Test
+    void percentRoundsToTwoDecimals() {
+        assertThat(FixedPoint.percent(1, 3)).isEqualTo(333_300);
+        assertThat(FixedPoint.percent(2, 3)).isEqualTo(666_700);
+        assertThat(FixedPoint.percent(-1, 3)).isEqualTo(-333_300);
+        assertThat(FixedPoint.percent(5, 5)).isEqualTo(100 * FixedPoint.ONE);
+        assertThat(FixedPoint.percent(1, 0)).isZero();
+        assertThat(FixedPoint.percent(1, -5)).isZero();
+    }
+
+    @Test
+    void percentOfLargeValuesFallsBackToBigDecimal() {
+        long whole = Long.MAX_VALUE - 1;
+        assertThat(FixedPoint.percent(whole / 2, whole)).isEqualTo(50 * FixedPoint.ONE);
+        assertThat(FixedPoint.percent(whole / 3, whole)).isEqualTo(333_300);
+        long edge = Long.MAX_VALUE / FixedPoint.ONE;
+        assertThat(FixedPoint.percent(edge - 1, edge)).isEqualTo(100 * FixedPoint.ONE);
+        assertThat(FixedPoint.percent(edge, edge)).isEqualTo(100 * FixedPoint.ONE);
+    }
+
+    @Test
+    void apiRepresentation() {
+        assertThat(FixedPoint.toBigDecimal(12_300)).isEqualTo(new BigDecimal("1.23"));
+        assertThat(FixedPoint.toBigDecimal(12_345)).isEqualTo(new BigDecimal("1.2345"));
+        assertThat(FixedPoint.toBigDecimal(-12_300)).isEqualTo(new BigDecimal("-1.23"));
+        assertThat(FixedPoint.toMoney(12_345)).isEqualTo(new BigDecimal("1.23"));
+        assertThat(FixedPoint.toMoney(12_350)).isEqualTo(new BigDecimal("1.24"));
+        assertThat(FixedPoint.toMoney(-12_350)).isEqualTo(new BigDecimal("-1.24"));
+        assertThat(FixedPoint.toDouble(12_345)).isEqualTo(1.2345);
+    }
+}
@@ -0,0 +1,132 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.controller.FundsController;
+import com.apex.portfolio.dto.LedgerAuditDTO;
+import com.apex.portfolio.model.Transaction;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"test", "simulator"})
+class LedgerServiceTest {
+
+    @Autowired
+    private LedgerService ledgerService;
+    @Autowired
+    private TradeService tradeService;
+    @Autowired
+    private FundsController fundsController;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static Jwt jwt(String userId) {
+        return Jwt.withTokenValue("test").header("alg", "none").subject(userId).build();
+    }
+
+    private static long price(String value) {
+        return FixedPoint.of(new BigDecimal(value));
+    }
+
+    private void trade(String userId, Transaction.TransactionType type, int quantity, String price) {
+        tradeService.executeAtPrice(userId, "SIM00001", quantity, type, price(price));
+    }
+
+    private BigDecimal stored(String column, String userId) {
+        return jdbcTemplate.queryForObject("select " + column + " from users where id = ?", BigDecimal.class, userId);
+    }
+
+    @Test
+    void sellsAtAnUnevenAverageMatchTheStoredCents() {
+        String userId = "ledger-" + UUID.randomUUID();
+        fundsController.deposit(jwt(userId), new BigDecimal("1000.005"));
+        // Average 302 / 3 = 100.6667
+        trade(userId, Transaction.TransactionType.BUY, 1, "100.00");
+        trade(userId, Transaction.TransactionType.BUY, 1, "101.00");
+        trade(userId, Transaction.TransactionType.BUY, 1, "101.00");
+        // 0.3333 is stored as 0.33, then 0.33 - 0.1667 as 0.16
+        trade(userId, Transaction.TransactionType.SELL, 1, "101.00");
+        trade(userId, Transaction.TransactionType.SELL, 1, "100.50");
+        assertThat(stored("realized_pnl", userId)).isEqualByComparingTo("0.16");
+        assertThat(stored("cash_balance", userId)).isEqualByComparingTo("899.51");
+
+        LedgerAuditDTO audit = ledgerService.audit(userId);
+        assertThat(audit.getDifferences()).isEmpty();
+        assertThat(audit.getLedgerRealizedPnL()).isEqualByComparingTo("0.16");
+
+        // A checkpoint keeps the amounts in units, and a replay from it still matches
+        assertThat(ledgerService.run(false)).isTrue();
+        Map<String, Object> checkpoint = jdbcTemplate.queryForMap("select cash_balance_units, realized_pnl_units"
+                + " from ledger_checkpoints where user_id = ?", userId);
+        assertThat(checkpoint.get("cash_balance_units")).isEqualTo(8_995_100L);
+        assertThat(checkpoint.get("realized_pnl_units")).isEqualTo(1_600L);
+
+        trade(userId, Transaction.TransactionType.SELL, 1, "100.99");
+        fundsController.withdraw(jwt(userId), new BigDecimal("0.005"));
+        audit = ledgerService.audit(userId);
+        assertThat(audit.getCheckpointTransactionId()).isNotNull();
+        assertThat(audit.getTransactionsReplayed()).isEqualTo(2);
+        assertThat(audit.getDifferences()).isEmpty();
+        assertThat(audit.getStoredRealizedPnL()).isEqualByComparingTo("0.48");
+    }
+
+    @Test
+    void auditsWhileTheUserTradesSeeNoDrift() throws Exception {
+        String userId = "ledger-" + UUID.randomUUID();
+        fundsController.deposit(jwt(userId), new BigDecimal("100000"));
+
+        AtomicBoolean trading = new AtomicBoolean(true);
+        Thread trader = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (trading.get()) {
+                String price = (100 + random.nextInt(300)) + "." + (10 + random.nextInt(90));
+                try {
+                    trade(userId, random.nextInt(3) == 0 ? Transaction.TransactionType.SELL
+                            : Transaction.TransactionType.BUY, 1 + random.nextInt(3), price);
+                } catch (RuntimeException e) {
+                    // Selling more than is held
+                }
+            }
+        });
+        trader.start();
+
+        // Single-user audits, and now and then a full run, which also moves the checkpoint along
+        ConcurrentLinkedQueue<String> drift = new ConcurrentLinkedQueue<>();
+        AtomicInteger audits = new AtomicInteger();
+        long runsDrifted = 0;
+        try {
+            long until = System.currentTimeMillis() + 3000;
+            while (System.currentTimeMillis() < until) {
+                LedgerAuditDTO audit = ledgerService.audit(userId);
+                drift.addAll(audit.getDifferences());
+                if (audits.incrementAndGet() % 5 == 0) {
+                    ledgerService.run(false);
+                    runsDrifted += (long) ledgerService.stats().get("usersDrifted");
+                }
+            }
+        } finally {
+            trading.set(false);
+            trader.join();
+        }
+        assertThat(audits.get()).isGreaterThanOrEqualTo(5);
+        assertThat(drift).isEmpty();
+        assertThat(runsDrifted).isZero();
+        // The user really traded throughout
+        assertThat(jdbcTemplate.queryForObject("select count(*) from transactions where user_id = ?", Long.class,
+                userId)).isGreaterThan(10);
+        assertThat(ledgerService.audit(userId).getConsistent()).isTrue();
+    }
+}
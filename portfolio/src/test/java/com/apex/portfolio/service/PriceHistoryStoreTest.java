@@ -0,0 +1,121 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.CandleDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriceHistoryStoreTest {
+
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    @TempDir
+    Path directory;
+
+    // Every field carries the same value, so a torn read shows up as a mismatch
+    private static CandleDTO candle(LocalDate date, double value) {
+        return new CandleDTO(date, value, value, value, value, value);
+    }
+
+    private static List<CandleDTO> days(int count) {
+        List<CandleDTO> candles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            candles.add(candle(START.plusDays(i), i));
+        }
+        return candles;
+    }
+
+    @Test
+    void growingKeepsEveryRowAcrossRestarts() throws Exception {
+        PriceHistoryStore store = new PriceHistoryStore(directory.toString());
+        // Past the initial 512 twice
+        store.append("AAPL", days(1500));
+        assertThat(store.range("AAPL", START, START.plusDays(1500))).hasSize(1500);
+        store.flush();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).hasSize(1);
+        }
+        PriceHistoryStore reopened = new PriceHistoryStore(directory.toString());
+        List<CandleDTO> candles = reopened.range("AAPL", START, START.plusDays(1500));
+        assertThat(candles).hasSize(1500);
+        for (int i = 0; i < candles.size(); i++) {
+            assertThat(candles.get(i)).isEqualTo(candle(START.plusDays(i), i));
+        }
+    }
+
+    @Test
+    void aFileInterruptedWhileGrowingIsDiscarded() throws Exception {
+        PriceHistoryStore store = new PriceHistoryStore(directory.toString());
+        store.append("AAPL", days(10));
+        store.flush();
+        // Extended but the capacity never written
+        Path file;
+        try (Stream<Path> files = Files.list(directory)) {
+            file = files.findFirst().orElseThrow();
+        }
+        Files.write(file, new byte[64], StandardOpenOption.APPEND);
+
+        PriceHistoryStore reopened = new PriceHistoryStore(directory.toString());
+        assertThat(reopened.contains("AAPL")).isFalse();
+        reopened.append("AAPL", days(3));
+        assertThat(reopened.latest("AAPL")).isEqualTo(candle(START.plusDays(2), 2));
+        reopened.flush();
+
+        // Back to a consistent size, so the next start keeps it
+        PriceHistoryStore again = new PriceHistoryStore(directory.toString());
+        assertThat(again.range("AAPL", START, START.plusDays(10))).hasSize(3);
+    }
+
+    @Test
+    void readersNeverSeeATornCandle() throws Exception {
+        PriceHistoryStore store = new PriceHistoryStore(directory.toString());
+        store.append("AAPL", days(1));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<CandleDTO> torn = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                CandleDTO latest = store.latest("AAPL");
+                double v = latest.getOpen();
+                if (latest.getHigh() != v || latest.getLow() != v || latest.getClose() != v
+                        || latest.getPrevClose() != v) {
+                    torn.set(latest);
+                }
+                for (CandleDTO c : store.range("AAPL", START, START.plusDays(5000))) {
+                    if (c.getClose() != c.getOpen()) {
+                        torn.set(c);
+                    }
+                }
+            }
+        });
+        reader.start();
+        // Same-day rewrites interleaved with growth
+        LocalDate day = START;
+        for (int i = 1; i <= 2000; i++) {
+            if (i % 100 == 0) {
+                List<CandleDTO> more = new ArrayList<>();
+                for (int j = 0; j < 300; j++) {
+                    day = day.plusDays(1);
+                    more.add(candle(day, j));
+                }
+                store.append("AAPL", more);
+            }
+            store.append("AAPL", List.of(candle(day, i)));
+        }
+        done.set(true);
+        reader.join();
+        assertThat(torn.get()).isNull();
+        assertThat(store.range("AAPL", START, day)).hasSize(1 + 20 * 300);
+    }
+}
@@ -0,0 +1,106 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.controller.FundsController;
+import com.apex.portfolio.dto.TradeQuoteDTO;
+import com.apex.portfolio.model.Transaction;
+import com.apex.portfolio.repository.HoldingRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@ActiveProfiles({"test", "simulator"})
+class QuoteTokenServiceTest {
+
+    private static final String SECRET = "quote-token-test-secret";
+
+    @Autowired
+    private StockPriceService stockPriceService;
+    @Autowired
+    private TradeService tradeService;
+    @Autowired
+    private FundsController fundsController;
+    @Autowired
+    private HoldingRepository holdingRepository;
+    @Autowired
+    private UserTransactionExecutor userExecutor;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // An instance as another app server would run it: same secret, its own memory of redeemed nonces
+    private QuoteTokenService instance() {
+        return new QuoteTokenService(stockPriceService, tradeService, dataSource, SECRET, 60);
+    }
+
+    private static Jwt jwt(String userId) {
+        return Jwt.withTokenValue("test").header("alg", "none").subject(userId).build();
+    }
+
+    private int held(String userId) {
+        return holdingRepository.findByUserIdAndSymbol(userId, "SIM00001").map(h -> h.getQuantity()).orElse(0);
+    }
+
+    @Test
+    void aQuoteExecutesOnce() {
+        String userId = "quote-" + UUID.randomUUID();
+        fundsController.deposit(jwt(userId), new BigDecimal("100000"));
+        QuoteTokenService quotes = instance();
+        TradeQuoteDTO quote = quotes.quote(userId, "SIM00001", 3, Transaction.TransactionType.BUY);
+
+        TradeQuoteDTO executed = quotes.execute(userId, quote.getToken());
+        assertThat(executed.getPrice()).isEqualByComparingTo(quote.getPrice());
+        assertThat(held(userId)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from redeemed_quotes where user_id = ?", Long.class,
+                userId)).isEqualTo(1);
+
+        // Refused by the same instance from memory
+        assertThatThrownBy(() -> quotes.execute(userId, quote.getToken())).hasMessage("Quote already used");
+        assertThat(held(userId)).isEqualTo(3);
+    }
+
+    @Test
+    void aReplayOnAnotherInstanceIsRefusedByTheDatabaseWithoutRetrying() {
+        String userId = "quote-" + UUID.randomUUID();
+        fundsController.deposit(jwt(userId), new BigDecimal("100000"));
+        TradeQuoteDTO quote = instance().quote(userId, "SIM00001", 2, Transaction.TransactionType.BUY);
+        instance().execute(userId, quote.getToken());
+
+        QuoteTokenService other = instance();
+        long retriesBefore = (long) userExecutor.stats().get("retries");
+        assertThatThrownBy(() -> other.execute(userId, quote.getToken()))
+                .isInstanceOf(QuoteTokenService.QuoteAlreadyUsedException.class);
+        assertThat((long) userExecutor.stats().get("retries")).isEqualTo(retriesBefore);
+        Map<String, Object> stats = other.stats();
+        assertThat(stats.get("replaysCaughtByDatabase")).isEqualTo(1L);
+        assertThat(held(userId)).isEqualTo(2);
+    }
+
+    @Test
+    void aRolledBackTradeLeavesTheQuoteUsable() {
+        String userId = "quote-" + UUID.randomUUID();
+        QuoteTokenService quotes = instance();
+        TradeQuoteDTO quote = quotes.quote(userId, "SIM00001", 1, Transaction.TransactionType.BUY);
+
+        // No cash yet: the trade fails and takes the redemption with it
+        assertThatThrownBy(() -> quotes.execute(userId, quote.getToken())).hasMessageStartingWith("Insufficient");
+        assertThat(jdbcTemplate.queryForObject("select count(*) from redeemed_quotes where user_id = ?", Long.class,
+                userId)).isZero();
+
+        fundsController.deposit(jwt(userId), new BigDecimal("100000"));
+        quotes.execute(userId, quote.getToken());
+        assertThat(held(userId)).isEqualTo(1);
+    }
+}
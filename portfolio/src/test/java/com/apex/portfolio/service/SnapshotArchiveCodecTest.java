@@ -0,0 +1,206 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.model.PortfolioSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotArchiveCodecTest {
+
+    private static final String USER = "user-1";
+
+    // A year of daily rows with market-sized moves: value and unrealized P&L change every
+    // day, invested and cash only on trade days, realized P&L rarely; weekends are gaps
+    private static List<PortfolioSnapshot> year(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<PortfolioSnapshot> rows = new ArrayList<>();
+        long invested = 40_000_00;
+        long cash = 10_000_00;
+        long realized = 0;
+        long value = 52_000_00;
+        LocalDate date = LocalDate.of(2025, 1, 1);
+        for (int i = 0; rows.size() < 365; i++, date = date.plusDays(1)) {
+            if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+            value += random.nextLong(-1_500_00, 1_500_00);
+            if (random.nextInt(10) == 0) {
+                long traded = random.nextLong(-2_000_00, 2_000_00);
+                invested += traded;
+                cash -= traded;
+            }
+            if (random.nextInt(40) == 0) {
+                realized += random.nextLong(-500_00, 800_00);
+            }
+            rows.add(PortfolioSnapshot.builder()
+                    .userId(USER)
+                    .date(date)
+                    .totalValue(cents(value + cash))
+                    .investedAmount(cents(invested))
+                    .cashBalance(cents(cash))
+                    .unrealizedPnL(cents(value - invested))
+                    .realizedPnL(cents(realized))
+                    .build());
+        }
+        return rows;
+    }
+
+    private static BigDecimal cents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static void assertSameRows(List<PortfolioSnapshot> actual, List<PortfolioSnapshot> expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            PortfolioSnapshot a = actual.get(i);
+            PortfolioSnapshot e = expected.get(i);
+            assertThat(a.getUserId()).isEqualTo(USER);
+            assertThat(a.getDate()).isEqualTo(e.getDate());
+            assertThat(a.getTotalValue()).isEqualByComparingTo(e.getTotalValue());
+            assertThat(a.getInvestedAmount()).isEqualByComparingTo(e.getInvestedAmount());
+            assertThat(a.getCashBalance()).isEqualByComparingTo(e.getCashBalance());
+            assertThat(a.getUnrealizedPnL()).isEqualByComparingTo(e.getUnrealizedPnL());
+            assertThat(a.getRealizedPnL()).isEqualByComparingTo(e.getRealizedPnL());
+        }
+    }
+
+    @Test
+    void roundTripsAYearOfRows() {
+        List<PortfolioSnapshot> rows = year(42);
+        assertSameRows(SnapshotArchiveCodec.decode(USER, SnapshotArchiveCodec.encode(USER, rows)), rows);
+    }
+
+    @Test
+    void aYearEncodesToAtMostFifteenBytesPerRow() {
+        for (long seed = 1; seed <= 20; seed++) {
+            List<PortfolioSnapshot> rows = year(seed);
+            byte[] encoded = SnapshotArchiveCodec.encode(USER, rows);
+            assertThat(encoded.length).isLessThanOrEqualTo(rows.size() * 15);
+        }
+    }
+
+    @Test
+    void roundTripsNullColumnsNegativeDeltasAndGaps() {
+        List<PortfolioSnapshot> rows = List.of(
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2024, 2, 28))
+                        .totalValue(new BigDecimal("100.00")).cashBalance(new BigDecimal("-5.25"))
+                        .realizedPnL(new BigDecimal("0.00")).build(),
+                // Leap day, then a long gap; every amount falls, some below zero
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2024, 2, 29))
+                        .totalValue(new BigDecimal("-3.1234")).investedAmount(new BigDecimal("12.50"))
+                        .cashBalance(new BigDecimal("-999999.99")).unrealizedPnL(new BigDecimal("-0.01"))
+                        .realizedPnL(new BigDecimal("-42.00")).build(),
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2025, 3, 1)).build(),
+                // Same day twice is kept (the codec only requires date order)
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2025, 3, 1))
+                        .unrealizedPnL(new BigDecimal("123456789.1234")).build(),
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2069, 12, 31))
+                        .totalValue(new BigDecimal("0.0001")).build());
+        List<PortfolioSnapshot> decoded = SnapshotArchiveCodec.decode(USER, SnapshotArchiveCodec.encode(USER, rows));
+
+        assertThat(decoded).hasSize(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            PortfolioSnapshot expected = rows.get(i);
+            PortfolioSnapshot actual = decoded.get(i);
+            assertThat(actual.getDate()).isEqualTo(expected.getDate());
+            assertThat(Arrays.asList(actual.getTotalValue(), actual.getInvestedAmount(), actual.getCashBalance(),
+                    actual.getUnrealizedPnL(), actual.getRealizedPnL()))
+                    .usingElementComparator((a, b) -> a == null || b == null ? (a == b ? 0 : 1) : a.compareTo(b))
+                    .containsExactly(expected.getTotalValue(), expected.getInvestedAmount(),
+                            expected.getCashBalance(), expected.getUnrealizedPnL(), expected.getRealizedPnL());
+        }
+        // An all-null row costs its day gap and mask only
+        assertThat(decoded.get(2).getTotalValue()).isNull();
+    }
+
+    @Test
+    void roundTripsDatesBeforeTheEpoch() {
+        List<PortfolioSnapshot> rows = List.of(
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(1965, 6, 1))
+                        .totalValue(new BigDecimal("1.00")).build(),
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(1970, 1, 2))
+                        .totalValue(new BigDecimal("2.00")).build());
+        assertThat(SnapshotArchiveCodec.decode(USER, SnapshotArchiveCodec.encode(USER, rows)))
+                .extracting(PortfolioSnapshot::getDate)
+                .containsExactly(LocalDate.of(1965, 6, 1), LocalDate.of(1970, 1, 2));
+    }
+
+    @Test
+    void roundTripsAnEmptyList() {
+        byte[] encoded = SnapshotArchiveCodec.encode(USER, List.of());
+        assertThat(encoded).hasSize(2);
+        assertThat(SnapshotArchiveCodec.decode(USER, encoded)).isEmpty();
+    }
+
+    @Test
+    void rejectsRowsOutOfDateOrder() {
+        List<PortfolioSnapshot> rows = List.of(
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2025, 1, 2)).build(),
+                PortfolioSnapshot.builder().userId(USER).date(LocalDate.of(2025, 1, 1)).build());
+        assertThatThrownBy(() -> SnapshotArchiveCodec.encode(USER, rows))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsEveryTruncation() {
+        byte[] encoded = SnapshotArchiveCodec.encode(USER, year(7).subList(0, 30));
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, truncated))
+                    .as("truncated to %d of %d bytes", length, encoded.length)
+                    .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        byte[] encoded = SnapshotArchiveCodec.encode(USER, year(7).subList(0, 3));
+
+        // Unknown version
+        byte[] version = encoded.clone();
+        version[0] = 9;
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, version))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Trailing garbage
+        byte[] trailing = Arrays.copyOf(encoded, encoded.length + 1);
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, trailing))
+                .isInstanceOf(IllegalStateException.class);
+
+        // A row count far beyond the data
+        byte[] count = { 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0, 0, 0 };
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, count))
+                .isInstanceOf(IllegalStateException.class);
+
+        // A varint that never ends, and one wider than 64 bits
+        byte[] endless = new byte[16];
+        endless[0] = 1;
+        Arrays.fill(endless, 1, endless.length, (byte) 0x80);
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, endless))
+                .isInstanceOf(IllegalStateException.class);
+        byte[] wide = { 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F, 0, 0 };
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, wide))
+                .isInstanceOf(IllegalStateException.class);
+
+        // A null mask with bits for columns that do not exist: one row, day 0, no gap, mask 0x20
+        byte[] mask = { 1, 1, 0, 0, 0x20 };
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, mask))
+                .isInstanceOf(IllegalStateException.class);
+
+        // A first day outside LocalDate's range
+        byte[] day = { 1, 1, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, 0x7F, 0, 0 };
+        assertThatThrownBy(() -> SnapshotArchiveCodec.decode(USER, day))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
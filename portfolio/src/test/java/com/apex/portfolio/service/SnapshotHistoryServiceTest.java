@@ -0,0 +1,75 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.model.PortfolioSnapshot;
+import com.apex.portfolio.repository.PortfolioSnapshotRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"test", "simulator"})
+class SnapshotHistoryServiceTest {
+
+    @Autowired
+    private SnapshotHistoryService historyService;
+    @Autowired
+    private SnapshotArchiveService archiveService;
+    @Autowired
+    private PortfolioSnapshotRepository snapshotRepository;
+
+    private void save(String userId, LocalDate date, String value) {
+        BigDecimal amount = new BigDecimal(value);
+        snapshotRepository.save(PortfolioSnapshot.builder()
+                .userId(userId)
+                .date(date)
+                .totalValue(amount)
+                .investedAmount(BigDecimal.ZERO)
+                .cashBalance(amount)
+                .unrealizedPnL(BigDecimal.ZERO)
+                .realizedPnL(BigDecimal.ZERO)
+                .build());
+    }
+
+    private long stat(String name) {
+        return (Long) archiveService.stats().get(name);
+    }
+
+    @Test
+    void theArchiveIsOnlyDecodedWhenItHoldsOlderDays() {
+        String userId = "history-" + UUID.randomUUID();
+        LocalDate today = LocalDate.now();
+        save(userId, today.minusDays(200), "100");
+        save(userId, today.minusDays(199), "110");
+        save(userId, today, "120");
+
+        // No archive yet: the whole history comes from the table
+        long reads = stat("archiveReads");
+        assertThat(historyService.getSnapshots(userId, null, null)).hasSize(3);
+        assertThat(stat("archiveReads")).isEqualTo(reads);
+
+        archiveService.archiveOldSnapshots();
+        assertThat(historyService.getSnapshots(userId, null, null))
+                .extracting(PortfolioSnapshot::getDate)
+                .containsExactly(today.minusDays(200), today.minusDays(199), today);
+        assertThat(stat("archiveReads")).isEqualTo(reads + 1);
+
+        // A range the table covers never looks at the archive
+        long skips = stat("archiveSkips");
+        assertThat(historyService.getSnapshots(userId, today, null)).hasSize(1);
+        assertThat(stat("archiveReads")).isEqualTo(reads + 1);
+        assertThat(stat("archiveSkips")).isEqualTo(skips);
+
+        // One starting after the archived days end only checks their date range
+        assertThat(historyService.getSnapshots(userId, today.minusDays(10), null)).hasSize(1);
+        assertThat(historyService.getSnapshots(userId, today.minusDays(150), today.minusDays(100))).isEmpty();
+        assertThat(stat("archiveReads")).isEqualTo(reads + 1);
+        assertThat(stat("archiveSkips")).isEqualTo(skips + 2);
+    }
+}
@@ -0,0 +1,85 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.controller.FundsController;
+import com.apex.portfolio.model.PortfolioSnapshot;
+import com.apex.portfolio.model.Transaction;
+import com.apex.portfolio.repository.PortfolioSnapshotRepository;
+import com.apex.portfolio.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles({"test", "simulator"})
+class SnapshotServiceTest {
+
+    @Autowired
+    private SnapshotService snapshotService;
+    @Autowired
+    private SnapshotJob snapshotJob;
+    @Autowired
+    private TradeService tradeService;
+    @Autowired
+    private FundsController fundsController;
+    @Autowired
+    private PortfolioSnapshotRepository snapshotRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private static Jwt jwt(String userId) {
+        return Jwt.withTokenValue("test").header("alg", "none").subject(userId).build();
+    }
+
+    private void buy(String userId, int quantity, String price) {
+        tradeService.executeAtPrice(userId, "SIM00001", quantity, Transaction.TransactionType.BUY,
+                FixedPoint.of(new BigDecimal(price)));
+    }
+
+    private List<PortfolioSnapshot> today(String userId) {
+        return snapshotRepository.findByUserIdAndDateBetweenOrderByDateAsc(userId, LocalDate.now(), LocalDate.now());
+    }
+
+    @Test
+    void tradesOnOneDayLeaveOneRowWithTheLatestValues() {
+        String userId = "snapshot-" + UUID.randomUUID();
+        fundsController.deposit(jwt(userId), new BigDecimal("10000"));
+        buy(userId, 2, "100.00");
+        snapshotService.flushPending();
+        assertThat(today(userId)).hasSize(1);
+
+        buy(userId, 3, "50.00");
+        snapshotService.flushPending();
+
+        List<PortfolioSnapshot> rows = today(userId);
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).getCashBalance()).isEqualByComparingTo("9650.00");
+        assertThat(rows.get(0).getCashBalance())
+                .isEqualByComparingTo(userRepository.findById(userId).orElseThrow().getCashBalance());
+        assertThat(rows.get(0).getRealizedPnL()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    void theNightlyJobAndAPerUserWriteShareTheDaysRow() {
+        String userId = "snapshot-" + UUID.randomUUID();
+        fundsController.deposit(jwt(userId), new BigDecimal("500"));
+        snapshotService.flushPending();
+        assertThat(snapshotJob.run(LocalDate.now())).isTrue();
+        assertThat(today(userId)).hasSize(1);
+
+        // A per-user write after the job updates the job's row rather than adding one
+        fundsController.deposit(jwt(userId), new BigDecimal("250"));
+        snapshotService.flushPending();
+        List<PortfolioSnapshot> rows = today(userId);
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0).getCashBalance()).isEqualByComparingTo("750");
+    }
+}
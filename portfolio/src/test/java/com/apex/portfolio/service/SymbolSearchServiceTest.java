@@ -0,0 +1,65 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.dto.SymbolMatchDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SymbolSearchServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private SymbolSearchService load(String... lines) throws Exception {
+        Path file = directory.resolve("symbols.csv");
+        Files.write(file, List.of(lines));
+        SymbolSearchService service = new SymbolSearchService(file.toString());
+        service.load();
+        return service;
+    }
+
+    private static List<String> symbols(List<SymbolMatchDTO> matches) {
+        return matches.stream().map(SymbolMatchDTO::getSymbol).toList();
+    }
+
+    @Test
+    void quotedNamesKeepTheirCommas() throws Exception {
+        SymbolSearchService service = load(
+                "symbol,name,exchange",
+                "AAPL,\"Apple, Inc.\",NASDAQ",
+                "BRK-B,\"Berkshire \"\"B\"\" Hathaway, Inc.\",NYSE",
+                "MSFT,Microsoft Corp,NASDAQ");
+
+        assertThat(service.size()).isEqualTo(3);
+        assertThat(service.search("aapl", 5)).singleElement().satisfies(match -> {
+            assertThat(match.getName()).isEqualTo("Apple, Inc.");
+            assertThat(match.getExchange()).isEqualTo("NASDAQ");
+        });
+        assertThat(service.search("berkshire", 5).get(0).getName()).isEqualTo("Berkshire \"B\" Hathaway, Inc.");
+    }
+
+    @Test
+    void prefixMatchesRankAheadOfTypos() throws Exception {
+        SymbolSearchService service = load(
+                "symbol,name,exchange",
+                "RELIANCE.NS,Reliance Industries Ltd,NSE",
+                "RELAXO.NS,Relaxo Footwears Ltd,NSE",
+                "INFY.NS,Infosys Ltd,NSE",
+                "TCS.NS,Tata Consultancy Services Ltd,NSE");
+
+        assertThat(symbols(service.search("rel", 5))).containsExactly("RELAXO.NS", "RELIANCE.NS");
+        assertThat(symbols(service.search("tcs", 5))).containsExactly("TCS.NS");
+        // Fuzzy only within keys sharing the first letter
+        assertThat(symbols(service.search("relaince", 5))).containsExactly("RELIANCE.NS");
+        assertThat(symbols(service.search("infosis", 5))).containsExactly("INFY.NS");
+        assertThat(service.search("xnfosys", 5)).isEmpty();
+        // Buffers are reused, so a query leaves nothing behind for the next one
+        assertThat(symbols(service.search("tata", 5))).containsExactly("TCS.NS");
+        assertThat(symbols(service.search("rel", 1))).containsExactly("RELAXO.NS");
+    }
+}
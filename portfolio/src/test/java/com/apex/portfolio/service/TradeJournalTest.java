@@ -0,0 +1,109 @@
+package com.apex.portfolio.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TradeJournalTest {
+
+    // Room for a few entries per segment
+    private static final int SEGMENT_BYTES = 256;
+
+    @TempDir
+    Path directory;
+
+    private TradeJournal open() {
+        return new TradeJournal(directory.toString(), SEGMENT_BYTES, false);
+    }
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static List<TradeJournal.Entry> replay(TradeJournal journal) {
+        List<TradeJournal.Entry> entries = new ArrayList<>();
+        journal.replay(entries::add);
+        return entries;
+    }
+
+    @Test
+    void sequencesContinueAcrossRestarts() {
+        TradeJournal journal = open();
+        for (int i = 0; i < 10; i++) {
+            assertThat(journal.append("key-" + i, "user-1", "AAPL", true, i + 1).getSequence()).isEqualTo(i + 1);
+        }
+        journal.close();
+
+        TradeJournal reopened = open();
+        assertThat(replay(reopened)).extracting(TradeJournal.Entry::getSequence)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(reopened.append("key-10", "user-1", "AAPL", false, 1).getSequence()).isEqualTo(11);
+        reopened.close();
+    }
+
+    @Test
+    void anEmptyNewestSegmentKeepsItsSequences() throws Exception {
+        // Fill segments until the active one is fresh and empty, then retire everything before it
+        TradeJournal journal = open();
+        List<TradeJournal.Entry> appended = new ArrayList<>();
+        do {
+            appended.add(journal.append("key-" + appended.size(), "user-1", "AAPL", true, 1));
+        } while (segmentFiles() < 3);
+        TradeJournal.Entry last = appended.remove(appended.size() - 1);
+        appended.forEach(journal::markApplied);
+        assertThat(journal.retire(Long.MAX_VALUE)).hasSize(2);
+        journal.close();
+
+        // Only the segment holding the last entry is left; drop its entry as if it never made it
+        Path remaining;
+        try (Stream<Path> files = Files.list(directory)) {
+            remaining = files.findFirst().orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(remaining);
+        Files.write(remaining, Arrays.copyOf(bytes, 8));
+        Files.write(remaining, new byte[SEGMENT_BYTES - 8], StandardOpenOption.APPEND);
+
+        TradeJournal reopened = open();
+        assertThat(replay(reopened)).isEmpty();
+        // New entries start at the segment's first sequence, never back at one
+        assertThat(reopened.append("key-next", "user-1", "AAPL", true, 1).getSequence())
+                .isEqualTo(last.getSequence());
+        // And rotating out of it opens a new file rather than reusing one
+        long sequence = last.getSequence();
+        for (int i = 0; i < 10; i++) {
+            sequence = reopened.append("key-more-" + i, "user-1", "AAPL", true, 1).getSequence();
+        }
+        assertThat(sequence).isEqualTo(last.getSequence() + 10);
+        reopened.close();
+
+        TradeJournal again = open();
+        assertThat(replay(again)).extracting(TradeJournal.Entry::getSequence)
+                .startsWith(last.getSequence()).doesNotHaveDuplicates().isSorted();
+        again.close();
+    }
+
+    @Test
+    void anUnrecognisedSegmentIsSkippedAndItsSequencesAreNotReused() throws Exception {
+        TradeJournal journal = open();
+        journal.append("key-0", "user-1", "AAPL", true, 1);
+        journal.close();
+        // A later segment with a damaged header
+        Files.write(directory.resolve(String.format("%020d", 50) + ".journal"), new byte[SEGMENT_BYTES]);
+
+        TradeJournal reopened = open();
+        assertThat(replay(reopened)).hasSize(1);
+        assertThat(reopened.append("key-1", "user-1", "AAPL", true, 1).getSequence()).isGreaterThan(50);
+        reopened.close();
+    }
+}
@@ -0,0 +1,276 @@
+package com.apex.portfolio.service;
+
+import com.apex.portfolio.controller.FundsController;
+import com.apex.portfolio.model.Holding;
+import com.apex.portfolio.model.Transaction;
+import com.apex.portfolio.repository.HoldingRepository;
+import com.apex.portfolio.repository.TransactionRepository;
+import com.apex.portfolio.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent buys, sells, deposits and withdrawals against one user through two "instances": the
+ * application's executor and a second one with its own lock stripes, sharing the database
+ * the way two app servers would. In-process locking serializes each instance's work; only
+ * the {@code @Version} columns keep the two instances from overwriting each other.
+ */
+@SpringBootTest
+@ActiveProfiles({"test", "simulator"})
+class UserTransactionExecutorStressTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String[] SYMBOLS = {"SIM00001", "SIM00002", "SIM00003"};
+    private static final long[] PRICES = {FixedPoint.of(new BigDecimal("10.01")),
+            FixedPoint.of(new BigDecimal("12.34")), FixedPoint.of(new BigDecimal("9.99"))};
+
+    @Autowired
+    private UserTransactionExecutor userExecutor;
+    @Autowired
+    private TradeService tradeService;
+    @Autowired
+    private FundsController fundsController;
+    @Autowired
+    private HoldingRepository holdingRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private StockPriceService stockPriceService;
+    @Autowired
+    private PriceWarmer priceWarmer;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static Jwt jwt(String userId) {
+        return Jwt.withTokenValue("test").header("alg", "none").subject(userId).build();
+    }
+
+    @Test
+    void sameUserFromTwoInstancesStaysConsistent() throws Exception {
+        String userId = "stress-" + UUID.randomUUID();
+        UserTransactionExecutor otherExecutor = new UserTransactionExecutor(transactionManager, 1024, MAX_ATTEMPTS);
+        TradeService otherTradeService = new TradeService(holdingRepository, transactionRepository, userRepository,
+                stockPriceService, priceWarmer, eventPublisher, otherExecutor);
+        FundsController otherFunds = new FundsController(userRepository, transactionRepository, eventPublisher,
+                otherExecutor);
+        fundsController.deposit(jwt(userId), new BigDecimal("5000.00"));
+
+        Map<String, Object> before = userExecutor.stats();
+        int threads = 8;
+        int operations = 150;
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger exhausted = new AtomicInteger();
+        ConcurrentLinkedQueue<String> unexpected = new ConcurrentLinkedQueue<>();
+
+        // Watches the stored balance for the whole run, not just at the end
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lowestCash = new AtomicLong(Long.MAX_VALUE);
+        Thread watcher = new Thread(() -> {
+            while (running.get()) {
+                BigDecimal cash = jdbcTemplate.queryForObject("select cash_balance from users where id = ?",
+                        BigDecimal.class, userId);
+                lowestCash.accumulateAndGet(FixedPoint.of(cash), Math::min);
+            }
+        });
+        watcher.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            boolean first = t % 2 == 0;
+            TradeService trades = first ? tradeService : otherTradeService;
+            FundsController funds = first ? fundsController : otherFunds;
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < operations; i++) {
+                    int s = random.nextInt(SYMBOLS.length);
+                    int quantity = 1 + random.nextInt(20);
+                    int op = random.nextInt(6);
+                    try {
+                        if (op == 5) {
+                            funds.deposit(jwt(userId), BigDecimal.valueOf(1 + random.nextInt(200)));
+                            succeeded.incrementAndGet();
+                        } else if (op == 4) {
+                            ResponseEntity<String> response = funds.withdraw(jwt(userId),
+                                    BigDecimal.valueOf(1 + random.nextInt(200)));
+                            if (response.getStatusCode().is2xxSuccessful()) {
+                                succeeded.incrementAndGet();
+                            } else {
+                                rejected.incrementAndGet();
+                            }
+                        } else {
+                            Transaction.TransactionType type = op < 2
+                                    ? Transaction.TransactionType.BUY : Transaction.TransactionType.SELL;
+                            trades.executeAtPrice(userId, SYMBOLS[s], quantity, type, PRICES[s]);
+                            succeeded.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        String message = String.valueOf(e.getMessage());
+                        if (message.startsWith("Concurrent update")) {
+                            exhausted.incrementAndGet();
+                        } else if (message.startsWith("Insufficient") || message.startsWith("Cannot sell")) {
+                            rejected.incrementAndGet();
+                        } else {
+                            unexpected.add(e.toString());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+        running.set(false);
+        watcher.join();
+
+        assertThat(unexpected).isEmpty();
+        assertThat(succeeded.get()).isGreaterThan(threads * operations / 10);
+        assertThat(rejected.get()).isPositive();
+        assertThat(lowestCash.get()).isNotNegative();
+
+        // The two instances collided, retried, and never past the attempt limit
+        long executions = delta(userExecutor.stats(), before, "executions")
+                + (long) otherExecutor.stats().get("executions");
+        long retries = delta(userExecutor.stats(), before, "retries") + (long) otherExecutor.stats().get("retries");
+        long gaveUp = delta(userExecutor.stats(), before, "exhausted") + (long) otherExecutor.stats().get("exhausted");
+        assertThat(retries).isPositive();
+        assertThat(retries).isLessThanOrEqualTo(executions * (MAX_ATTEMPTS - 1));
+        assertThat(gaveUp).isEqualTo(exhausted.get());
+
+        assertReconciles(userId);
+    }
+
+    // Cash and every position equal what the user's transaction rows add up to
+    private void assertReconciles(String userId) {
+        BigDecimal cash = BigDecimal.ZERO;
+        Map<String, Integer> quantities = new HashMap<>();
+        for (Transaction tx : transactionRepository.findByUserId(userId)) {
+            BigDecimal value = BigDecimal.valueOf(tx.getPrice()).multiply(BigDecimal.valueOf(tx.getQuantity()));
+            switch (tx.getType()) {
+                case DEPOSIT:
+                    cash = cash.add(value);
+                    break;
+                case WITHDRAWAL:
+                    cash = cash.subtract(value);
+                    break;
+                case BUY:
+                    cash = cash.subtract(value);
+                    quantities.merge(tx.getSymbol(), tx.getQuantity(), Integer::sum);
+                    break;
+                case SELL:
+                    cash = cash.add(value);
+                    quantities.merge(tx.getSymbol(), -tx.getQuantity(), Integer::sum);
+                    break;
+                default:
+                    throw new AssertionError("Unexpected transaction " + tx.getType());
+            }
+        }
+        assertThat(cash.signum()).isNotNegative();
+        assertThat(userRepository.findById(userId).orElseThrow().getCashBalance()).isEqualByComparingTo(cash);
+
+        Map<String, Integer> held = new HashMap<>();
+        for (Holding holding : holdingRepository.findByUserId(userId)) {
+            assertThat(holding.getQuantity()).isPositive();
+            held.put(holding.getSymbol(), holding.getQuantity());
+        }
+        quantities.values().removeIf(q -> q == 0);
+        assertThat(held).isEqualTo(quantities);
+    }
+
+    private static long delta(Map<String, Object> after, Map<String, Object> before, String counter) {
+        return (long) after.get(counter) - (long) before.get(counter);
+    }
+
+    @Test
+    void differentUsersRunInParallelAndOneUserDoesNot() throws Exception {
+        int users = 6;
+        // Ids on distinct lock stripes
+        List<String> userIds = new ArrayList<>();
+        Set<Integer> stripes = new HashSet<>();
+        while (userIds.size() < users) {
+            String userId = "parallel-" + UUID.randomUUID();
+            if (stripes.add(Math.floorMod(userId.hashCode(), 1024))) {
+                userIds.add(userId);
+            }
+        }
+
+        // Every user's transaction waits inside the lock until all of them are in: this only
+        // completes if the users hold their locks and connections at the same time
+        CountDownLatch allInside = new CountDownLatch(users);
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        List<Future<Boolean>> met = new ArrayList<>();
+        for (String userId : userIds) {
+            met.add(pool.submit(() -> userExecutor.execute(userId, tx -> {
+                allInside.countDown();
+                try {
+                    return allInside.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            })));
+        }
+        for (Future<Boolean> future : met) {
+            assertThat(future.get(30, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // The same work for one user never overlaps
+        String userId = userIds.get(0);
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger mostInside = new AtomicInteger();
+        List<Future<?>> serial = new ArrayList<>();
+        for (int i = 0; i < users * 20; i++) {
+            serial.add(pool.submit(() -> userExecutor.execute(userId, tx -> {
+                mostInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                Thread.onSpinWait();
+                inside.decrementAndGet();
+                return null;
+            })));
+        }
+        for (Future<?> future : serial) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertThat(mostInside.get()).isEqualTo(1);
+    }
+}